@@ -0,0 +1,89 @@
+package com.chedaia.boss.web.model;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 并行添加设备的任务
+ * 
+ * 设备已经按照分组归类，每个分组只会被一个任务处理
+ * 任务只修改分组自己的虚拟分组和设备数量，不会访问上级分组，因此不需要加锁
+ * 全部任务完成后由调用方统一汇总各级分组的设备数量
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+class AttachDeviceTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 每个任务最多处理的分组数量
+     */
+    private static final int GROUPS_PER_TASK = 16;
+
+    private final TreeGroupNode[] groupNodes;
+
+    private final List<List<DeviceStatusExpandMergeTreeBO>> groupDevices;
+
+    /**
+     * 每个设备所在的虚拟分组，和groupDevices一一对应，为null时不记录<br>
+     * 每个任务只向自己负责的下标对应的列表中添加
+     */
+    private final List<List<TreeVirtualNode<DeviceStatusExpandMergeTreeBO>>> virtualNodes;
+
+    private final int from;
+
+    private final int to;
+
+    /**
+     * @param groupNodes 分组节点
+     * @param groupDevices 每个分组下的设备
+     * @param virtualNodes 记录每个设备所在的虚拟分组，可以为null
+     * @param from 开始的分组下标
+     * @param to 结束的分组下标，不包含
+     */
+    AttachDeviceTask(TreeGroupNode[] groupNodes, List<List<DeviceStatusExpandMergeTreeBO>> groupDevices,
+                     List<List<TreeVirtualNode<DeviceStatusExpandMergeTreeBO>>> virtualNodes, int from,
+                     int to){
+        this.groupNodes = groupNodes;
+        this.groupDevices = groupDevices;
+        this.virtualNodes = virtualNodes;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from > GROUPS_PER_TASK) {
+            int middle = (from + to) >>> 1;
+            invokeAll(new AttachDeviceTask(groupNodes, groupDevices, virtualNodes, from, middle),
+                new AttachDeviceTask(groupNodes, groupDevices, virtualNodes, middle, to));
+            return;
+        }
+
+        for (int i = from; i < to; i++) {
+            TreeGroupNode groupNode = groupNodes[i];
+            List<TreeVirtualNode<DeviceStatusExpandMergeTreeBO>> virtualNodeList = virtualNodes == null ? null
+                                                                                                        : virtualNodes.get(i);
+            for (DeviceStatusExpandMergeTreeBO device : groupDevices.get(i)) {
+                TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode = groupNode.attachDevice(device);
+                if (virtualNodeList != null) {
+                    virtualNodeList.add(virtualNode);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,558 @@
+package com.chedaia.boss.web.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 分组树的紧凑存储
+ * 
+ * 全部分组节点按照深度优先的先序排列，层级关系保存在int数组中：
+ * parent 上级节点的下标，根节点为-1
+ * subtreeSize 以该节点为根的子树的节点数量，子树的节点在数组中是连续的 [i, i + subtreeSize[i])
+ * 
+ * 遍历时只需要顺序访问数组，跳过一棵子树只需要 i += subtreeSize[i]
+ * 第一个下级节点为 i + 1，下一个同级节点为 i + subtreeSize[i]，不需要单独保存
+ * 节点a是节点b的上级节点当且仅当 a < b < a + subtreeSize[a]，判断时不需要沿着上级节点查找
+ * 设备数量保存在单独的int数组中，树上的设备变化后调用 refreshCounters 刷新
+ * nodes 引用的是树模型中原来的 TreeGroupNode，虚拟分组和设备仍然保存在节点中，这里只是节点的索引
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+final class CompactGroupTree {
+
+    /**
+     * 节点数量
+     */
+    final int size;
+
+    /**
+     * 最大深度，根节点的深度为0
+     */
+    final int maxDepth;
+
+    /**
+     * 先序排列的分组节点
+     */
+    final TreeGroupNode[] nodes;
+
+    final int[] parent;
+
+    final int[] subtreeSize;
+
+    final int[] depth;
+
+    /**
+     * 分组下的全部设备数量
+     */
+    final int[] allDeviceCount;
+
+    /**
+     * 升序排列的分组ID，用于二分查找
+     */
+    private final int[] sortedGroupIds;
+
+    /**
+     * sortedGroupIds 对应的节点下标
+     */
+    private final int[] sortedIndexes;
+
+    /**
+     * 分页展开使用的行号索引，下标为 (containDevice ? 2 : 0) + (excludeEmpty ? 1 : 0)<br>
+     * 设备数量刷新后失效，多个线程同时读取时可能各自创建一次，创建后的索引不再修改
+     */
+    private final AtomicReferenceArray<RowIndex> rowIndexes = new AtomicReferenceArray<>(4);
+
+    private CompactGroupTree(TreeGroupNode[] nodes, int[] parent, int[] subtreeSize, int[] depth, int maxDepth){
+        this.size = nodes.length;
+        this.maxDepth = maxDepth;
+        this.nodes = nodes;
+        this.parent = parent;
+        this.subtreeSize = subtreeSize;
+        this.depth = depth;
+        this.allDeviceCount = new int[size];
+        this.sortedGroupIds = new int[size];
+        this.sortedIndexes = new int[size];
+
+        // 分组ID的二分查找索引，高32位为分组ID，低32位为节点下标
+        long[] idIndex = new long[size];
+        for (int i = 0; i < size; i++) {
+            idIndex[i] = ((long) nodes[i].getGroupId() << 32) | i;
+        }
+        Arrays.sort(idIndex);
+        for (int i = 0; i < size; i++) {
+            sortedGroupIds[i] = (int) (idIndex[i] >> 32);
+            sortedIndexes[i] = (int) idIndex[i];
+        }
+
+        refreshCounters();
+    }
+
+    /**
+     * 根据树模型的根节点创建紧凑存储
+     * 
+     * @param rootNodes 根节点
+     * @return
+     */
+    static CompactGroupTree build(List<TreeGroupNode> rootNodes) {
+        // 先序遍历，用数组模拟栈
+        List<TreeGroupNode> order = new ArrayList<>();
+        int[] orderParent = new int[16];
+        TreeGroupNode[] stack = new TreeGroupNode[16];
+        int[] stackParent = new int[16];
+        int top = 0;
+        for (int i = rootNodes.size() - 1; i >= 0; i--) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+                stackParent = Arrays.copyOf(stackParent, top * 2);
+            }
+            stack[top] = rootNodes.get(i);
+            stackParent[top] = -1;
+            top++;
+        }
+
+        while (top > 0) {
+            top--;
+            TreeGroupNode node = stack[top];
+            int index = order.size();
+            if (index == orderParent.length) {
+                orderParent = Arrays.copyOf(orderParent, index * 2);
+            }
+            order.add(node);
+            orderParent[index] = stackParent[top];
+
+            List<TreeGroupNode> children = node.getChildGroupNode();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                    stackParent = Arrays.copyOf(stackParent, top * 2);
+                }
+                stack[top] = children.get(i);
+                stackParent[top] = index;
+                top++;
+            }
+        }
+
+        int size = order.size();
+        TreeGroupNode[] nodes = order.toArray(new TreeGroupNode[size]);
+        int[] parent = Arrays.copyOf(orderParent, size);
+        int[] subtreeSize = new int[size];
+        int[] depth = new int[size];
+        Arrays.fill(subtreeSize, 1);
+
+        int maxDepth = 0;
+        for (int i = 0; i < size; i++) {
+            int p = parent[i];
+            if (p >= 0) {
+                depth[i] = depth[p] + 1;
+                maxDepth = Math.max(maxDepth, depth[i]);
+            }
+        }
+
+        // 逆序累加子树大小，下级节点一定在上级节点之后
+        for (int i = size - 1; i > 0; i--) {
+            int p = parent[i];
+            if (p >= 0) {
+                subtreeSize[p] += subtreeSize[i];
+            }
+        }
+
+        return new CompactGroupTree(nodes, parent, subtreeSize, depth, maxDepth);
+    }
+
+    /**
+     * 根据分组ID查找节点下标
+     * 
+     * @param groupId
+     * @return 不存在时返回-1
+     */
+    int indexOf(int groupId) {
+        int pos = Arrays.binarySearch(sortedGroupIds, groupId);
+        return pos < 0 ? -1 : sortedIndexes[pos];
+    }
+
+    /**
+     * 根据分组ID查找节点
+     * 
+     * @param groupId
+     * @return
+     */
+    TreeGroupNode getNode(int groupId) {
+        int index = indexOf(groupId);
+        return index < 0 ? null : nodes[index];
+    }
+
+    /**
+     * 节点ancestor的子树是否包含节点index，两个下标相同时也返回true
+     * 
+     * @param ancestor
+     * @param index
+     * @return
+     */
+    boolean contains(int ancestor, int index) {
+        return index >= ancestor && index < ancestor + subtreeSize[ancestor];
+    }
+
+    /**
+     * 从根节点到指定节点的路径
+     * 
+     * @param index
+     * @return
+     */
+    TreeGroupNode[] path(int index) {
+        TreeGroupNode[] path = new TreeGroupNode[depth[index] + 1];
+        for (int i = index; i >= 0; i = parent[i]) {
+            path[depth[i]] = nodes[i];
+        }
+        return path;
+    }
+
+    /**
+     * 树上的设备变化后刷新设备数量
+     */
+    void refreshCounters() {
+        for (int i = 0; i < size; i++) {
+            allDeviceCount[i] = nodes[i].getAllDeviceCount();
+        }
+        for (int mode = 0; mode < rowIndexes.length(); mode++) {
+            rowIndexes.set(mode, null);
+        }
+    }
+
+    /**
+     * <pre>
+     * 按照先序展开 [from, end) 范围内的分组
+     * 每个分组的下级分组全部展开后再展开它的虚拟分组，和递归展开的顺序一致
+     * </pre>
+     * 
+     * @param treeModel 用于展开虚拟分组
+     * @param list 保存展开对象的List
+     * @param from 开始的节点下标
+     * @param end 结束的节点下标，不包含
+     * @param openIndex 已经展开但是没有加入list的上级节点下标，没有时为-1
+     * @param containDevice 展开的List中是否包含设备
+     * @param excludeEmpty 是否排除掉没有设备的节点
+     */
+    void expand(TreeModel treeModel, List<TreeModelItem> list, int from, int end, int openIndex,
+                boolean containDevice, boolean excludeEmpty) {
+        // 已经展开，还没有展开虚拟分组的节点
+        int[] open = new int[maxDepth + 2];
+        int top = 0;
+        if (openIndex >= 0) {
+            open[top++] = openIndex;
+        }
+
+        int i = from;
+        while (i < end) {
+            // 子树已经结束的节点展开虚拟分组
+            while (top > 0 && open[top - 1] + subtreeSize[open[top - 1]] <= i) {
+                treeModel.expandVirtualNode(list, nodes[open[--top]], containDevice);
+            }
+
+            if (excludeEmpty && allDeviceCount[i] == 0) {
+                // 排除掉没有设备的空分组以及它的下级
+                i += subtreeSize[i];
+                continue;
+            }
+
+            list.add(new TreeModelItem(nodes[i]));
+            open[top++] = i;
+            i++;
+        }
+
+        while (top > 0) {
+            treeModel.expandVirtualNode(list, nodes[open[--top]], containDevice);
+        }
+    }
+
+    /**
+     * 展开整棵树后的总行数
+     * 
+     * @param containDevice 是否包含设备
+     * @param excludeEmpty 是否排除掉没有设备的节点
+     * @return
+     */
+    int getRowCount(boolean containDevice, boolean excludeEmpty) {
+        return getRowIndex(containDevice, excludeEmpty).total;
+    }
+
+    /**
+     * <pre>
+     * 展开整棵树中 [offset, offset + limit) 范围内的行
+     * 先通过行号索引二分查找到起始行所在的分组，再沿着上级节点找到起始位置，之后只展开需要的行
+     * 展开的顺序和 expand 一致
+     * </pre>
+     * 
+     * @param treeModel
+     * @param list 保存展开对象的List
+     * @param offset 起始行号，从0开始
+     * @param limit 最多展开的行数
+     * @param containDevice 是否包含设备
+     * @param excludeEmpty 是否排除掉没有设备的节点
+     */
+    void expandWindow(TreeModel treeModel, List<TreeModelItem> list, int offset, int limit, boolean containDevice,
+                      boolean excludeEmpty) {
+        RowIndex rowIndex = getRowIndex(containDevice, excludeEmpty);
+        if (offset < 0 || limit <= 0 || offset >= rowIndex.total) {
+            return;
+        }
+
+        // 最后一个行号不大于offset的分组
+        int pos = Arrays.binarySearch(rowIndex.visibleRowStart, offset);
+        if (pos < 0) {
+            pos = -pos - 2;
+        }
+        int node = rowIndex.visible[pos];
+
+        int start = node;
+        int virtualSkip = -1;
+        if (rowIndex.rowStart[node] != offset) {
+            // 起始行在这个分组或者某个上级分组的虚拟分组中
+            for (int a = node; a >= 0; a = parent[a]) {
+                int virtualStart = rowIndex.rowEnd[a] - rowIndex.virtualRows[a];
+                if (offset >= virtualStart && offset < rowIndex.rowEnd[a]) {
+                    start = a;
+                    virtualSkip = offset - virtualStart;
+                    break;
+                }
+            }
+            if (virtualSkip < 0) {
+                return;
+            }
+        }
+
+        // 起始位置的全部上级节点都是已经展开的状态
+        int[] open = new int[maxDepth + 2];
+        int top = 0;
+        for (int a = parent[start]; a >= 0; a = parent[a]) {
+            open[top++] = a;
+        }
+        reverse(open, top);
+
+        int remaining = limit;
+        int i = start;
+        if (virtualSkip >= 0) {
+            remaining -= expandVirtualRows(list, nodes[start], virtualSkip, remaining, containDevice);
+            i = start + subtreeSize[start];
+        }
+
+        while (remaining > 0) {
+            // 子树已经结束的节点展开虚拟分组
+            if (top > 0 && open[top - 1] + subtreeSize[open[top - 1]] <= i) {
+                remaining -= expandVirtualRows(list, nodes[open[--top]], 0, remaining, containDevice);
+                continue;
+            }
+            if (i >= size) {
+                break;
+            }
+            if (excludeEmpty && allDeviceCount[i] == 0) {
+                i += subtreeSize[i];
+                continue;
+            }
+
+            list.add(new TreeModelItem(nodes[i]));
+            remaining--;
+            open[top++] = i;
+            i++;
+        }
+    }
+
+    /**
+     * 展开分组下虚拟分组对应的行，跳过前skip行，最多展开limit行
+     * 
+     * @param list
+     * @param groupNode
+     * @param skip
+     * @param limit
+     * @param containDevice
+     * @return 展开的行数
+     */
+    private int expandVirtualRows(List<TreeModelItem> list, TreeGroupNode groupNode, int skip, int limit,
+                                  boolean containDevice) {
+        int count = 0;
+        for (TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode : groupNode.getChildVirtualNodeMap().values()) {
+            if (count >= limit) {
+                break;
+            }
+            int deviceCount = containDevice ? virtualNode.getDeviceCount() : 0;
+            if (skip > deviceCount) {
+                skip -= deviceCount + 1;
+                continue;
+            }
+
+            if (skip == 0) {
+                list.add(new TreeModelItem(virtualNode));
+                count++;
+            }
+            // 直接定位到第一个需要展开的设备
+            for (int d = Math.max(skip - 1, 0); d < deviceCount && count < limit; d++) {
+                list.add(TreeModelItem.ofDevice(virtualNode, d));
+                count++;
+            }
+            skip = 0;
+        }
+        return count;
+    }
+
+    private static void reverse(int[] array, int length) {
+        for (int l = 0, r = length - 1; l < r; l++, r--) {
+            int tmp = array[l];
+            array[l] = array[r];
+            array[r] = tmp;
+        }
+    }
+
+    /**
+     * 创建全部展开方式的行号索引，之后分页展开不再修改紧凑存储
+     */
+    void prepareRowIndexes() {
+        for (int mode = 0; mode < rowIndexes.length(); mode++) {
+            getRowIndex((mode & 2) != 0, (mode & 1) != 0);
+        }
+    }
+
+    /**
+     * 获取行号索引，不存在时创建
+     * 
+     * @param containDevice
+     * @param excludeEmpty
+     * @return
+     */
+    private RowIndex getRowIndex(boolean containDevice, boolean excludeEmpty) {
+        int mode = (containDevice ? 2 : 0) + (excludeEmpty ? 1 : 0);
+        RowIndex rowIndex = rowIndexes.get(mode);
+        if (rowIndex == null) {
+            rowIndex = buildRowIndex(containDevice, excludeEmpty);
+            rowIndexes.set(mode, rowIndex);
+        }
+        return rowIndex;
+    }
+
+    /**
+     * 按照展开的顺序计算每个分组的起始行号和结束行号
+     * 
+     * @param containDevice
+     * @param excludeEmpty
+     * @return
+     */
+    private RowIndex buildRowIndex(boolean containDevice, boolean excludeEmpty) {
+        int[] rowStart = new int[size];
+        int[] rowEnd = new int[size];
+        int[] virtualRows = new int[size];
+        Arrays.fill(rowStart, -1);
+        Arrays.fill(rowEnd, -1);
+
+        int[] visible = new int[size];
+        int[] visibleRowStart = new int[size];
+        int visibleCount = 0;
+
+        int[] open = new int[maxDepth + 2];
+        int top = 0;
+        int row = 0;
+        int i = 0;
+        while (i < size || top > 0) {
+            if (top > 0 && open[top - 1] + subtreeSize[open[top - 1]] <= i) {
+                // 子树已经结束，虚拟分组在下级分组之后
+                int n = open[--top];
+                row += virtualRows[n];
+                rowEnd[n] = row;
+                continue;
+            }
+            if (excludeEmpty && allDeviceCount[i] == 0) {
+                i += subtreeSize[i];
+                continue;
+            }
+
+            virtualRows[i] = countVirtualRows(nodes[i], containDevice);
+            rowStart[i] = row;
+            visible[visibleCount] = i;
+            visibleRowStart[visibleCount] = row;
+            visibleCount++;
+
+            row++;
+            open[top++] = i;
+            i++;
+        }
+
+        return new RowIndex(rowStart, rowEnd, virtualRows, Arrays.copyOf(visible, visibleCount),
+                            Arrays.copyOf(visibleRowStart, visibleCount), row);
+    }
+
+    /**
+     * 分组下虚拟分组展开后的行数
+     * 
+     * @param groupNode
+     * @param containDevice
+     * @return
+     */
+    private static int countVirtualRows(TreeGroupNode groupNode, boolean containDevice) {
+        Map<String, TreeVirtualNode<DeviceStatusExpandMergeTreeBO>> virtualNodeMap = groupNode.getChildVirtualNodeMap();
+        int rows = virtualNodeMap.size();
+        if (containDevice) {
+            for (TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode : virtualNodeMap.values()) {
+                rows += virtualNode.getDeviceCount();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 某一种展开方式下的行号索引，创建后不再修改
+     */
+    private static class RowIndex {
+
+        /**
+         * 分组所在的行号，被排除的分组为-1
+         */
+        private final int[] rowStart;
+
+        /**
+         * 分组的子树结束后的行号，不包含
+         */
+        private final int[] rowEnd;
+
+        /**
+         * 分组下虚拟分组和设备展开后的行数
+         */
+        private final int[] virtualRows;
+
+        /**
+         * 展开后可见的分组，按照先序排列
+         */
+        private final int[] visible;
+
+        /**
+         * visible 中的分组所在的行号，递增
+         */
+        private final int[] visibleRowStart;
+
+        /**
+         * 总行数
+         */
+        private final int total;
+
+        RowIndex(int[] rowStart, int[] rowEnd, int[] virtualRows, int[] visible, int[] visibleRowStart, int total){
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.virtualRows = virtualRows;
+            this.visible = visible;
+            this.visibleRowStart = visibleRowStart;
+            this.total = total;
+        }
+    }
+
+}
@@ -0,0 +1,325 @@
+package com.chedaia.boss.web.model;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 多个线程共享的、可以实时更新的树模型
+ * 
+ * 内部持有两个内容相同的树模型，一个给读线程使用，另一个给写线程修改（left-right）
+ * 写操作先在备用的树模型上执行，然后切换读线程使用的树模型，等旧的树模型上的读操作全部结束后再在旧的树模型上执行一次
+ * 读线程不加锁，只在开始和结束时修改一个计数，读到的总是一个完整执行了之前所有写操作的树模型
+ * 写线程之间互斥，每个写操作会在两个树模型上各执行一次，因此写操作的结果只能由操作的参数决定
+ * 
+ * 读线程使用的树模型在发布前已经创建了紧凑存储、行号索引和搜索索引，读操作不会再修改它
+ * 写操作抛出异常时两个树模型可能不再相同，这时通过 factory 重新创建两个树模型
+ * 
+ * 读操作返回的 TreeModelItem 引用的是树上的节点，之后的写操作会修改这些节点
+ * 需要一致的结果时在 read 的回调中完成序列化，例如使用 TreeModelJsonWriter 或 TreeModelBinaryWriter
+ * 读操作的回调中不能修改树模型
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class ConcurrentTreeModel {
+
+    /**
+     * 读线程正在使用的树模型
+     */
+    private volatile Instance active;
+
+    /**
+     * 写线程修改的树模型
+     */
+    private Instance standby;
+
+    private final Object writeLock = new Object();
+
+    private final Supplier<TreeModel> factory;
+
+    /**
+     * 写操作失败后没有重新创建成功，两个树模型的内容可能不同
+     */
+    private boolean diverged;
+
+    /**
+     * <pre>
+     * 调用两次 factory 创建两个内容相同的树模型
+     * 写操作失败后会再次调用 factory，这时需要按最新的数据创建
+     * 按需加载设备的树模型在读操作中会加载设备，不能共享
+     * </pre>
+     * 
+     * @param factory 每次调用都需要创建一个新的树模型，两次创建的内容需要相同
+     */
+    public ConcurrentTreeModel(Supplier<TreeModel> factory){
+        this.factory = factory;
+        Instance[] instances = createInstances();
+        this.active = instances[0];
+        this.standby = instances[1];
+    }
+
+    /**
+     * 在当前版本的树模型上执行读操作，不加锁
+     * 
+     * @param reader 不能修改树模型
+     * @return 读操作的结果
+     */
+    public <R> R read(Function<TreeModel, R> reader) {
+        Instance instance = enterRead();
+        try {
+            return reader.apply(instance.treeModel);
+        } finally {
+            instance.readers.decrementAndGet();
+        }
+    }
+
+    /**
+     * <pre>
+     * 执行写操作，写线程之间互斥
+     * 写操作会在两个树模型上各执行一次，返回第一次执行的结果
+     * </pre>
+     * 
+     * @param writer 对同一个树模型的执行结果只能由参数决定
+     * @return 写操作的结果
+     */
+    public <R> R write(Function<TreeModel, R> writer) {
+        synchronized (writeLock) {
+            if (diverged) {
+                // 上次重新创建失败，两个树模型不同时不能继续写
+                replaceInstances(createInstances());
+                diverged = false;
+            }
+            Instance updated = standby;
+            R result;
+            try {
+                result = writer.apply(updated.treeModel);
+                // 发布前创建读取时才创建的内容，读线程之间不会同时修改
+                updated.treeModel.prepareForSharedRead();
+            } catch (RuntimeException e) {
+                recreateInstances(e);
+                throw e;
+            }
+
+            // 切换后新的读操作使用已经更新的树模型
+            Instance old = active;
+            active = updated;
+            waitForReaders(old);
+            standby = old;
+
+            try {
+                // 下次写操作发布前再创建读取时才创建的内容
+                writer.apply(old.treeModel);
+            } catch (RuntimeException e) {
+                recreateInstances(e);
+                throw e;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 执行没有返回值的写操作
+     * 
+     * @param writer
+     */
+    public void update(final Consumer<TreeModel> writer) {
+        write(new Function<TreeModel, Void>() {
+
+            @Override
+            public Void apply(TreeModel treeModel) {
+                writer.accept(treeModel);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 展开整个树
+     * 
+     * @param containDevice 展开的List中是否包含设备
+     * @return
+     */
+    public List<TreeModelItem> expandTree2FlatList(final boolean containDevice) {
+        return read(new Function<TreeModel, List<TreeModelItem>>() {
+
+            @Override
+            public List<TreeModelItem> apply(TreeModel treeModel) {
+                return treeModel.expandTree2FlatList(containDevice);
+            }
+        });
+    }
+
+    /**
+     * 获取全部根节点
+     * 
+     * @return
+     */
+    public List<TreeModelItem> getRootTreeModelItem() {
+        return read(new Function<TreeModel, List<TreeModelItem>>() {
+
+            @Override
+            public List<TreeModelItem> apply(TreeModel treeModel) {
+                return treeModel.getRootTreeModelItem();
+            }
+        });
+    }
+
+    /**
+     * 增量更新一个设备，见 TreeModel.updateDevice
+     * 
+     * @param device 新的设备对象，两个树模型共用这个对象
+     * @return 设备对应的分组不存在时返回false
+     */
+    public boolean updateDevice(final DeviceStatusExpandMergeTreeBO device) {
+        return write(new Function<TreeModel, Boolean>() {
+
+            @Override
+            public Boolean apply(TreeModel treeModel) {
+                return treeModel.updateDevice(device);
+            }
+        });
+    }
+
+    /**
+     * 移除一个设备，见 TreeModel.removeDevice
+     * 
+     * @param deviceId
+     * @return 设备不存在时返回false
+     */
+    public boolean removeDevice(final long deviceId) {
+        return write(new Function<TreeModel, Boolean>() {
+
+            @Override
+            public Boolean apply(TreeModel treeModel) {
+                return treeModel.removeDevice(deviceId);
+            }
+        });
+    }
+
+    /**
+     * 批量添加设备，见 TreeModel.addDevices
+     * 
+     * @param deviceList 两个树模型共用这些设备对象
+     */
+    public void addDevices(final Collection<DeviceStatusExpandMergeTreeBO> deviceList) {
+        update(new Consumer<TreeModel>() {
+
+            @Override
+            public void accept(TreeModel treeModel) {
+                treeModel.addDevices(deviceList);
+            }
+        });
+    }
+
+    /**
+     * 创建两个树模型并准备好给读线程使用
+     * 
+     * @return
+     */
+    private Instance[] createInstances() {
+        TreeModel left = factory.get();
+        TreeModel right = factory.get();
+        if (left == right) {
+            throw new IllegalArgumentException("factory需要每次创建一个新的树模型");
+        }
+        if (left.getDeviceSource() != null || right.getDeviceSource() != null) {
+            throw new IllegalArgumentException("按需加载设备的树模型不能在多个线程中共享");
+        }
+        left.prepareForSharedRead();
+        right.prepareForSharedRead();
+        return new Instance[] { new Instance(left), new Instance(right) };
+    }
+
+    /**
+     * <pre>
+     * 写操作失败后两个树模型的内容可能不同，重新创建两个树模型
+     * 重新创建失败时继续使用原来的树模型读，下次写之前再重新创建
+     * </pre>
+     * 
+     * @param cause 写操作的异常，重新创建的异常添加到它上面
+     */
+    private void recreateInstances(RuntimeException cause) {
+        try {
+            replaceInstances(createInstances());
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+            diverged = true;
+        }
+    }
+
+    /**
+     * 切换到新创建的树模型，等待旧的树模型上的读操作结束
+     * 
+     * @param instances
+     */
+    private void replaceInstances(Instance[] instances) {
+        Instance old = active;
+        active = instances[0];
+        standby = instances[1];
+        waitForReaders(old);
+    }
+
+    /**
+     * 登记一个读操作，登记后树模型仍然是读线程使用的树模型才能开始读
+     * 
+     * @return
+     */
+    private Instance enterRead() {
+        while (true) {
+            Instance instance = active;
+            instance.readers.incrementAndGet();
+            if (instance == active) {
+                return instance;
+            }
+            // 登记时已经切换，写线程可能已经开始修改这个树模型
+            instance.readers.decrementAndGet();
+        }
+    }
+
+    /**
+     * 等待切换前开始的读操作全部结束
+     * 
+     * @param instance
+     */
+    private static void waitForReaders(Instance instance) {
+        for (int spins = 0; instance.readers.get() != 0; spins++) {
+            if (spins < 100) {
+                Thread.yield();
+            } else {
+                // 读操作耗时较长时不再占用CPU
+                LockSupport.parkNanos(50000L);
+            }
+        }
+    }
+
+    /**
+     * 一个树模型和正在读它的线程数量
+     */
+    private static class Instance {
+
+        private final TreeModel treeModel;
+
+        private final AtomicInteger readers = new AtomicInteger();
+
+        private Instance(TreeModel treeModel){
+            this.treeModel = treeModel;
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+package com.chedaia.boss.web.model;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 按列存储的设备
+ * 
+ * 树只需要设备的ID、分组、类型、安装时间和状态，每一列使用一个基本类型的数组保存
+ * 树上的虚拟分组只记录设备的行号，不持有 DeviceStatusExpandMergeTreeBO 对象
+ * 只有读取 DATA_NODE 类型的 TreeModelItem 时才由 DeviceMaterializer 创建完整的设备对象
+ * 
+ * 见 TreeModel.addDevices(DeviceColumnStore)
+ * 添加完成后只读，可以被多个树模型共用
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public final class DeviceColumnStore {
+
+    /**
+     * 根据行中的数据创建完整的设备对象
+     */
+    public interface DeviceMaterializer {
+
+        /**
+         * 创建设备对象，可以从行中的列创建，也可以根据设备ID从缓存中查询
+         * 
+         * @param store
+         * @param row 行号
+         * @return
+         */
+        DeviceStatusExpandMergeTreeBO materialize(DeviceColumnStore store, int row);
+    }
+
+    /**
+     * 设备类型为null时保存的值
+     */
+    public static final int NULL_PROPERTY = Integer.MIN_VALUE;
+
+    /**
+     * 没有安装时间时保存的值
+     */
+    public static final long NULL_INSTALL_TIME = Long.MIN_VALUE;
+
+    private final DeviceMaterializer materializer;
+
+    private long[] deviceIds;
+
+    private int[] groupIds;
+
+    private int[] properties;
+
+    private long[] installTimes;
+
+    private int[] statusFlags;
+
+    private int size = 0;
+
+    /**
+     * @param materializer 创建完整的设备对象
+     * @param initialCapacity 预计的设备数量
+     */
+    public DeviceColumnStore(DeviceMaterializer materializer, int initialCapacity){
+        this.materializer = materializer;
+        int capacity = Math.max(initialCapacity, 16);
+        this.deviceIds = new long[capacity];
+        this.groupIds = new int[capacity];
+        this.properties = new int[capacity];
+        this.installTimes = new long[capacity];
+        this.statusFlags = new int[capacity];
+    }
+
+    /**
+     * 直接使用已经读取好的列，从快照文件恢复时使用，各列的长度需要相同
+     * 
+     * @param materializer
+     * @param deviceIds
+     * @param groupIds
+     * @param properties 设备类型为null时为 NULL_PROPERTY
+     * @param installTimes 没有安装时间时为 NULL_INSTALL_TIME
+     * @param statusFlags
+     */
+    DeviceColumnStore(DeviceMaterializer materializer, long[] deviceIds, int[] groupIds, int[] properties,
+                      long[] installTimes, int[] statusFlags){
+        this.materializer = materializer;
+        this.deviceIds = deviceIds;
+        this.groupIds = groupIds;
+        this.properties = properties;
+        this.installTimes = installTimes;
+        this.statusFlags = statusFlags;
+        this.size = deviceIds.length;
+    }
+
+    /**
+     * 添加一行
+     * 
+     * @param deviceId 设备ID
+     * @param groupId 设备所在的分组ID
+     * @param property 设备类型，可以为null
+     * @param installTime 安装时间，可以为null
+     * @param flags 设备的状态标记，见 TreeDeviceResolver.STATUS_*
+     * @return 行号
+     */
+    public int addRow(long deviceId, int groupId, Integer property, Date installTime, int flags) {
+        return addRawRow(deviceId, groupId, property == null ? NULL_PROPERTY : property,
+            installTime == null ? NULL_INSTALL_TIME : installTime.getTime(), flags);
+    }
+
+    /**
+     * 添加一行，设备类型和安装时间使用列中的原始值
+     * 
+     * @param deviceId
+     * @param groupId
+     * @param property 设备类型为null时为 NULL_PROPERTY
+     * @param installTime 没有安装时间时为 NULL_INSTALL_TIME
+     * @param flags
+     * @return 行号
+     */
+    int addRawRow(long deviceId, int groupId, int property, long installTime, int flags) {
+        if (size == deviceIds.length) {
+            int capacity = size * 2;
+            deviceIds = Arrays.copyOf(deviceIds, capacity);
+            groupIds = Arrays.copyOf(groupIds, capacity);
+            properties = Arrays.copyOf(properties, capacity);
+            installTimes = Arrays.copyOf(installTimes, capacity);
+            statusFlags = Arrays.copyOf(statusFlags, capacity);
+        }
+        int row = size++;
+        deviceIds[row] = deviceId;
+        groupIds[row] = groupId;
+        properties[row] = property;
+        installTimes[row] = installTime;
+        statusFlags[row] = flags;
+        return row;
+    }
+
+    /**
+     * 从设备对象中取出树需要的列添加一行，之后不再持有这个对象
+     * 
+     * @param device 分组ID不能为null
+     * @param deviceResolver 获取设备ID和状态
+     * @return 行号
+     */
+    public int addDevice(DeviceStatusExpandMergeTreeBO device, TreeDeviceResolver deviceResolver) {
+        return addRow(deviceResolver.getDeviceId(device),
+            device.getGroupId(),
+            device.getProperty(),
+            device.getInstallTime(),
+            deviceResolver.getStatusFlags(device));
+    }
+
+    /**
+     * 创建这一行的完整设备对象，每次调用都会创建
+     * 
+     * @param row
+     * @return
+     */
+    public DeviceStatusExpandMergeTreeBO materialize(int row) {
+        return materializer.materialize(this, row);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getDeviceId(int row) {
+        return deviceIds[row];
+    }
+
+    public int getGroupId(int row) {
+        return groupIds[row];
+    }
+
+    /**
+     * @param row
+     * @return 设备类型为null时返回null
+     */
+    public Integer getProperty(int row) {
+        int property = properties[row];
+        return property == NULL_PROPERTY ? null : property;
+    }
+
+    /**
+     * @param row
+     * @return 安装时间的毫秒数，没有安装时间时返回 NULL_INSTALL_TIME
+     */
+    public long getInstallTime(int row) {
+        return installTimes[row];
+    }
+
+    public int getStatusFlags(int row) {
+        return statusFlags[row];
+    }
+
+    /**
+     * 设备类型列的原始值
+     * 
+     * @param row
+     * @return 设备类型为null时返回 NULL_PROPERTY
+     */
+    int getRawProperty(int row) {
+        return properties[row];
+    }
+
+    /**
+     * 释放多余的容量，全部设备添加完后调用
+     */
+    public void trimToSize() {
+        deviceIds = Arrays.copyOf(deviceIds, size);
+        groupIds = Arrays.copyOf(groupIds, size);
+        properties = Arrays.copyOf(properties, size);
+        installTimes = Arrays.copyOf(installTimes, size);
+        statusFlags = Arrays.copyOf(statusFlags, size);
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.chedaia.boss.web.model;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 按分组加载设备，树模型按需加载设备时使用，见 TreeModel.setDeviceSource
+ * 
+ * 创建树模型时只查询每个分组的设备数量，分组第一次展开时才加载它的设备
+ * 两个方法都在调用树模型的线程中执行
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public interface DeviceSource {
+
+    /**
+     * 查询每个分组直接拥有的设备数量，不包含下级分组
+     * 
+     * @param groupIds 树上的全部分组ID
+     * @return key为分组ID，没有设备的分组可以不返回
+     */
+    Map<Integer, Integer> countDevices(Collection<Integer> groupIds);
+
+    /**
+     * 加载直接属于分组的全部设备，不包含下级分组
+     * 
+     * @param groupId 分组ID
+     * @return 没有设备时返回空的List
+     */
+    List<DeviceStatusExpandMergeTreeBO> loadDevices(int groupId);
+
+}
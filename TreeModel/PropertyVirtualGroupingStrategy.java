@@ -0,0 +1,179 @@
+package com.chedaia.boss.web.model;
+
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.Date;
+import java.util.TimeZone;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 按照设备类型（property）划分虚拟分组
+ * 
+ * 月份组（TreeGroupNode.YFZ）的设备按照安装时间再划分，默认按月，名称为 yyyy-MM
+ * 也可以按周（yyyy-Www）、季度（yyyy-Qn）、年（yyyy）划分
+ * 
+ * key的高32位为设备类型，低32位为安装时间所在的周期
+ * 周期直接由安装时间的毫秒数计算，不需要格式化日期
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class PropertyVirtualGroupingStrategy implements VirtualGroupingStrategy {
+
+    /**
+     * 月份组的划分周期
+     */
+    public enum InstallTimePeriod {
+        WEEK,
+        MONTH,
+        QUARTER,
+        YEAR
+    }
+
+    /**
+     * 设备类型为null时使用的key
+     */
+    private static final int NULL_PROPERTY = Integer.MIN_VALUE;
+
+    /**
+     * 没有安装时间时使用的周期
+     */
+    private static final int NOT_INSTALLED = Integer.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final InstallTimePeriod period;
+
+    private final TimeZone timeZone;
+
+    public PropertyVirtualGroupingStrategy(){
+        this(InstallTimePeriod.MONTH);
+    }
+
+    public PropertyVirtualGroupingStrategy(InstallTimePeriod period){
+        this(period, TimeZone.getDefault());
+    }
+
+    public PropertyVirtualGroupingStrategy(InstallTimePeriod period, TimeZone timeZone){
+        this.period = period;
+        this.timeZone = timeZone;
+    }
+
+    @Override
+    public long bucketKey(TreeModel treeModel, DeviceStatusExpandMergeTreeBO device) {
+        Integer property = device.getProperty();
+        if (property == null || !treeModel.isInstallTimeProperty(property)) {
+            return bucketKey(property, 0);
+        }
+
+        Date installTime = device.getInstallTime();
+        return bucketKey(property, installTime == null ? NOT_INSTALLED : calcPeriod(installTime.getTime()));
+    }
+
+    @Override
+    public long bucketKey(TreeModel treeModel, DeviceColumnStore store, int row) {
+        Integer property = store.getProperty(row);
+        if (property == null || !treeModel.isInstallTimeProperty(property)) {
+            return bucketKey(property, 0);
+        }
+
+        long installTime = store.getInstallTime(row);
+        return bucketKey(property,
+            installTime == DeviceColumnStore.NULL_INSTALL_TIME ? NOT_INSTALLED : calcPeriod(installTime));
+    }
+
+    private static long bucketKey(Integer property, int periodKey) {
+        int propertyKey = property == null ? NULL_PROPERTY : property;
+        return ((long) propertyKey << 32) | (periodKey & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public String bucketName(TreeModel treeModel, long bucketKey) {
+        int propertyKey = (int) (bucketKey >> 32);
+        int periodKey = (int) bucketKey;
+
+        Integer property = propertyKey == NULL_PROPERTY ? null : propertyKey;
+        if (property == null || !treeModel.isInstallTimeProperty(property)) {
+            return treeModel.getPropertyName(property);
+        }
+
+        if (periodKey == NOT_INSTALLED) {
+            return "未安装";
+        }
+        return formatPeriod(periodKey);
+    }
+
+    /**
+     * 计算安装时间所在的周期
+     * 
+     * <pre>
+     * WEEK     从1970-01-01所在的周开始的周序号，每周从周一开始
+     * MONTH    yyyyMM
+     * QUARTER  yyyy * 10 + 季度
+     * YEAR     yyyy
+     * </pre>
+     * 
+     * @param millis
+     * @return
+     */
+    private int calcPeriod(long millis) {
+        long epochDay = Math.floorDiv(millis + timeZone.getOffset(millis), MILLIS_PER_DAY);
+
+        if (period == InstallTimePeriod.WEEK) {
+            // 1970-01-01是周四，往前3天是周一
+            return (int) Math.floorDiv(epochDay + 3, 7);
+        }
+
+        // 由天数计算年月，不需要创建日期对象
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+        switch (period) {
+            case QUARTER:
+                return year * 10 + (month - 1) / 3 + 1;
+            case YEAR:
+                return year;
+            default:
+                return year * 100 + month;
+        }
+    }
+
+    /**
+     * 周期的显示名称
+     * 
+     * @param periodKey
+     * @return
+     */
+    private String formatPeriod(int periodKey) {
+        switch (period) {
+            case WEEK:
+                LocalDate monday = LocalDate.ofEpochDay((long) periodKey * 7 - 3);
+                return String.format("%d-W%02d",
+                    monday.get(IsoFields.WEEK_BASED_YEAR),
+                    monday.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            case QUARTER:
+                return String.format("%04d-Q%d", periodKey / 10, periodKey % 10);
+            case YEAR:
+                return String.format("%04d", periodKey);
+            default:
+                return String.format("%04d-%02d", periodKey / 100, periodKey % 100);
+        }
+    }
+
+}
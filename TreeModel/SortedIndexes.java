@@ -0,0 +1,148 @@
+package com.chedaia.boss.web.model;
+
+/**
+ * <pre>
+ * 按照long类型的key对下标排序
+ * 
+ * key相同时下标小的在前，结果是稳定的
+ * 只对int和long数组操作，不需要装箱，也不需要每次比较时调用比较器计算key
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+final class SortedIndexes {
+
+    private SortedIndexes(){
+    }
+
+    /**
+     * 全部下标排序，自底向上的归并排序
+     * 
+     * @param keys 每个下标对应的key
+     * @param descending true:按照key降序排列
+     * @return 排好序的下标
+     */
+    static int[] sort(long[] keys, boolean descending) {
+        int n = keys.length;
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int from = 0; from < n; from += width * 2) {
+                merge(keys, descending, indexes, buffer, from, Math.min(from + width, n), Math.min(from + width * 2, n));
+            }
+            int[] swap = indexes;
+            indexes = buffer;
+            buffer = swap;
+        }
+        return indexes;
+    }
+
+    private static void merge(long[] keys, boolean descending, int[] src, int[] dst, int from, int middle,
+                              int to) {
+        int i = from;
+        int j = middle;
+        int k = from;
+        while (i < middle && j < to) {
+            dst[k++] = before(keys, descending, src[j], src[i]) ? src[j++] : src[i++];
+        }
+        while (i < middle) {
+            dst[k++] = src[i++];
+        }
+        while (j < to) {
+            dst[k++] = src[j++];
+        }
+    }
+
+    /**
+     * 取排在最前面的limit个下标，使用大小为limit的堆，不对全部下标排序
+     * 
+     * @param keys 每个下标对应的key
+     * @param descending true:按照key降序排列
+     * @param limit 返回的数量
+     * @return 排好序的下标
+     */
+    static int[] top(long[] keys, boolean descending, int limit) {
+        int size = Math.min(limit, keys.length);
+        if (size <= 0) {
+            return new int[0];
+        }
+
+        // 堆顶是已经选出的下标中排在最后面的
+        int[] heap = new int[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (count < size) {
+                heap[count] = i;
+                siftUp(keys, descending, heap, count++);
+            } else if (before(keys, descending, i, heap[0])) {
+                heap[0] = i;
+                siftDown(keys, descending, heap, 0, count);
+            }
+        }
+
+        // 依次取出堆顶，从后往前放
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[--count];
+            siftDown(keys, descending, heap, 0, count);
+        }
+        return result;
+    }
+
+    private static void siftUp(long[] keys, boolean descending, int[] heap, int index) {
+        int value = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(keys, descending, heap[parent], value)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    private static void siftDown(long[] keys, boolean descending, int[] heap, int index, int count) {
+        int value = heap[index];
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= count) {
+                break;
+            }
+            if (child + 1 < count && before(keys, descending, heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!before(keys, descending, value, heap[child])) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+
+    /**
+     * 下标a是否排在下标b前面
+     */
+    private static boolean before(long[] keys, boolean descending, int a, int b) {
+        int c = Long.compare(keys[a], keys[b]);
+        if (c == 0) {
+            return a < b;
+        }
+        return descending ? c > 0 : c < 0;
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.chedaia.boss.web.model;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 从设备对象中取出树模型需要的信息
+ * 
+ * 设备ID用于定位树上已经存在的设备，增量更新设备时使用
+ * 状态标记对应 StatDeviceNumberBO 中的各项统计，一个设备可以同时有多个状态
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public interface TreeDeviceResolver {
+
+    /**
+     * 行驶
+     */
+    int STATUS_DRIVING = 1;
+
+    /**
+     * 离线
+     */
+    int STATUS_OFFLINE = 1 << 1;
+
+    /**
+     * 报警
+     */
+    int STATUS_ALARM = 1 << 2;
+
+    /**
+     * 在线
+     */
+    int STATUS_ONLINE = 1 << 3;
+
+    /**
+     * 在线未定位
+     */
+    int STATUS_LINE_DELOCALI = 1 << 4;
+
+    /**
+     * 风险
+     */
+    int STATUS_RISK = 1 << 5;
+
+    /**
+     * 预警
+     */
+    int STATUS_WARNING = 1 << 6;
+
+    /**
+     * 状态的种类数量，第i种状态对应的标记为 1 << i
+     */
+    int STATUS_TYPES = 7;
+
+    /**
+     * 获取设备ID，同一棵树上的设备ID不能重复
+     * 
+     * @param device
+     * @return
+     */
+    long getDeviceId(DeviceStatusExpandMergeTreeBO device);
+
+    /**
+     * 获取设备的状态标记，由 STATUS_* 组合而成
+     * 
+     * @param device
+     * @return
+     */
+    int getStatusFlags(DeviceStatusExpandMergeTreeBO device);
+
+    /**
+     * 获取设备可以被搜索的文字，例如车牌号、IMEI
+     * 
+     * @param device
+     * @return 默认返回null，不支持搜索设备
+     */
+    default String[] getSearchTexts(DeviceStatusExpandMergeTreeBO device) {
+        return null;
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.chedaia.boss.web.model;
+
+import java.util.Comparator;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * <pre>
+ * 虚拟分组中设备的排序方式
+ * 
+ * 每个设备先计算一个long类型的排序key，再按照key排序，key相同时保持设备原来的顺序
+ * 例如按照最后上报时间排序时key为时间的毫秒数，按照状态排序时key为状态的优先级
+ * 不能转换成long的排序方式（例如按照车牌号排序）使用比较器，见 byString
+ * 使用比较器时排序是稳定的，getTopDevices 也会对全部设备排序并缓存结果
+ * 虚拟分组按照name缓存排序的结果，不同的排序方式需要使用不同的name
+ * 见 TreeVirtualNode.getSortedDeviceList、TreeVirtualNode.getTopDevices
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public final class TreeDeviceSortOrder<T> {
+
+    private final String name;
+
+    private final ToLongFunction<? super T> sortKey;
+
+    private final Comparator<? super T> comparator;
+
+    private final boolean descending;
+
+    /**
+     * @param name 排序方式的名称，作为缓存的key
+     * @param sortKey 计算设备的排序key
+     * @param descending true:按照key降序排列
+     */
+    public TreeDeviceSortOrder(String name, ToLongFunction<? super T> sortKey, boolean descending){
+        this.name = name;
+        this.sortKey = sortKey;
+        this.comparator = null;
+        this.descending = descending;
+    }
+
+    /**
+     * @param name 排序方式的名称，作为缓存的key
+     * @param comparator 设备的比较器，降序时传入反转后的比较器
+     */
+    public TreeDeviceSortOrder(String name, Comparator<? super T> comparator){
+        this.name = name;
+        this.sortKey = null;
+        this.comparator = comparator;
+        this.descending = false;
+    }
+
+    /**
+     * 按照字符串排序，例如车牌号，字符串为null的设备排在最后
+     * 
+     * @param name 排序方式的名称，作为缓存的key
+     * @param key 获取设备的字符串
+     * @param descending true:按照字符串降序排列
+     * @return
+     */
+    public static <T> TreeDeviceSortOrder<T> byString(String name, final Function<? super T, String> key,
+                                                      boolean descending) {
+        final Comparator<String> strings = Comparator.nullsLast(descending ? Comparator.<String> reverseOrder()
+                                                                           : Comparator.<String> naturalOrder());
+        return new TreeDeviceSortOrder<>(name, new Comparator<T>() {
+
+            @Override
+            public int compare(T a, T b) {
+                return strings.compare(key.apply(a), key.apply(b));
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 使用比较器时返回null
+     */
+    public ToLongFunction<? super T> getSortKey() {
+        return sortKey;
+    }
+
+    /**
+     * @return 使用long类型的排序key时返回null
+     */
+    public Comparator<? super T> getComparator() {
+        return comparator;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+}
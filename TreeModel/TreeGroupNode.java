@@ -1,6 +1,7 @@
 package com.chedaia.boss.web.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -9,7 +10,6 @@ import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
 import com.chedaia.biz.device.entity.StatisticsGroupNumberEntity;
 import com.chedaia.biz.user.entity.GroupEntity;
 import com.chedaia.boss.web.bo.StatDeviceNumberBO;
-import com.chedaia.common.tools.util.DateUtil;
 
 /**
  * <pre>
@@ -31,7 +31,7 @@ public class TreeGroupNode {
 
     /**
      * 月份组做特殊处理<br>
-     * 将安装时间转成月份作为虚拟分组名称
+     * 将安装时间转成月份作为虚拟分组名称，见 PropertyVirtualGroupingStrategy
      */
     public static final String YFZ = "月份组";
 
@@ -61,11 +61,40 @@ public class TreeGroupNode {
      */
     private Map<String, TreeVirtualNode<DeviceStatusExpandMergeTreeBO>> childVirtualNodeMap = new TreeMap<>();
 
+    /**
+     * 虚拟分组的key，和virtualNodesByKey一一对应<br>
+     * 每个分组下的虚拟分组很少，顺序查找比Map更快，并且不需要装箱
+     */
+    private long[] virtualNodeKeys = new long[4];
+
+    /**
+     * key对应的虚拟分组，不能创建泛型数组，元素都是TreeVirtualNode，通过virtualNodeAt读取
+     */
+    private Object[] virtualNodesByKey = new Object[4];
+
+    private int virtualNodeKeyCount = 0;
+
+    /**
+     * 上级分组节点，根节点为null
+     */
+    private TreeGroupNode parentGroupNode;
+
     /**
      * 这个分组下的全部设备数量
      */
     private int allDeviceCount = 0;
 
+    /**
+     * 直接属于这个分组的设备数量，不包含下级分组
+     */
+    private int localDeviceCount = 0;
+
+    /**
+     * 这个分组下全部设备中每种状态的设备数量，包含下级分组<br>
+     * 下标为状态标记的位序号，见 TreeDeviceResolver.STATUS_*，没有设置deviceResolver时都是0
+     */
+    private int[] statusCounts = new int[TreeDeviceResolver.STATUS_TYPES];
+
     /**
      * 构造方法
      * 
@@ -147,7 +176,7 @@ public class TreeGroupNode {
      * @param node
      */
     public void addChildGroupNode(TreeGroupNode node) {
-        childGroupNode.add(node);
+        attachChildGroupNode(node);
         // 节点的统计数字递增
         StatDeviceNumberBO statistics = node.getStatDeviceNumberBO();
         if (statistics != null) {
@@ -155,6 +184,94 @@ public class TreeGroupNode {
         }
     }
 
+    /**
+     * 添加分组类型的子节点，不累加统计信息<br>
+     * 批量构建时使用，统计信息在构建完成后统一汇总
+     * 
+     * @param node
+     */
+    void attachChildGroupNode(TreeGroupNode node) {
+        node.parentGroupNode = this;
+        childGroupNode.add(node);
+    }
+
+    /**
+     * <pre>
+     * 添加从其他树模型复制的子树作为下级分组，见 copySharedSubtree
+     * 当前分组及上级分组累加这个节点的设备数量、状态数量和统计信息
+     * 下级分组的顺序由 TreeModel.attachSharedGroupNodes 统一调整
+     * </pre>
+     * 
+     * @param node 复制的子树的根节点
+     */
+    void attachSharedChildGroupNode(TreeGroupNode node) {
+        node.parentGroupNode = this;
+        childGroupNode.add(node);
+
+        TreeGroupNode ancestor = this;
+        while (ancestor != null) {
+            ancestor.allDeviceCount += node.allDeviceCount;
+            addStatusCounts(ancestor.statusCounts, node.statusCounts);
+            ancestor = ancestor.parentGroupNode;
+        }
+        incrementalStatisticsInfo(node.getStatDeviceNumberBO());
+    }
+
+    /**
+     * <pre>
+     * 为另一个树模型复制以当前节点为根的子树
+     * 只复制分组节点，虚拟分组和设备仍然共用，复制后当前子树和复制的子树都不能再修改
+     * 复制的节点属于新的树模型，根节点没有上级节点，不能通过复制的节点访问到原来的树
+     * </pre>
+     * 
+     * @param treeModel 复制的节点所属的树模型
+     * @param copies 按先序添加复制的节点
+     * @return 复制的根节点
+     */
+    TreeGroupNode copySharedSubtree(TreeModel treeModel, List<TreeGroupNode> copies) {
+        TreeGroupNode root = copySharedNode(treeModel);
+        copies.add(root);
+
+        // 用显式的栈复制，树的深度不影响线程栈
+        List<TreeGroupNode> sources = new ArrayList<>();
+        List<TreeGroupNode> targets = new ArrayList<>();
+        sources.add(this);
+        targets.add(root);
+        while (!sources.isEmpty()) {
+            TreeGroupNode source = sources.remove(sources.size() - 1);
+            TreeGroupNode target = targets.remove(targets.size() - 1);
+            for (TreeGroupNode child : source.childGroupNode) {
+                TreeGroupNode copy = child.copySharedNode(treeModel);
+                copy.parentGroupNode = target;
+                target.childGroupNode.add(copy);
+                copies.add(copy);
+                sources.add(child);
+                targets.add(copy);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * 复制当前节点，不包含下级分组
+     * 
+     * @param treeModel
+     * @return
+     */
+    private TreeGroupNode copySharedNode(TreeModel treeModel) {
+        TreeGroupNode copy = new TreeGroupNode(treeModel, groupEntity);
+        copy.statDeviceNumberBO = statDeviceNumberBO;
+        copy.childGroupNode = new ArrayList<>(childGroupNode.size());
+        copy.childVirtualNodeMap = childVirtualNodeMap;
+        copy.virtualNodeKeys = virtualNodeKeys;
+        copy.virtualNodesByKey = virtualNodesByKey;
+        copy.virtualNodeKeyCount = virtualNodeKeyCount;
+        copy.allDeviceCount = allDeviceCount;
+        copy.localDeviceCount = localDeviceCount;
+        copy.statusCounts = statusCounts.clone();
+        return copy;
+    }
+
     /**
      * 累加统计信息
      * 
@@ -164,6 +281,20 @@ public class TreeGroupNode {
         if (statisticsInfo == null) {
             return;
         }
+        // 当前节点及上级节点累加
+        TreeGroupNode node = this;
+        while (node != null) {
+            node.addStatistics(statisticsInfo);
+            node = node.parentGroupNode;
+        }
+    }
+
+    /**
+     * 只在当前节点上累加统计信息，不处理上级节点
+     * 
+     * @param statisticsInfo
+     */
+    void addStatistics(StatDeviceNumberBO statisticsInfo) {
         // 当前的统计对象
         StatDeviceNumberBO sdnbo = getStatDeviceNumberBO();
 
@@ -180,38 +311,388 @@ public class TreeGroupNode {
         sdnbo.setLineDelocali(sdnbo.getLineDelocali() + statisticsInfo.getLineDelocali());
         sdnbo.setRisk(sdnbo.getRisk() + statisticsInfo.getRisk());
         sdnbo.setWarning(sdnbo.getWarning() + statisticsInfo.getWarning());
-
-        // 上级节点累加
-        TreeGroupNode parentGroupNode = getParentGroupNode();
-        if (parentGroupNode != null) {
-            parentGroupNode.incrementalStatisticsInfo(statisticsInfo);
-        }
     }
 
     /**
      * <pre>
      * 往当前分组中添加设备
-     * 会将设备添加到对应的虚拟分组中
+     * 会将设备添加到对应的虚拟分组中，树模型中的设备数量需要重新刷新
+     * 不会记录设备的位置，也不会加入搜索索引，之后需要更新或删除的设备使用 TreeModel.addDevice
      * </pre>
      * 
      * @param device
      */
     public void addDevice(DeviceStatusExpandMergeTreeBO device) {
+        if (treeModel != null) {
+            treeModel.checkWritable();
+        }
+        putDevice(device);
+        if (treeModel != null) {
+            treeModel.onDevicesChanged();
+        }
+    }
+
+    /**
+     * 往当前分组中添加设备
+     * 
+     * @param device
+     * @return 设备所在的虚拟分组
+     */
+    TreeVirtualNode<DeviceStatusExpandMergeTreeBO> putDevice(DeviceStatusExpandMergeTreeBO device) {
         if (device == null) {
-            return;
+            return null;
+        }
+        return putDevice(device, getStatusFlags(device));
+    }
+
+    private TreeVirtualNode<DeviceStatusExpandMergeTreeBO> putDevice(DeviceStatusExpandMergeTreeBO device,
+                                                                     int statusFlags) {
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> treeVirtualNode = getOrCreateVirtualNode(device);
+
+        treeVirtualNode.addDevice(device);
+        treeVirtualNode.countStatus(statusFlags, 1);
+
+        // 累加分组下的设备数
+        incrementDeviceCount();
+        incrementStatusCount(statusFlags, 1);
+
+        return treeVirtualNode;
+    }
+
+    /**
+     * <pre>
+     * 批量添加设备时使用
+     * 只将设备放到虚拟分组中并累加当前分组自己的设备数量
+     * 全部设备添加完后需要按照后序对每个分组调用 aggregateDeviceCount 汇总
+     * </pre>
+     * 
+     * @param device
+     * @return 设备所在的虚拟分组
+     */
+    TreeVirtualNode<DeviceStatusExpandMergeTreeBO> attachDevice(DeviceStatusExpandMergeTreeBO device) {
+        if (device == null) {
+            return null;
+        }
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> treeVirtualNode = getOrCreateVirtualNode(device);
+        treeVirtualNode.addDevice(device);
+        treeVirtualNode.countStatus(getStatusFlags(device), 1);
+        localDeviceCount++;
+        return treeVirtualNode;
+    }
+
+    /**
+     * 批量添加按列存储的设备时使用，和attachDevice一样只累加当前分组自己的设备数量
+     * 
+     * @param store
+     * @param row 行号
+     * @return 设备所在的虚拟分组
+     */
+    TreeVirtualNode<DeviceStatusExpandMergeTreeBO> attachDeviceRow(DeviceColumnStore store, int row) {
+        long bucketKey = treeModel.getVirtualGroupingStrategy().bucketKey(treeModel, store, row);
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> treeVirtualNode = getOrCreateVirtualNode(bucketKey,
+            store.getProperty(row));
+        treeVirtualNode.addDeviceRow(store, row);
+        treeVirtualNode.countStatus(store.getStatusFlags(row), 1);
+        localDeviceCount++;
+        return treeVirtualNode;
+    }
+
+    /**
+     * 由当前分组自己的设备和直接下级分组汇总当前分组的设备数量和状态数量<br>
+     * 下级分组需要先汇总，见 TreeModel.aggregateDeviceCount
+     * 
+     * @return 当前分组下的全部设备数量
+     */
+    int aggregateDeviceCount() {
+        Arrays.fill(statusCounts, 0);
+        for (TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode : childVirtualNodeMap.values()) {
+            addStatusCounts(statusCounts, virtualNode.getStatusCounts());
         }
-        String virtualNodeName = calcVirtualNodeName(device);
+
+        int count = localDeviceCount;
+        for (TreeGroupNode child : childGroupNode) {
+            count += child.allDeviceCount;
+            addStatusCounts(statusCounts, child.statusCounts);
+        }
+        allDeviceCount = count;
+        return count;
+    }
+
+    /**
+     * 设备的状态标记，没有设置deviceResolver时为0
+     * 
+     * @param device
+     * @return
+     */
+    private int getStatusFlags(DeviceStatusExpandMergeTreeBO device) {
+        TreeDeviceResolver deviceResolver = treeModel.getDeviceResolver();
+        return deviceResolver == null ? 0 : deviceResolver.getStatusFlags(device);
+    }
+
+    /**
+     * 获取设备对应的虚拟分组，不存在时创建
+     * 
+     * @param device
+     * @return
+     */
+    private TreeVirtualNode<DeviceStatusExpandMergeTreeBO> getOrCreateVirtualNode(DeviceStatusExpandMergeTreeBO device) {
+        long bucketKey = treeModel.getVirtualGroupingStrategy().bucketKey(treeModel, device);
+        return getOrCreateVirtualNode(bucketKey, device.getProperty());
+    }
+
+    /**
+     * 获取虚拟分组的key对应的虚拟分组，不存在时创建
+     * 
+     * @param bucketKey 虚拟分组的key
+     * @param property 设备类型
+     * @return
+     */
+    private TreeVirtualNode<DeviceStatusExpandMergeTreeBO> getOrCreateVirtualNode(long bucketKey, Integer property) {
+        for (int i = 0; i < virtualNodeKeyCount; i++) {
+            if (virtualNodeKeys[i] == bucketKey) {
+                return virtualNodeAt(i);
+            }
+        }
+
+        // 这个分组下第一次出现这个key，计算虚拟分组的名称
+        String virtualNodeName = treeModel.getVirtualGroupingStrategy().bucketName(treeModel, bucketKey);
         TreeVirtualNode<DeviceStatusExpandMergeTreeBO> treeVirtualNode = childVirtualNodeMap.get(virtualNodeName);
         if (treeVirtualNode == null) {
             // 创建虚拟分组
-            treeVirtualNode = new TreeVirtualNode<>(getGroupId(), device.getProperty(), virtualNodeName);
+            treeVirtualNode = new TreeVirtualNode<>(getGroupId(), property, virtualNodeName);
             childVirtualNodeMap.put(virtualNodeName, treeVirtualNode);
         }
 
-        treeVirtualNode.addDevice(device);
+        if (virtualNodeKeyCount == virtualNodeKeys.length) {
+            virtualNodeKeys = Arrays.copyOf(virtualNodeKeys, virtualNodeKeyCount * 2);
+            virtualNodesByKey = Arrays.copyOf(virtualNodesByKey, virtualNodeKeyCount * 2);
+        }
+        virtualNodeKeys[virtualNodeKeyCount] = bucketKey;
+        virtualNodesByKey[virtualNodeKeyCount] = treeVirtualNode;
+        virtualNodeKeyCount++;
 
-        // 累加分组下的设备数
-        incrementDeviceCount();
+        return treeVirtualNode;
+    }
+
+    @SuppressWarnings("unchecked")
+    private TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNodeAt(int index) {
+        return (TreeVirtualNode<DeviceStatusExpandMergeTreeBO>) virtualNodesByKey[index];
+    }
+
+    /**
+     * <pre>
+     * 增量添加一个新设备
+     * 和addDevice不同，如果当前分组有统计信息会同时累加统计信息
+     * </pre>
+     * 
+     * @param device
+     * @param statusFlags 设备的状态标记
+     * @return 设备所在的虚拟分组
+     */
+    TreeVirtualNode<DeviceStatusExpandMergeTreeBO> addNewDevice(DeviceStatusExpandMergeTreeBO device,
+                                                                int statusFlags) {
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> treeVirtualNode = putDevice(device, statusFlags);
+
+        if (statDeviceNumberBO != null) {
+            incrementalStatisticsInfo(createStatisticsDelta(1, 0, statusFlags));
+        }
+        return treeVirtualNode;
+    }
+
+    /**
+     * <pre>
+     * 从当前分组中移除设备
+     * 设备数量和统计信息会向上递减，虚拟分组中没有设备后会删除虚拟分组
+     * </pre>
+     * 
+     * @param virtualNode 设备所在的虚拟分组
+     * @param device
+     * @param statusFlags 设备的状态标记
+     */
+    void removeDevice(TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode,
+                      DeviceStatusExpandMergeTreeBO device, int statusFlags) {
+        if (!virtualNode.removeDevice(device)) {
+            return;
+        }
+        virtualNode.countStatus(statusFlags, -1);
+        removeVirtualNodeIfEmpty(virtualNode);
+
+        incrementDeviceCount(-1);
+        incrementStatusCount(statusFlags, -1);
+
+        if (statDeviceNumberBO != null) {
+            incrementalStatisticsInfo(createStatisticsDelta(-1, statusFlags, 0));
+        }
+    }
+
+    /**
+     * <pre>
+     * 更新当前分组中的设备
+     * 设备的类型或安装时间变化后会移动到新的虚拟分组中
+     * 设备的状态变化后会更新当前分组和上级分组的统计信息
+     * </pre>
+     * 
+     * @param virtualNode 设备当前所在的虚拟分组
+     * @param oldDevice 树上旧的设备对象
+     * @param newDevice 新的设备对象
+     * @param oldFlags 旧的状态标记
+     * @param newFlags 新的状态标记
+     * @return 设备更新后所在的虚拟分组
+     */
+    TreeVirtualNode<DeviceStatusExpandMergeTreeBO> changeDevice(TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode,
+                                                                DeviceStatusExpandMergeTreeBO oldDevice,
+                                                                DeviceStatusExpandMergeTreeBO newDevice, int oldFlags,
+                                                                int newFlags) {
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> targetNode = getOrCreateVirtualNode(newDevice);
+
+        // 虚拟分组没有变化时原位置替换
+        boolean replaced = targetNode == virtualNode && virtualNode.replaceDevice(oldDevice, newDevice);
+        if (!replaced) {
+            boolean removed = virtualNode.removeDevice(oldDevice);
+            targetNode.addDevice(newDevice);
+            removeVirtualNodeIfEmpty(virtualNode);
+            if (!removed) {
+                // 旧的设备不在虚拟分组中，按照新设备添加一次，数量只累加一次
+                targetNode.countStatus(newFlags, 1);
+                incrementDeviceCount();
+                incrementStatusCount(newFlags, 1);
+                if (statDeviceNumberBO != null) {
+                    incrementalStatisticsInfo(createStatisticsDelta(1, 0, newFlags));
+                }
+                return targetNode;
+            }
+        }
+        virtualNode.countStatus(oldFlags, -1);
+        targetNode.countStatus(newFlags, 1);
+
+        if (oldFlags != newFlags) {
+            incrementStatusCount(oldFlags, -1);
+            incrementStatusCount(newFlags, 1);
+            if (statDeviceNumberBO != null) {
+                incrementalStatisticsInfo(createStatisticsDelta(0, oldFlags, newFlags));
+            }
+        }
+        return targetNode;
+    }
+
+    /**
+     * <pre>
+     * 移除当前分组自己的全部虚拟分组，按需加载设备时释放分组的设备
+     * 设备数量保持不变，状态数量从当前分组和上级分组中减去
+     * </pre>
+     * 
+     * @return 移除的虚拟分组
+     */
+    List<TreeVirtualNode<DeviceStatusExpandMergeTreeBO>> detachVirtualNodes() {
+        List<TreeVirtualNode<DeviceStatusExpandMergeTreeBO>> removed = new ArrayList<>(childVirtualNodeMap.values());
+        for (TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode : removed) {
+            int[] counts = virtualNode.getStatusCounts();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    incrementStatusCount(1 << i, -counts[i]);
+                }
+            }
+        }
+
+        childVirtualNodeMap.clear();
+        Arrays.fill(virtualNodesByKey, 0, virtualNodeKeyCount, null);
+        virtualNodeKeyCount = 0;
+        return removed;
+    }
+
+    /**
+     * 虚拟分组中没有设备时从当前分组中删除
+     * 
+     * @param virtualNode
+     */
+    private void removeVirtualNodeIfEmpty(TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode) {
+        if (virtualNode.getDeviceCount() != 0) {
+            return;
+        }
+        childVirtualNodeMap.remove(virtualNode.getNodeName());
+
+        // 删除指向这个虚拟分组的全部key
+        int count = 0;
+        for (int i = 0; i < virtualNodeKeyCount; i++) {
+            if (virtualNodesByKey[i] != virtualNode) {
+                virtualNodeKeys[count] = virtualNodeKeys[i];
+                virtualNodesByKey[count] = virtualNodesByKey[i];
+                count++;
+            }
+        }
+        for (int i = count; i < virtualNodeKeyCount; i++) {
+            virtualNodesByKey[i] = null;
+        }
+        virtualNodeKeyCount = count;
+    }
+
+    /**
+     * 根据设备状态标记的变化创建统计信息的增量
+     * 
+     * @param allDelta 设备总数的变化
+     * @param oldFlags 旧的状态标记
+     * @param newFlags 新的状态标记
+     * @return
+     */
+    private static StatDeviceNumberBO createStatisticsDelta(int allDelta, int oldFlags, int newFlags) {
+        StatDeviceNumberBO delta = new StatDeviceNumberBO();
+
+        delta.setAll(allDelta);
+        delta.setDring(flagDelta(TreeDeviceResolver.STATUS_DRIVING, oldFlags, newFlags));
+        delta.setOffline(flagDelta(TreeDeviceResolver.STATUS_OFFLINE, oldFlags, newFlags));
+        delta.setAlarm(flagDelta(TreeDeviceResolver.STATUS_ALARM, oldFlags, newFlags));
+        delta.setOnline(flagDelta(TreeDeviceResolver.STATUS_ONLINE, oldFlags, newFlags));
+        delta.setLineDelocali(flagDelta(TreeDeviceResolver.STATUS_LINE_DELOCALI, oldFlags, newFlags));
+        delta.setRisk(flagDelta(TreeDeviceResolver.STATUS_RISK, oldFlags, newFlags));
+        delta.setWarning(flagDelta(TreeDeviceResolver.STATUS_WARNING, oldFlags, newFlags));
+
+        return delta;
+    }
+
+    /**
+     * <pre>
+     * 根据当前分组及下级分组中的设备创建统计信息
+     * 设备数量和各状态的数量在添加设备时已经累加，这里只是转换成统计信息的格式
+     * </pre>
+     * 
+     * @return
+     */
+    StatDeviceNumberBO createDeviceStatistics() {
+        StatDeviceNumberBO deviceNumber = new StatDeviceNumberBO();
+
+        deviceNumber.setAll(allDeviceCount);
+        deviceNumber.setDring(getStatusCount(TreeDeviceResolver.STATUS_DRIVING));
+        deviceNumber.setOffline(getStatusCount(TreeDeviceResolver.STATUS_OFFLINE));
+        deviceNumber.setAlarm(getStatusCount(TreeDeviceResolver.STATUS_ALARM));
+        deviceNumber.setOnline(getStatusCount(TreeDeviceResolver.STATUS_ONLINE));
+        deviceNumber.setLineDelocali(getStatusCount(TreeDeviceResolver.STATUS_LINE_DELOCALI));
+        deviceNumber.setRisk(getStatusCount(TreeDeviceResolver.STATUS_RISK));
+        deviceNumber.setWarning(getStatusCount(TreeDeviceResolver.STATUS_WARNING));
+
+        return deviceNumber;
+    }
+
+    private static int flagDelta(int flag, int oldFlags, int newFlags) {
+        return ((newFlags & flag) != 0 ? 1 : 0) - ((oldFlags & flag) != 0 ? 1 : 0);
+    }
+
+    /**
+     * <pre>
+     * 按需加载设备时，没有加载设备的分组上的设备变化
+     * 只修改设备数量和统计信息，不创建虚拟分组
+     * </pre>
+     * 
+     * @param allDelta 设备数量的变化
+     * @param oldFlags 设备旧的状态标记，新增设备时为0
+     * @param newFlags 设备新的状态标记，移除设备时为0
+     */
+    void changeUnloadedDevice(int allDelta, int oldFlags, int newFlags) {
+        if (allDelta != 0) {
+            incrementDeviceCount(allDelta);
+        }
+        if (statDeviceNumberBO != null) {
+            incrementalStatisticsInfo(createStatisticsDelta(allDelta, oldFlags, newFlags));
+        }
     }
 
     /**
@@ -219,13 +700,7 @@ public class TreeGroupNode {
      * 向该分组添加设备时需要将上级分组的设备数量+1
      */
     public void incrementDeviceCount() {
-        allDeviceCount++;
-
-        // 上级节点累加
-        TreeGroupNode parentGroupNode = getParentGroupNode();
-        if (parentGroupNode != null) {
-            parentGroupNode.incrementDeviceCount();
-        }
+        incrementDeviceCount(1);
     }
 
     /**
@@ -235,35 +710,83 @@ public class TreeGroupNode {
      * @param deviceCount 当前分组的设备数量
      */
     public void incrementDeviceCount(int deviceCount) {
-        this.allDeviceCount += deviceCount;
-        // 上级节点累加
-        TreeGroupNode parentGroupNode = getParentGroupNode();
-        if (parentGroupNode != null) {
-            parentGroupNode.incrementDeviceCount(deviceCount);
+        this.localDeviceCount += deviceCount;
+
+        // 当前节点及上级节点累加
+        TreeGroupNode node = this;
+        while (node != null) {
+            node.allDeviceCount += deviceCount;
+            node = node.parentGroupNode;
         }
     }
 
     /**
-     * 计算虚拟分组的名字<br>
-     * 如果是月份组会按照服务期计算为 yyyy-MM 格式
+     * 当前分组及上级分组的状态数量累加
      * 
-     * @param device
+     * @param statusFlags 设备的状态标记
+     * @param delta 1:添加设备，-1:删除设备
+     */
+    private void incrementStatusCount(int statusFlags, int delta) {
+        if (statusFlags == 0) {
+            return;
+        }
+        TreeGroupNode node = this;
+        while (node != null) {
+            addStatusCounts(node.statusCounts, statusFlags, delta);
+            node = node.parentGroupNode;
+        }
+    }
+
+    /**
+     * 获取这个分组下指定状态的设备数量，包含下级分组
+     * 
+     * @param statusFlag TreeDeviceResolver.STATUS_* 中的一个
+     * @return
+     */
+    public int getStatusCount(int statusFlag) {
+        return statusCounts[Integer.numberOfTrailingZeros(statusFlag)];
+    }
+
+    /**
+     * 这个分组下是否有设备处于指定的任意一种状态，包含下级分组
+     * 
+     * @param statusMask TreeDeviceResolver.STATUS_* 的组合
      * @return
      */
-    private String calcVirtualNodeName(DeviceStatusExpandMergeTreeBO device) {
-        Integer property = device.getProperty();
+    public boolean hasStatus(int statusMask) {
+        return hasStatus(statusCounts, statusMask);
+    }
 
-        String propertyName = treeModel.getPropertyName(property);
+    static boolean hasStatus(int[] counts, int statusMask) {
+        for (int i = 0; i < counts.length; i++) {
+            if ((statusMask & (1 << i)) != 0 && counts[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        // 月份组要改成 年-月 的格式
-        if (YFZ.equals(propertyName)) {
-            if (device.getInstallTime() == null) {
-                propertyName = "未安装";
-            } else {
-                propertyName = DateUtil.parseDate(device.getInstallTime(), "yyyy-MM");
+    static void addStatusCounts(int[] counts, int statusFlags, int delta) {
+        for (int i = 0; i < counts.length; i++) {
+            if ((statusFlags & (1 << i)) != 0) {
+                counts[i] += delta;
             }
         }
-        return propertyName;
+    }
+
+    private static void addStatusCounts(int[] counts, int[] other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other[i];
+        }
+    }
+
+    /**
+     * 释放下级分组列表多余的容量，树压缩时使用
+     */
+    void trimToSize() {
+        if (childGroupNode instanceof ArrayList) {
+            ((ArrayList<TreeGroupNode>) childGroupNode).trimToSize();
+        }
     }
 
     /**
@@ -299,7 +822,7 @@ public class TreeGroupNode {
      * @return
      */
     public TreeGroupNode getParentGroupNode() {
-        return treeModel.getTreeGroupNodeByGroupId(getParentNodeId());
+        return parentGroupNode;
     }
 
     public TreeModel getTreeModel() {
@@ -334,6 +857,10 @@ public class TreeGroupNode {
         return allDeviceCount;
     }
 
+    public int getLocalDeviceCount() {
+        return localDeviceCount;
+    }
+
     public List<TreeGroupNode> getChildGroupNode() {
         return childGroupNode;
     }
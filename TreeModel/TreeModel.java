@@ -1,11 +1,24 @@
 package com.chedaia.boss.web.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +27,7 @@ import com.chedaia.biz.base.bo.ParameterBO;
 import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
 import com.chedaia.biz.device.entity.StatisticsGroupNumberEntity;
 import com.chedaia.biz.user.entity.GroupEntity;
+import com.chedaia.boss.web.bo.StatDeviceNumberBO;
 
 /**
  * <pre>
@@ -21,9 +35,11 @@ import com.chedaia.biz.user.entity.GroupEntity;
  * 
  * 先创建一个树模型：createTreeModel
  * 再往模型中添加数据：addDevice
- * 再调用返回获取数据：expandTree2FlatList、expandGroupNode2FlatList、expandOneLevelGroupNode、getRootTreeModelItem
+ * 再调用返回获取数据：expandTree2FlatList、expandGroupNode2FlatList、expandOneLevelGroupNode、getRootTreeModelItem、expandVisibleRows
+ * 数据量大时使用treeIterator边展开边输出
  * 
  * 注意：不要重复构建
+ * 多个用户监控同一批分组时，使用 TreeModelSnapshot 共享构建好的树模型
  * </pre>
  * 
  * @version
@@ -40,6 +56,16 @@ public class TreeModel {
 
     private static Logger logger = LoggerFactory.getLogger(TreeModel.class);
 
+    /**
+     * 设备数量少于这个值时并行添加设备没有意义，直接顺序添加
+     */
+    private static final int PARALLEL_DEVICE_THRESHOLD = 10000;
+
+    /**
+     * 新创建的树模型使用的监控指标回调
+     */
+    private static volatile TreeModelMetricsListener defaultMetricsListener = TreeModelMetricsListener.NOOP;
+
     /**
      * 当前用户所有的监控的分组
      */
@@ -60,6 +86,87 @@ public class TreeModel {
      */
     private Map<Integer, String> propertyName = new HashMap<>();
 
+    /**
+     * 名称为月份组的虚拟分组类型，通常只有一个
+     */
+    private int[] installTimeProperties = new int[0];
+
+    /**
+     * 虚拟分组的划分方式
+     */
+    private VirtualGroupingStrategy virtualGroupingStrategy = new PropertyVirtualGroupingStrategy();
+
+    /**
+     * 用于获取设备ID和设备状态，增量更新设备时需要
+     */
+    private TreeDeviceResolver deviceResolver;
+
+    /**
+     * 设置了deviceResolver后，记录树上的全部设备，key为设备ID
+     */
+    private Map<Long, DeviceEntry> deviceIndex = new HashMap<>();
+
+    /**
+     * 分组的统计信息根据树上的设备计算，不使用查询到的统计信息，见 setStatisticsFromDevices
+     */
+    private boolean statisticsFromDevices = false;
+
+    /**
+     * 按需加载设备时提供分组的设备，为null时不按需加载，见 setDeviceSource
+     */
+    private DeviceSource deviceSource;
+
+    /**
+     * 按需加载设备时最多保留设备的分组数量
+     */
+    private int maxLoadedGroups;
+
+    /**
+     * 已经加载了设备的分组，按照最近使用的顺序排列，最早使用的在最前面
+     */
+    private LinkedHashMap<Integer, TreeGroupNode> loadedGroups;
+
+    /**
+     * 按需加载设备时，位置已知但所在分组没有加载设备的设备，key为设备ID
+     * 释放分组的设备或者设备移动到没有加载的分组时记录，这些设备变化时修改所在分组的设备数量
+     */
+    private Map<Long, UnloadedDevice> unloadedDevices;
+
+    /**
+     * 批量构建分组树时新创建的节点，按照创建顺序记录，不在批量构建时为null
+     */
+    private List<TreeGroupNode> bulkGroupNodes;
+
+    /**
+     * 分组树的紧凑存储，调用compact后使用，分组变化后失效
+     */
+    private CompactGroupTree compactTree;
+
+    /**
+     * 紧凑存储中的设备数量需要刷新
+     */
+    private boolean compactCountersStale = false;
+
+    /**
+     * 分组、虚拟分组和设备的搜索索引，第一次搜索时创建，只读的树模型可能被多个线程同时搜索，创建完成后再发布
+     */
+    private volatile TreeSearchIndex searchIndex;
+
+    /**
+     * 监控指标回调
+     */
+    private TreeModelMetricsListener metricsListener = defaultMetricsListener;
+
+    /**
+     * 分组不存在而没有添加的设备总数
+     */
+    private int rejectedDeviceCount = 0;
+
+    /**
+     * 只读的树模型，由共享快照创建的用户视图会被多个请求同时使用，不允许再修改
+     */
+    private boolean readOnly = false;
+
     /**
      * 设置虚拟分组的配置，用于获取虚拟分组的名字
      * 
@@ -74,6 +181,46 @@ public class TreeModel {
             String idStr = parameterBO.getParameterCode();
             propertyName.put(Integer.valueOf(idStr), parameterBO.getParameterName());
         }
+
+        // 记录月份组，计算虚拟分组时不需要每个设备都查名称
+        List<Integer> yfzList = new ArrayList<>();
+        for (Map.Entry<Integer, String> entry : propertyName.entrySet()) {
+            if (TreeGroupNode.YFZ.equals(entry.getValue())) {
+                yfzList.add(entry.getKey());
+            }
+        }
+        installTimeProperties = new int[yfzList.size()];
+        for (int i = 0; i < installTimeProperties.length; i++) {
+            installTimeProperties[i] = yfzList.get(i);
+        }
+    }
+
+    /**
+     * 这个虚拟分组类型是否是月份组，月份组按照安装时间再划分虚拟分组
+     * 
+     * @param property
+     * @return
+     */
+    public boolean isInstallTimeProperty(int property) {
+        for (int p : installTimeProperties) {
+            if (p == property) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 设置虚拟分组的划分方式，需要在添加设备之前设置
+     * 
+     * @param virtualGroupingStrategy
+     */
+    public void setVirtualGroupingStrategy(VirtualGroupingStrategy virtualGroupingStrategy) {
+        this.virtualGroupingStrategy = virtualGroupingStrategy;
+    }
+
+    public VirtualGroupingStrategy getVirtualGroupingStrategy() {
+        return virtualGroupingStrategy;
     }
 
     /**
@@ -90,6 +237,15 @@ public class TreeModel {
         return name;
     }
 
+    /**
+     * 虚拟分组的配置，key为虚拟分组Id，保存快照时使用
+     * 
+     * @return
+     */
+    Map<Integer, String> getPropertyNames() {
+        return propertyName;
+    }
+
     /**
      * 根据分组ID查找节点
      * 
@@ -100,9 +256,280 @@ public class TreeModel {
         if (groupId == null) {
             return null;
         }
+        if (allGroupNodes == null) {
+            // 压缩后使用紧凑存储查找
+            return compactTree.getNode(groupId);
+        }
         return allGroupNodes.get(groupId);
     }
 
+    /**
+     * <pre>
+     * 分组ancestorGroupId是否是分组groupId的上级分组，包括间接的上级分组
+     * 使用紧凑存储中先序排列的下标和子树大小判断，不需要沿着上级分组查找
+     * 分组结构变化后第一次查询时会重新创建紧凑存储
+     * </pre>
+     * 
+     * @param ancestorGroupId 上级分组ID
+     * @param groupId 分组ID
+     * @return 分组相同或者有一个分组不在树上时返回false
+     */
+    public boolean isAncestor(int ancestorGroupId, int groupId) {
+        return ancestorGroupId != groupId && isGroupInSubtree(groupId, ancestorGroupId);
+    }
+
+    /**
+     * 分组groupId是否在分组subtreeGroupId的子树中，分组相同时也返回true
+     * 
+     * @param groupId 分组ID
+     * @param subtreeGroupId 子树根节点的分组ID
+     * @return 有一个分组不在树上时返回false
+     */
+    public boolean isGroupInSubtree(int groupId, int subtreeGroupId) {
+        CompactGroupTree tree = getCompactTree();
+        int ancestor = tree.indexOf(subtreeGroupId);
+        int index = tree.indexOf(groupId);
+        return ancestor >= 0 && index >= 0 && tree.contains(ancestor, index);
+    }
+
+    /**
+     * 设备是否在分组或者分组的下级分组中
+     * 
+     * @param device
+     * @param groupId 分组ID
+     * @return 设备的分组不在树上时返回false
+     */
+    public boolean isDeviceInGroup(DeviceStatusExpandMergeTreeBO device, int groupId) {
+        Integer deviceGroupId = device.getGroupId();
+        return deviceGroupId != null && isGroupInSubtree(deviceGroupId, groupId);
+    }
+
+    /**
+     * <pre>
+     * 在给定的分组中查找包含分组groupId的分组
+     * 从分组自己开始向上查找，返回最近的一个
+     * 用于判断一个分组属于用户监控的哪个分组
+     * </pre>
+     * 
+     * @param groupId 分组ID
+     * @param candidateGroupIds 候选的分组ID
+     * @return 没有候选的分组包含这个分组时返回null
+     */
+    public TreeGroupNode findContainingGroup(int groupId, Set<Integer> candidateGroupIds) {
+        CompactGroupTree tree = getCompactTree();
+        for (int i = tree.indexOf(groupId); i >= 0; i = tree.parent[i]) {
+            if (candidateGroupIds.contains(tree.nodes[i].getGroupId())) {
+                return tree.nodes[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 分组在树上的深度
+     * 
+     * @param groupId 分组ID
+     * @return 根节点返回0，分组不在树上时返回-1
+     */
+    public int getGroupDepth(int groupId) {
+        CompactGroupTree tree = getCompactTree();
+        int index = tree.indexOf(groupId);
+        return index < 0 ? -1 : tree.depth[index];
+    }
+
+    /**
+     * <pre>
+     * 分组和它的全部下级分组，按照先序排列，第一个为分组自己
+     * 返回的是紧凑存储中一段连续的范围，不会复制，分组结构变化后不要再使用
+     * </pre>
+     * 
+     * @param groupId 分组ID
+     * @return 分组不在树上时返回空的List
+     */
+    public List<TreeGroupNode> getSubtreeGroupNodes(int groupId) {
+        CompactGroupTree tree = getCompactTree();
+        int index = tree.indexOf(groupId);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        List<TreeGroupNode> subtree = Arrays.asList(tree.nodes).subList(index, index + tree.subtreeSize[index]);
+        return Collections.unmodifiableList(subtree);
+    }
+
+    /**
+     * 从根节点到指定分组的路径，最后一个为分组自己
+     * 
+     * @param groupId 分组ID
+     * @return 分组不在树上时返回空的List
+     */
+    public List<TreeGroupNode> getBreadcrumb(int groupId) {
+        CompactGroupTree tree = getCompactTree();
+        int index = tree.indexOf(groupId);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(tree.path(index));
+    }
+
+    /**
+     * <pre>
+     * 将其他树模型上的子树复制到当前树上，只复制分组节点，虚拟分组和设备仍然共用
+     * 子树的根节点在原来的树上的上级分组在当前树上时作为它的下级分组，否则作为根节点
+     * 复制的节点属于当前树模型，不能通过它们访问到原来的树上不在当前树上的分组
+     * 挂上后按照子树中最小的分组ID调整同级节点的顺序，和用全部分组构建的树一致
+     * 
+     * 当前树上的分组和设备需要先构建完，共享的子树和当前树上的分组不能重叠
+     * 共享的虚拟分组不能再修改，当前树模型挂上后只用于读取
+     * </pre>
+     * 
+     * @param sharedRoots 共享子树的根节点
+     * @param sharedMinGroupIds 共享子树中最小的分组ID，和sharedRoots一一对应
+     */
+    void attachSharedGroupNodes(List<TreeGroupNode> sharedRoots, int[] sharedMinGroupIds) {
+        checkWritable();
+        onGroupsChanged();
+
+        Map<TreeGroupNode, Integer> minGroupIds = new IdentityHashMap<>();
+        List<TreeGroupNode> copies = new ArrayList<>();
+        for (int i = 0; i < sharedRoots.size(); i++) {
+            TreeGroupNode sharedRoot = sharedRoots.get(i);
+            TreeGroupNode sharedParent = sharedRoot.getParentGroupNode();
+            TreeGroupNode parent = sharedParent == null ? null : allGroupNodes.get(sharedParent.getGroupId());
+
+            copies.clear();
+            TreeGroupNode root = sharedRoot.copySharedSubtree(this, copies);
+            for (TreeGroupNode copy : copies) {
+                allGroupNodes.put(copy.getGroupId(), copy);
+                allGroups.put(copy.getGroupId(), copy.getGroupEntity());
+            }
+
+            minGroupIds.put(root, sharedMinGroupIds[i]);
+            if (parent == null) {
+                rootNodes.add(root);
+            } else {
+                parent.attachSharedChildGroupNode(root);
+            }
+        }
+
+        // 当前树上的节点按先序收集，逆序计算子树中最小的分组ID，不进入共享的子树
+        List<TreeGroupNode> localNodes = new ArrayList<>(allGroupNodes.size());
+        List<TreeGroupNode> stack = new ArrayList<>(rootNodes);
+        while (!stack.isEmpty()) {
+            TreeGroupNode node = stack.remove(stack.size() - 1);
+            if (minGroupIds.containsKey(node)) {
+                // 复制的子树内部的顺序和原来的树一致
+                continue;
+            }
+            localNodes.add(node);
+            stack.addAll(node.getChildGroupNode());
+        }
+        for (int i = localNodes.size() - 1; i >= 0; i--) {
+            TreeGroupNode node = localNodes.get(i);
+            int minGroupId = node.getGroupId();
+            for (TreeGroupNode child : node.getChildGroupNode()) {
+                minGroupId = Math.min(minGroupId, minGroupIds.get(child));
+            }
+            minGroupIds.put(node, minGroupId);
+        }
+
+        // 用全部分组构建时，节点在处理到子树中最小的分组ID时创建，同级节点按这个顺序排列
+        Comparator<TreeGroupNode> comparator = createMinGroupIdComparator(minGroupIds);
+        Collections.sort(rootNodes, comparator);
+        for (TreeGroupNode node : localNodes) {
+            Collections.sort(node.getChildGroupNode(), comparator);
+        }
+    }
+
+    private static Comparator<TreeGroupNode> createMinGroupIdComparator(final Map<TreeGroupNode, Integer> minGroupIds) {
+        return new Comparator<TreeGroupNode>() {
+
+            @Override
+            public int compare(TreeGroupNode o1, TreeGroupNode o2) {
+                return Integer.compare(minGroupIds.get(o1), minGroupIds.get(o2));
+            }
+        };
+    }
+
+    /**
+     * <pre>
+     * 压缩树模型
+     * 将分组的层级结构转换成按照先序排列的数组，之后的查找和展开都使用数组完成
+     * 同时释放构建时使用的Map，减少内存占用
+     * 树构建完成、不再添加分组后调用，之后再添加分组会重新创建Map并退回到普通模式
+     * </pre>
+     */
+    public void compact() {
+        getCompactTree();
+
+        allGroups = null;
+        allGroupNodes = null;
+
+        for (TreeGroupNode node : compactTree.nodes) {
+            node.trimToSize();
+        }
+    }
+
+    /**
+     * 是否已经压缩
+     * 
+     * @return
+     */
+    public boolean isCompacted() {
+        return compactTree != null && allGroupNodes == null;
+    }
+
+    /**
+     * 获取分组树的紧凑存储，不存在时创建，设备数量过期时刷新
+     * 
+     * @return
+     */
+    CompactGroupTree getCompactTree() {
+        if (compactTree == null) {
+            compactTree = CompactGroupTree.build(rootNodes);
+            compactCountersStale = false;
+        } else if (compactCountersStale) {
+            compactTree.refreshCounters();
+            compactCountersStale = false;
+        }
+        return compactTree;
+    }
+
+    /**
+     * <pre>
+     * 创建并刷新读取时才创建的紧凑存储、行号索引和搜索索引
+     * 之后到下一次修改前，只读的操作不会再修改树模型，可以被多个线程同时调用
+     * 按需加载设备的树模型展开时会加载设备，不能这样使用
+     * </pre>
+     */
+    void prepareForSharedRead() {
+        getCompactTree().prepareRowIndexes();
+        if (searchIndex == null) {
+            buildSearchIndex();
+        }
+    }
+
+    /**
+     * 分组结构变化前调用，压缩后释放的Map需要重新创建，紧凑存储失效
+     */
+    private void onGroupsChanged() {
+        if (allGroupNodes == null) {
+            allGroups = new HashMap<>();
+            allGroupNodes = new HashMap<>();
+            for (TreeGroupNode node : compactTree.nodes) {
+                allGroups.put(node.getGroupId(), node.getGroupEntity());
+                allGroupNodes.put(node.getGroupId(), node);
+            }
+        }
+        compactTree = null;
+    }
+
+    /**
+     * 设备变化后调用，紧凑存储中的设备数量需要刷新
+     */
+    void onDevicesChanged() {
+        compactCountersStale = true;
+    }
+
     /**
      * 返回根节点
      * 
@@ -118,19 +545,38 @@ public class TreeModel {
      * @param node
      */
     public void addGroupNode(TreeGroupNode node) {
+        checkWritable();
+        onGroupsChanged();
+
+        // 上级是自己时作为根节点
+        TreeGroupNode parentNode = allGroupNodes.get(node.getParentNodeId());
+
+        if (statisticsFromDevices && bulkGroupNodes == null) {
+            // 加到树形结构中时统计信息会累加到上级分组
+            node.setStatDeviceNumberBO(node.createDeviceStatistics());
+        }
+
         // 先记录这个节点
         allGroupNodes.put(node.getGroupId(), node);
 
         // 再加到树形结构中
-        TreeGroupNode parentNode = allGroupNodes.get(node.getParentNodeId());
-
         if (parentNode == null) {
             // 当前这个节点是根节点
             rootNodes.add(node);
+        } else if (bulkGroupNodes != null) {
+            // 批量构建时统计信息最后统一汇总
+            parentNode.attachChildGroupNode(node);
         } else {
             // 是某个节点的子节点
             parentNode.addChildGroupNode(node);
         }
+
+        if (bulkGroupNodes != null) {
+            bulkGroupNodes.add(node);
+        }
+        if (searchIndex != null) {
+            searchIndex.addGroup(node);
+        }
     }
 
     /**
@@ -140,107 +586,1271 @@ public class TreeModel {
      * </pre>
      */
     public void addDevice(DeviceStatusExpandMergeTreeBO device) {
+        checkWritable();
+
         Integer groupId = device.getGroupId();
         TreeGroupNode treeNode = getTreeGroupNodeByGroupId(groupId);
         if (treeNode == null) {
             logger.warn("往模型树中添加设备时设备对应的分组不存在，分组ID:{}", groupId);
+            rejectDevice(device);
+            return;
+        }
+        if (!isDevicesLoaded(treeNode)) {
+            // 分组的设备在展开时从deviceSource加载，这里只累加数量
+            int statusFlags = deviceResolver == null ? 0 : deviceResolver.getStatusFlags(device);
+            if (deviceResolver == null) {
+                treeNode.changeUnloadedDevice(1, 0, statusFlags);
+            } else {
+                addUnloadedDevice(deviceResolver.getDeviceId(device), treeNode, statusFlags);
+            }
+            onDevicesChanged();
             return;
         }
 
-        treeNode.addDevice(device);
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode;
+        if (statisticsFromDevices) {
+            // 统计信息随设备数量一起向上累加
+            int statusFlags = deviceResolver == null ? 0 : deviceResolver.getStatusFlags(device);
+            virtualNode = treeNode.addNewDevice(device, statusFlags);
+        } else {
+            virtualNode = treeNode.putDevice(device);
+        }
+        indexDevice(device, virtualNode);
+        addToSearchIndex(device, virtualNode);
+        onDevicesChanged();
     }
 
     /**
-     * 构建树模型
+     * <pre>
+     * 批量往模型树中添加设备
+     * 设备只累加到所在分组自己的数量上，全部添加完后一次后序遍历汇总各级分组的设备数量
+     * 大量设备时比逐个调用addDevice少了每个设备向上逐级累加的开销
+     * </pre>
      * 
-     * @param groupList 当前用户监控的分组
-     * @return
+     * @param deviceList
      */
-    public static TreeModel createTreeModel(List<GroupEntity> groupList) {
-        return createTreeModel(groupList, null);
+    public void addDevices(Collection<DeviceStatusExpandMergeTreeBO> deviceList) {
+        checkWritable();
+        checkNoDeviceSource();
+
+        if (deviceList == null || deviceList.isEmpty()) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        int rejectedCount = 0;
+
+        for (DeviceStatusExpandMergeTreeBO device : deviceList) {
+            if (device == null) {
+                continue;
+            }
+            Integer groupId = device.getGroupId();
+            TreeGroupNode treeNode = getTreeGroupNodeByGroupId(groupId);
+            if (treeNode == null) {
+                logger.warn("往模型树中添加设备时设备对应的分组不存在，分组ID:{}", groupId);
+                rejectDevice(device);
+                rejectedCount++;
+                continue;
+            }
+
+            TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode = treeNode.attachDevice(device);
+            indexDevice(device, virtualNode);
+        }
+
+        aggregateDeviceCount();
+        onDevicesChanged();
+        rebuildSearchIndex();
+
+        metricsListener.onAddDevices(this, deviceList.size(), rejectedCount, System.nanoTime() - startNanos);
     }
 
     /**
-     * 构建树模型
+     * <pre>
+     * 批量添加按列存储的设备
+     * 虚拟分组只记录设备的行号，展开时也不会创建设备对象，只有读取 DATA_NODE 的设备时才创建
+     * 按列存储的设备不支持增量更新和搜索设备
+     * </pre>
      * 
-     * @param groupList 当前用户监控的分组
-     * @param statisticsGroupNumberMap 分组的统计信息，可以为null，为null时树的节点上不包含统计信息
-     * @return
+     * @param store
      */
-    public static TreeModel createTreeModel(List<GroupEntity> groupList,
-                                            Map<Integer, StatisticsGroupNumberEntity> statisticsGroupNumberMap) {
-        TreeModel treeModel = new TreeModel();
-        treeModel.buildGroupTree(groupList, statisticsGroupNumberMap);
-        return treeModel;
+    public void addDevices(DeviceColumnStore store) {
+        checkWritable();
+        checkNoDeviceSource();
+
+        if (store == null || store.size() == 0) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        int rejectedCount = 0;
+
+        for (int row = 0; row < store.size(); row++) {
+            int groupId = store.getGroupId(row);
+            TreeGroupNode treeNode = getTreeGroupNodeByGroupId(groupId);
+            if (treeNode == null) {
+                logger.warn("往模型树中添加设备时设备对应的分组不存在，分组ID:{}", groupId);
+                rejectedDeviceCount++;
+                rejectedCount++;
+                continue;
+            }
+            treeNode.attachDeviceRow(store, row);
+        }
+
+        aggregateDeviceCount();
+        onDevicesChanged();
+        rebuildSearchIndex();
+
+        metricsListener.onAddDevices(this, store.size(), rejectedCount, System.nanoTime() - startNanos);
     }
 
     /**
-     * 构建分组树
+     * <pre>
+     * 并行批量添加设备，结果和addDevices完全一致
+     * 先在线程池中按照分组归类设备，再并行将每个分组的设备放到它的虚拟分组中
+     * 每个分组只由一个线程处理，不需要加锁，最后一次后序遍历汇总各级分组的设备数量
+     * 设备较少时直接顺序添加
+     * </pre>
      * 
-     * @param groupList 需要构建树的分组列表
+     * @param deviceList
+     * @param pool 执行并行任务的线程池
+     */
+    public void addDevicesParallel(final Collection<DeviceStatusExpandMergeTreeBO> deviceList, ForkJoinPool pool) {
+        checkWritable();
+        checkNoDeviceSource();
+
+        if (deviceList == null || deviceList.size() < PARALLEL_DEVICE_THRESHOLD) {
+            addDevices(deviceList);
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        int rejectedCount = 0;
+
+        // 按照分组归类，同一个分组中设备的顺序不变，分组ID为null的设备不能作为key，单独收集
+        Map<Integer, List<DeviceStatusExpandMergeTreeBO>> groupDeviceMap;
+        List<DeviceStatusExpandMergeTreeBO> noGroupDevices;
+        try {
+            groupDeviceMap = pool.submit(() -> deviceList.parallelStream()
+                .filter(device -> device != null && device.getGroupId() != null)
+                .collect(Collectors.groupingBy(DeviceStatusExpandMergeTreeBO::getGroupId))).get();
+            noGroupDevices = pool.submit(() -> deviceList.parallelStream()
+                .filter(device -> device != null && device.getGroupId() == null)
+                .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("并行添加设备时线程被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("并行添加设备时归类设备失败", e.getCause());
+        }
+
+        // 和addDevices一样，分组ID为null的设备按照分组不存在拒绝
+        for (DeviceStatusExpandMergeTreeBO device : noGroupDevices) {
+            logger.warn("往模型树中添加设备时设备对应的分组不存在，分组ID:{}", device.getGroupId());
+            rejectDevice(device);
+            rejectedCount++;
+        }
+
+        List<TreeGroupNode> groupNodeList = new ArrayList<>(groupDeviceMap.size());
+        List<List<DeviceStatusExpandMergeTreeBO>> groupDevices = new ArrayList<>(groupDeviceMap.size());
+        for (Map.Entry<Integer, List<DeviceStatusExpandMergeTreeBO>> entry : groupDeviceMap.entrySet()) {
+            TreeGroupNode treeNode = getTreeGroupNodeByGroupId(entry.getKey());
+            if (treeNode == null) {
+                logger.warn("往模型树中添加设备时设备对应的分组不存在，分组ID:{}", entry.getKey());
+                for (DeviceStatusExpandMergeTreeBO device : entry.getValue()) {
+                    rejectDevice(device);
+                }
+                rejectedCount += entry.getValue().size();
+                continue;
+            }
+            groupNodeList.add(treeNode);
+            groupDevices.add(entry.getValue());
+        }
+
+        // 需要记录设备位置时同时记录每个设备所在的虚拟分组
+        List<List<TreeVirtualNode<DeviceStatusExpandMergeTreeBO>>> virtualNodes = null;
+        if (deviceResolver != null) {
+            virtualNodes = new ArrayList<>(groupDevices.size());
+            for (List<DeviceStatusExpandMergeTreeBO> devices : groupDevices) {
+                virtualNodes.add(new ArrayList<TreeVirtualNode<DeviceStatusExpandMergeTreeBO>>(devices.size()));
+            }
+        }
+
+        TreeGroupNode[] groupNodes = groupNodeList.toArray(new TreeGroupNode[groupNodeList.size()]);
+        pool.invoke(new AttachDeviceTask(groupNodes, groupDevices, virtualNodes, 0, groupNodes.length));
+
+        if (virtualNodes != null) {
+            for (int i = 0; i < groupNodes.length; i++) {
+                List<DeviceStatusExpandMergeTreeBO> devices = groupDevices.get(i);
+                for (int j = 0; j < devices.size(); j++) {
+                    indexDevice(devices.get(j), virtualNodes.get(i).get(j));
+                }
+            }
+        }
+
+        aggregateDeviceCount();
+        onDevicesChanged();
+        rebuildSearchIndex();
+
+        metricsListener.onAddDevices(this, deviceList.size(), rejectedCount, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 后序遍历汇总各级分组的设备数量<br>
+     * 先序遍历的逆序中下级分组一定在上级分组之前
+     */
+    private void aggregateDeviceCount() {
+        List<TreeGroupNode> preOrder = new ArrayList<>();
+        List<TreeGroupNode> stack = new ArrayList<>(rootNodes);
+        while (!stack.isEmpty()) {
+            TreeGroupNode groupNode = stack.remove(stack.size() - 1);
+            preOrder.add(groupNode);
+            stack.addAll(groupNode.getChildGroupNode());
+        }
+
+        for (int i = preOrder.size() - 1; i >= 0; i--) {
+            TreeGroupNode groupNode = preOrder.get(i);
+            groupNode.aggregateDeviceCount();
+            if (statisticsFromDevices) {
+                groupNode.setStatDeviceNumberBO(groupNode.createDeviceStatistics());
+            }
+        }
+    }
+
+    /**
+     * 根据各分组的设备数量和状态数量重新设置全部分组的统计信息
+     */
+    private void applyDeviceStatistics() {
+        // 压缩后Map已经释放，使用紧凑存储中的分组
+        Collection<TreeGroupNode> groupNodes = allGroupNodes != null ? allGroupNodes.values()
+                                                                     : Arrays.asList(getCompactTree().nodes);
+        for (TreeGroupNode groupNode : groupNodes) {
+            groupNode.setStatDeviceNumberBO(groupNode.createDeviceStatistics());
+        }
+    }
+
+    /**
+     * 记录设备所在的位置，没有设置deviceResolver时不记录
+     * 
+     * @param device
+     * @param virtualNode
+     */
+    private void indexDevice(DeviceStatusExpandMergeTreeBO device,
+                             TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode) {
+        if (deviceResolver == null || virtualNode == null) {
+            return;
+        }
+        long deviceId = deviceResolver.getDeviceId(device);
+        deviceIndex.put(deviceId, new DeviceEntry(device, virtualNode, deviceResolver.getStatusFlags(device)));
+    }
+
+    /**
+     * <pre>
+     * 增量更新树上的一个设备
+     * 根据设备ID找到树上旧的设备，用新的设备对象替换
+     * 在线、离线、报警等状态变化会更新所在分组及上级分组的统计信息
+     * 类型或安装时间变化会将设备移动到新的虚拟分组中
+     * 分组变化会将设备移动到新的分组中
+     * 树上不存在这个设备时当做新设备添加
+     * 
+     * 只会调整设备所在分组到根节点路径上的数量，不会重建树
+     * 新的设备对象不要和树上旧的设备对象是同一个对象
+     * </pre>
+     * 
+     * @param device 新的设备对象
+     * @return 设备对应的分组不存在时返回false
+     */
+    public boolean updateDevice(DeviceStatusExpandMergeTreeBO device) {
+        checkWritable();
+        checkDeviceResolver();
+
+        if (device == null) {
+            return false;
+        }
+        onDevicesChanged();
+
+        long deviceId = deviceResolver.getDeviceId(device);
+        int newFlags = deviceResolver.getStatusFlags(device);
+
+        TreeGroupNode newGroupNode = getTreeGroupNodeByGroupId(device.getGroupId());
+
+        DeviceEntry entry = deviceIndex.get(deviceId);
+        if (entry == null) {
+            // 新设备
+            if (newGroupNode == null) {
+                logger.warn("增量添加设备时设备对应的分组不存在，分组ID:{}", device.getGroupId());
+                rejectDevice(device);
+                removeUnloadedDevice(deviceId);
+                return false;
+            }
+            if (!isDevicesLoaded(newGroupNode)) {
+                updateUnloadedDevice(deviceId, newGroupNode, newFlags);
+                return true;
+            }
+            // 设备原来在没有加载设备的分组中时，先从原来的分组中减去
+            removeUnloadedDevice(deviceId);
+            TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode = newGroupNode.addNewDevice(device, newFlags);
+            deviceIndex.put(deviceId, new DeviceEntry(device, virtualNode, newFlags));
+            addToSearchIndex(device, virtualNode);
+            return true;
+        }
+
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> oldVirtualNode = entry.virtualNode;
+        TreeGroupNode oldGroupNode = getTreeGroupNodeByGroupId(oldVirtualNode.getParentGroupId());
+
+        if (oldGroupNode == newGroupNode) {
+            entry.virtualNode = oldGroupNode.changeDevice(oldVirtualNode,
+                entry.device,
+                device,
+                entry.statusFlags,
+                newFlags);
+            entry.device = device;
+            entry.statusFlags = newFlags;
+            // 搜索文字没有变化时不会重新添加记录
+            addToSearchIndex(device, entry.virtualNode);
+            if (entry.virtualNode != oldVirtualNode) {
+                removeFromSearchIndex(oldVirtualNode);
+            }
+            return true;
+        }
+
+        // 分组变化，从旧分组移动到新分组
+        oldGroupNode.removeDevice(oldVirtualNode, entry.device, entry.statusFlags);
+        removeFromSearchIndex(deviceId, oldVirtualNode);
+        if (newGroupNode == null) {
+            logger.warn("增量更新设备时设备对应的分组不存在，分组ID:{}", device.getGroupId());
+            rejectDevice(device);
+            deviceIndex.remove(deviceId);
+            return false;
+        }
+        if (!isDevicesLoaded(newGroupNode)) {
+            deviceIndex.remove(deviceId);
+            addUnloadedDevice(deviceId, newGroupNode, newFlags);
+            return true;
+        }
+        entry.virtualNode = newGroupNode.addNewDevice(device, newFlags);
+        entry.device = device;
+        entry.statusFlags = newFlags;
+        addToSearchIndex(device, entry.virtualNode);
+        return true;
+    }
+
+    /**
+     * 从树上移除一个设备，所在分组及上级分组的数量和统计信息会同时递减
+     * 
+     * @param deviceId 设备ID
+     * @return 设备不存在时返回false
+     */
+    public boolean removeDevice(long deviceId) {
+        checkWritable();
+        checkDeviceResolver();
+
+        DeviceEntry entry = deviceIndex.remove(deviceId);
+        if (entry == null) {
+            if (removeUnloadedDevice(deviceId)) {
+                onDevicesChanged();
+                return true;
+            }
+            return false;
+        }
+        onDevicesChanged();
+
+        TreeGroupNode groupNode = getTreeGroupNodeByGroupId(entry.virtualNode.getParentGroupId());
+        groupNode.removeDevice(entry.virtualNode, entry.device, entry.statusFlags);
+        removeFromSearchIndex(deviceId, entry.virtualNode);
+        return true;
+    }
+
+    /**
+     * <pre>
+     * 搜索分组名称、虚拟分组名称和设备
+     * 设备的搜索文字由deviceResolver提供，没有设置deviceResolver时不搜索设备
+     * 返回的结果中包含从根节点到匹配对象的路径，前端只需要展开这条路径
+     * 第一次搜索时创建搜索索引，之后添加或更新设备时同时更新索引
+     * </pre>
+     * 
+     * @param keyword 关键字，不区分大小写，匹配包含关键字的名称
+     * @param limit 最多返回的数量
+     * @return
+     */
+    public List<TreeSearchResult> search(String keyword, int limit) {
+        return search(keyword, false, limit);
+    }
+
+    /**
+     * 搜索以关键字开头的分组名称、虚拟分组名称和设备
+     * 
+     * @param keyword 关键字，不区分大小写
+     * @param limit 最多返回的数量
+     * @return
+     */
+    public List<TreeSearchResult> searchPrefix(String keyword, int limit) {
+        return search(keyword, true, limit);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<TreeSearchResult> search(String keyword, boolean prefix, int limit) {
+        if (searchIndex == null) {
+            buildSearchIndex();
+        }
+
+        List<Object> targets = searchIndex.find(keyword, prefix, limit);
+        List<TreeSearchResult> results = new ArrayList<>(targets.size());
+        for (Object target : targets) {
+            if (target instanceof TreeGroupNode) {
+                TreeGroupNode groupNode = (TreeGroupNode) target;
+                results.add(new TreeSearchResult(new TreeModelItem(groupNode),
+                    getGroupPath(groupNode.getParentGroupNode()), null));
+            } else if (target instanceof TreeVirtualNode) {
+                TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode = (TreeVirtualNode<DeviceStatusExpandMergeTreeBO>) target;
+                results.add(new TreeSearchResult(new TreeModelItem(virtualNode),
+                    getGroupPath(getTreeGroupNodeByGroupId(virtualNode.getParentGroupId())), null));
+            } else {
+                DeviceStatusExpandMergeTreeBO device = (DeviceStatusExpandMergeTreeBO) target;
+                DeviceEntry entry = deviceIndex.get(deviceResolver.getDeviceId(device));
+                if (entry == null) {
+                    continue;
+                }
+                results.add(new TreeSearchResult(new TreeModelItem(device),
+                    getGroupPath(getTreeGroupNodeByGroupId(entry.virtualNode.getParentGroupId())), entry.virtualNode));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 从根节点到指定分组的路径
+     * 
+     * @param groupNode 为null时返回空的路径
+     * @return
+     */
+    private List<TreeGroupNode> getGroupPath(TreeGroupNode groupNode) {
+        List<TreeGroupNode> path = new ArrayList<>();
+        for (TreeGroupNode node = groupNode; node != null; node = node.getParentGroupNode()) {
+            path.add(node);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * 根据树上当前的分组和设备创建搜索索引
+     */
+    private void buildSearchIndex() {
+        TreeSearchIndex index = new TreeSearchIndex();
+        for (TreeGroupNode groupNode : getCompactTree().nodes) {
+            index.addGroup(groupNode);
+            for (TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode : groupNode.getChildVirtualNodeMap().values()) {
+                index.addVirtualNode(virtualNode);
+                if (deviceResolver == null) {
+                    continue;
+                }
+                // 按列存储的设备排在最后，不支持搜索
+                for (int i = 0; i < virtualNode.getDeviceCount() && virtualNode.getDeviceRow(i) < 0; i++) {
+                    DeviceStatusExpandMergeTreeBO device = virtualNode.getDevice(i);
+                    index.addDevice(deviceResolver.getDeviceId(device), device, deviceResolver.getSearchTexts(device));
+                }
+            }
+        }
+        searchIndex = index;
+    }
+
+    /**
+     * 批量添加设备后重新创建已经存在的搜索索引
+     */
+    private void rebuildSearchIndex() {
+        if (searchIndex != null) {
+            buildSearchIndex();
+        }
+    }
+
+    /**
+     * 设备添加到树上后更新搜索索引
+     * 
+     * @param device
+     * @param virtualNode 设备所在的虚拟分组
+     */
+    private void addToSearchIndex(DeviceStatusExpandMergeTreeBO device,
+                                  TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode) {
+        if (searchIndex == null || virtualNode == null) {
+            return;
+        }
+        searchIndex.addVirtualNode(virtualNode);
+        if (deviceResolver != null) {
+            searchIndex.addDevice(deviceResolver.getDeviceId(device), device, deviceResolver.getSearchTexts(device));
+        }
+        compactSearchIndex();
+    }
+
+    /**
+     * 设备从树上移除后更新搜索索引，虚拟分组中没有设备后同时删除虚拟分组
+     * 
+     * @param deviceId
+     * @param virtualNode 设备原来所在的虚拟分组
+     */
+    private void removeFromSearchIndex(long deviceId, TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode) {
+        if (searchIndex == null) {
+            return;
+        }
+        searchIndex.removeDevice(deviceId);
+        removeFromSearchIndex(virtualNode);
+    }
+
+    /**
+     * 虚拟分组中没有设备后从搜索索引中删除
+     * 
+     * @param virtualNode
+     */
+    private void removeFromSearchIndex(TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode) {
+        if (searchIndex == null) {
+            return;
+        }
+        if (virtualNode.getDeviceCount() == 0) {
+            searchIndex.removeVirtualNode(virtualNode);
+        }
+        compactSearchIndex();
+    }
+
+    /**
+     * 删除的记录超过一半后重新创建搜索索引，避免频繁更新设备时索引一直增长
+     */
+    private void compactSearchIndex() {
+        if (searchIndex.needsRebuild()) {
+            buildSearchIndex();
+        }
+    }
+
+    /**
+     * 根据设备ID获取树上的设备
+     * 
+     * @param deviceId
+     * @return 不存在或者没有设置deviceResolver时返回null
+     */
+    public DeviceStatusExpandMergeTreeBO getDevice(long deviceId) {
+        DeviceEntry entry = deviceIndex.get(deviceId);
+        return entry == null ? null : entry.device;
+    }
+
+    /**
+     * 增量更新设备前必须设置deviceResolver
+     */
+    private void checkDeviceResolver() {
+        if (deviceResolver == null) {
+            throw new IllegalStateException("增量更新设备前需要先设置deviceResolver");
+        }
+    }
+
+    /**
+     * 记录分组不存在而没有添加的设备
+     * 
+     * @param device
+     */
+    private void rejectDevice(DeviceStatusExpandMergeTreeBO device) {
+        rejectedDeviceCount++;
+        metricsListener.onDeviceRejected(this, device);
+    }
+
+    /**
+     * 计算树模型当前的规模，需要遍历全部分组
+     * 
+     * @return
+     */
+    public TreeModelMetrics getMetrics() {
+        int groupCount = 0;
+        int virtualNodeCount = 0;
+        int deviceCount = 0;
+        int maxDepth = 0;
+
+        List<TreeGroupNode> stack = new ArrayList<>();
+        List<Integer> depthStack = new ArrayList<>();
+        for (TreeGroupNode groupNode : rootNodes) {
+            stack.add(groupNode);
+            depthStack.add(1);
+            deviceCount += groupNode.getAllDeviceCount();
+        }
+        while (!stack.isEmpty()) {
+            TreeGroupNode groupNode = stack.remove(stack.size() - 1);
+            int depth = depthStack.remove(depthStack.size() - 1);
+
+            groupCount++;
+            virtualNodeCount += groupNode.getChildVirtualNodeMap().size();
+            maxDepth = Math.max(maxDepth, depth);
+
+            for (TreeGroupNode child : groupNode.getChildGroupNode()) {
+                stack.add(child);
+                depthStack.add(depth + 1);
+            }
+        }
+
+        return new TreeModelMetrics(groupCount, virtualNodeCount, deviceCount, maxDepth, rejectedDeviceCount);
+    }
+
+    /**
+     * 设置这个树模型的监控指标回调
+     * 
+     * @param metricsListener 为null时不回调
+     */
+    public void setMetricsListener(TreeModelMetricsListener metricsListener) {
+        this.metricsListener = metricsListener == null ? TreeModelMetricsListener.NOOP : metricsListener;
+    }
+
+    public TreeModelMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * 设置之后新创建的树模型默认使用的监控指标回调，createTreeModel 构建过程中就会回调
+     * 
+     * @param metricsListener 为null时不回调
+     */
+    public static void setDefaultMetricsListener(TreeModelMetricsListener metricsListener) {
+        defaultMetricsListener = metricsListener == null ? TreeModelMetricsListener.NOOP : metricsListener;
+    }
+
+    /**
+     * 设置获取设备ID和设备状态的方法，需要在添加设备之前设置
+     * 
+     * @param deviceResolver
+     */
+    public void setDeviceResolver(TreeDeviceResolver deviceResolver) {
+        this.deviceResolver = deviceResolver;
+    }
+
+    public TreeDeviceResolver getDeviceResolver() {
+        return deviceResolver;
+    }
+
+    /**
+     * <pre>
+     * 设置分组的统计信息是否根据树上的设备计算
+     * 开启后构建分组树时忽略传入的统计信息，不需要再查询统计信息
+     * 全部设备数量和各状态的数量在添加设备时累加，添加、更新和移除设备后统计信息同步变化
+     * 
+     * 设备的状态由 deviceResolver 或按列存储的状态列提供，都没有时只有全部设备数量
+     * 构建后再开启时立即根据已经添加的设备重新计算统计信息
+     * </pre>
+     * 
+     * @param statisticsFromDevices
+     */
+    public void setStatisticsFromDevices(boolean statisticsFromDevices) {
+        checkWritable();
+        if (statisticsFromDevices) {
+            checkNoDeviceSource();
+        }
+        this.statisticsFromDevices = statisticsFromDevices;
+        if (statisticsFromDevices) {
+            applyDeviceStatistics();
+        }
+    }
+
+    public boolean isStatisticsFromDevices() {
+        return statisticsFromDevices;
+    }
+
+    /**
+     * <pre>
+     * 按需加载设备
+     * 设置时只通过deviceSource查询每个分组的设备数量，分组的设备在展开时才加载
+     * 分组的设备数量和excludeEmpty不需要加载设备，首屏的耗时和设备总数无关
+     * 
+     * 只有 expandOneLevelGroupNode 和 expandVisibleRows 会加载设备，只加载输出了虚拟分组的分组
+     * 其他展开方式（整棵树、分页、迭代器、指定分组）不加载设备，没有加载的分组只输出分组本身，不输出虚拟分组和设备
+     * 按设备状态展开时，子树中有没有加载的设备的分组状态未知，总是输出
+     * 
+     * 已经加载的分组最多保留maxLoadedGroups个，超过时释放最久没有展开的分组的设备，设备数量保留为释放时的数量
+     * 释放后设备数量和统计信息仍然有效，各状态的设备数量（getStatusCount、hasStatus）只包含已经加载的设备
+     * 一次展开的分组超过maxLoadedGroups个时，只加载最前面的maxLoadedGroups个
+     * 
+     * 分组树构建完成后、添加设备之前设置，之后不能再批量添加设备
+     * 统计信息仍然使用查询到的统计信息，不能同时使用 setStatisticsFromDevices
+     * 没有加载的分组上的设备变化只修改设备数量和统计信息：
+     * 释放过的设备、从加载了的分组移走的设备和addDevice添加的设备位置已知，变化时修改所在分组的数量
+     * 从没有加载过的设备位置未知，它的变化会被忽略，分组加载时从deviceSource读取，设备数量在加载时更新
+     * 搜索和getDevice只包含已经加载的设备，没有加载的设备需要直接从deviceSource或者数据库查询
+     * 展开时会修改树模型，不能用于多个线程共享的树模型
+     * </pre>
+     * 
+     * @param deviceSource 提供分组的设备数量和设备
+     * @param maxLoadedGroups 最多保留设备的分组数量
+     */
+    public void setDeviceSource(DeviceSource deviceSource, int maxLoadedGroups) {
+        checkWritable();
+        if (statisticsFromDevices) {
+            throw new IllegalStateException("按需加载设备时不能根据设备计算统计信息");
+        }
+        if (maxLoadedGroups <= 0) {
+            throw new IllegalArgumentException("maxLoadedGroups需要大于0");
+        }
+
+        CompactGroupTree tree = getCompactTree();
+        List<Integer> groupIds = new ArrayList<>(tree.size);
+        for (TreeGroupNode groupNode : tree.nodes) {
+            groupIds.add(groupNode.getGroupId());
+        }
+        Map<Integer, Integer> deviceCounts = deviceSource.countDevices(groupIds);
+
+        this.deviceSource = deviceSource;
+        this.maxLoadedGroups = maxLoadedGroups;
+        this.loadedGroups = new LinkedHashMap<>(16, 0.75f, true);
+        this.unloadedDevices = new HashMap<>();
+        for (TreeGroupNode groupNode : tree.nodes) {
+            Integer count = deviceCounts.get(groupNode.getGroupId());
+            if (count != null && count != 0) {
+                // 只累加数量，不创建虚拟分组
+                groupNode.incrementDeviceCount(count);
+            }
+        }
+        onDevicesChanged();
+    }
+
+    public DeviceSource getDeviceSource() {
+        return deviceSource;
+    }
+
+    /**
+     * 分组的设备是否已经加载
+     * 
+     * @param groupId 分组ID
+     * @return 没有按需加载设备时总是返回true
+     */
+    public boolean isGroupDevicesLoaded(int groupId) {
+        return deviceSource == null || loadedGroups.containsKey(groupId);
+    }
+
+    private boolean isDevicesLoaded(TreeGroupNode groupNode) {
+        return isGroupDevicesLoaded(groupNode.getGroupId());
+    }
+
+    private void checkNoDeviceSource() {
+        if (deviceSource != null) {
+            throw new IllegalStateException("按需加载设备时不能批量添加设备");
+        }
+    }
+
+    /**
+     * <pre>
+     * 加载还没有加载的分组的设备，并标记为最近使用
+     * 之后释放超过数量的最久没有使用的分组，这次使用的分组排在最后，不会被释放
+     * </pre>
+     * 
+     * @param groupNodes 需要加载设备的分组，按照展开的顺序排列，超过maxLoadedGroups个时只加载前面的分组
+     */
+    private void loadDevices(List<TreeGroupNode> groupNodes) {
+        if (deviceSource == null) {
+            return;
+        }
+        List<TreeGroupNode> used = groupNodes.size() > maxLoadedGroups ? groupNodes.subList(0, maxLoadedGroups)
+                                                                       : groupNodes;
+        boolean changed = false;
+        for (TreeGroupNode groupNode : used) {
+            if (loadedGroups.get(groupNode.getGroupId()) == null) {
+                loadGroupDevices(groupNode);
+                changed = true;
+            }
+        }
+
+        int evictCount = loadedGroups.size() - maxLoadedGroups;
+        Iterator<TreeGroupNode> iterator = loadedGroups.values().iterator();
+        for (int i = 0; i < evictCount; i++) {
+            TreeGroupNode groupNode = iterator.next();
+            iterator.remove();
+            unloadGroupDevices(groupNode);
+            changed = true;
+        }
+
+        if (changed) {
+            onDevicesChanged();
+        }
+    }
+
+    /**
+     * <pre>
+     * 按需加载设备时，子树中有没有加载的设备的分组
+     * 这些分组的状态数量只包含已经加载的设备，按状态展开时不能确定是否有匹配的设备
+     * </pre>
+     * 
+     * @return 没有按需加载设备时返回null
+     */
+    private Set<TreeGroupNode> getPartiallyLoadedGroups() {
+        if (deviceSource == null) {
+            return null;
+        }
+        Set<TreeGroupNode> groups = Collections.newSetFromMap(new IdentityHashMap<TreeGroupNode, Boolean>());
+        for (TreeGroupNode groupNode : getCompactTree().nodes) {
+            if (groupNode.getLocalDeviceCount() == 0 || isDevicesLoaded(groupNode)) {
+                continue;
+            }
+            // 上级分组已经记录过时，更上级的分组也已经记录过
+            TreeGroupNode node = groupNode;
+            while (node != null && groups.add(node)) {
+                node = node.getParentGroupNode();
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * 分组中是否可能有指定状态的设备
+     * 
+     * @param groupNode
+     * @param statusMask 设备状态
+     * @param partiallyLoaded 见 getPartiallyLoadedGroups
+     * @return
+     */
+    private static boolean mayHaveStatus(TreeGroupNode groupNode, int statusMask, Set<TreeGroupNode> partiallyLoaded) {
+        return groupNode.hasStatus(statusMask) || (partiallyLoaded != null && partiallyLoaded.contains(groupNode));
+    }
+
+    /**
+     * 设备移动到没有加载设备的分组，只修改分组的设备数量和统计信息，并记录设备所在的分组
+     * 
+     * @param deviceId
+     * @param groupNode 没有加载设备的分组
+     * @param statusFlags 设备的状态标记
+     */
+    private void addUnloadedDevice(long deviceId, TreeGroupNode groupNode, int statusFlags) {
+        groupNode.changeUnloadedDevice(1, 0, statusFlags);
+        unloadedDevices.put(deviceId, new UnloadedDevice(groupNode.getGroupId(), statusFlags));
+    }
+
+    /**
+     * <pre>
+     * 更新没有加载设备的分组中的设备
+     * 设备位置已知时修改原来的分组和新的分组的数量，位置未知时忽略，分组加载时再从deviceSource读取
+     * </pre>
+     * 
+     * @param deviceId
+     * @param groupNode 设备新的分组，没有加载设备
+     * @param statusFlags 设备新的状态标记
+     */
+    private void updateUnloadedDevice(long deviceId, TreeGroupNode groupNode, int statusFlags) {
+        UnloadedDevice unloaded = unloadedDevices.get(deviceId);
+        if (unloaded == null) {
+            return;
+        }
+        if (unloaded.groupId == groupNode.getGroupId()) {
+            groupNode.changeUnloadedDevice(0, unloaded.statusFlags, statusFlags);
+            unloaded.statusFlags = statusFlags;
+            return;
+        }
+        removeUnloadedDevice(deviceId);
+        addUnloadedDevice(deviceId, groupNode, statusFlags);
+    }
+
+    /**
+     * 从没有加载设备的分组中移除位置已知的设备，修改分组的设备数量和统计信息
+     * 
+     * @param deviceId
+     * @return 设备的位置未知时返回false
+     */
+    private boolean removeUnloadedDevice(long deviceId) {
+        if (unloadedDevices == null) {
+            return false;
+        }
+        UnloadedDevice unloaded = unloadedDevices.remove(deviceId);
+        if (unloaded == null) {
+            return false;
+        }
+        TreeGroupNode groupNode = getTreeGroupNodeByGroupId(unloaded.groupId);
+        if (groupNode != null) {
+            groupNode.changeUnloadedDevice(-1, unloaded.statusFlags, 0);
+        }
+        return true;
+    }
+
+    /**
+     * <pre>
+     * 从deviceSource加载一个分组的设备，设备数量更新为实际加载的数量
+     * 设备已经在其他分组中时以deviceSource为准，和updateDevice一样从原来的分组移动到这个分组
+     * 同一个设备在这个分组中重复返回时拒绝，不会重复计数
+     * </pre>
+     * 
+     * @param groupNode
+     */
+    private void loadGroupDevices(TreeGroupNode groupNode) {
+        List<DeviceStatusExpandMergeTreeBO> devices = deviceSource.loadDevices(groupNode.getGroupId());
+
+        // 减去之前的数量，再逐个累加加载的设备
+        groupNode.incrementDeviceCount(-groupNode.getLocalDeviceCount());
+        if (devices != null) {
+            for (DeviceStatusExpandMergeTreeBO device : devices) {
+                if (device == null) {
+                    continue;
+                }
+                TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode;
+                if (deviceResolver == null) {
+                    virtualNode = groupNode.putDevice(device);
+                } else {
+                    long deviceId = deviceResolver.getDeviceId(device);
+                    DeviceEntry entry = deviceIndex.get(deviceId);
+                    if (entry != null && groupNode.getGroupId().equals(entry.virtualNode.getParentGroupId())) {
+                        logger.warn("加载分组的设备时设备重复，分组ID:{}，设备ID:{}", groupNode.getGroupId(), deviceId);
+                        rejectDevice(device);
+                        continue;
+                    }
+                    if (removeFromOtherGroup(deviceId, groupNode)) {
+                        // 原来的分组减去了统计信息，这里加上，上级分组的统计信息不变
+                        virtualNode = groupNode.addNewDevice(device, deviceResolver.getStatusFlags(device));
+                    } else {
+                        virtualNode = groupNode.putDevice(device);
+                    }
+                }
+                indexDevice(device, virtualNode);
+                addToSearchIndex(device, virtualNode);
+            }
+        }
+        loadedGroups.put(groupNode.getGroupId(), groupNode);
+    }
+
+    /**
+     * 加载的设备在其他分组中时，从原来的分组中移除，修改原来的分组的设备数量和统计信息
+     * 
+     * @param deviceId
+     * @param groupNode 正在加载设备的分组
+     * @return 设备原来在其他分组中时返回true
+     */
+    private boolean removeFromOtherGroup(long deviceId, TreeGroupNode groupNode) {
+        DeviceEntry entry = deviceIndex.remove(deviceId);
+        if (entry != null) {
+            TreeGroupNode oldGroupNode = getTreeGroupNodeByGroupId(entry.virtualNode.getParentGroupId());
+            oldGroupNode.removeDevice(entry.virtualNode, entry.device, entry.statusFlags);
+            removeFromSearchIndex(deviceId, entry.virtualNode);
+            return true;
+        }
+        UnloadedDevice unloaded = unloadedDevices.get(deviceId);
+        if (unloaded == null) {
+            return false;
+        }
+        if (unloaded.groupId == groupNode.getGroupId()) {
+            // 这个分组的数量已经在加载前减去，加载后设备在deviceIndex中
+            unloadedDevices.remove(deviceId);
+            return false;
+        }
+        return removeUnloadedDevice(deviceId);
+    }
+
+    /**
+     * <pre>
+     * 释放一个分组的设备，记录设备所在的分组
+     * 释放后这个分组和上级分组的 getAllDeviceCount、getLocalDeviceCount 和 getStatDeviceNumberBO 保持不变，仍然包含释放的设备
+     * getStatusCount 和 hasStatus 减去了释放的设备，只包含已经加载的设备，按状态展开时把这些分组当做状态未知
+     * </pre>
+     * 
+     * @param groupNode
+     */
+    private void unloadGroupDevices(TreeGroupNode groupNode) {
+        for (TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode : groupNode.detachVirtualNodes()) {
+            if (deviceResolver != null) {
+                for (int i = 0; i < virtualNode.getDeviceCount() && virtualNode.getDeviceRow(i) < 0; i++) {
+                    long deviceId = deviceResolver.getDeviceId(virtualNode.getDevice(i));
+                    DeviceEntry entry = deviceIndex.remove(deviceId);
+                    unloadedDevices.put(deviceId,
+                        new UnloadedDevice(groupNode.getGroupId(), entry == null ? 0 : entry.statusFlags));
+                    if (searchIndex != null) {
+                        searchIndex.removeDevice(deviceId);
+                    }
+                }
+            }
+            if (searchIndex != null) {
+                searchIndex.removeVirtualNode(virtualNode);
+            }
+        }
+    }
+
+    /**
+     * 是否是只读的树模型
+     * 
+     * @return
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * 将树模型标记为只读，之后再修改会抛出异常
+     */
+    void markReadOnly() {
+        this.readOnly = true;
+    }
+
+    /**
+     * 检查当前树模型是否允许修改
+     */
+    void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("共享的树模型是只读的，不能修改");
+        }
+    }
+
+    /**
+     * 构建树模型
+     * 
+     * @param groupList 当前用户监控的分组
+     * @return
+     */
+    public static TreeModel createTreeModel(List<GroupEntity> groupList) {
+        return createTreeModel(groupList, null);
+    }
+
+    /**
+     * 构建树模型
+     * 
+     * @param groupList 当前用户监控的分组
+     * @param statisticsGroupNumberMap 分组的统计信息，可以为null，为null时树的节点上不包含统计信息
+     * @return
+     */
+    public static TreeModel createTreeModel(List<GroupEntity> groupList,
+                                            Map<Integer, StatisticsGroupNumberEntity> statisticsGroupNumberMap) {
+        TreeModel treeModel = new TreeModel();
+        treeModel.buildGroupTree(groupList, statisticsGroupNumberMap);
+        return treeModel;
+    }
+
+    /**
+     * 构建树模型并批量添加设备
+     * 
+     * @param groupList 当前用户监控的分组
+     * @param statisticsGroupNumberMap 分组的统计信息，可以为null，为null时树的节点上不包含统计信息
+     * @param propertyInfo 虚拟分组的配置
+     * @param deviceList 当前用户的设备
+     * @return
+     */
+    public static TreeModel createTreeModel(List<GroupEntity> groupList,
+                                            Map<Integer, StatisticsGroupNumberEntity> statisticsGroupNumberMap,
+                                            List<ParameterBO> propertyInfo,
+                                            Collection<DeviceStatusExpandMergeTreeBO> deviceList) {
+        TreeModel treeModel = new TreeModel();
+        treeModel.setPropertyInfo(propertyInfo);
+        treeModel.buildGroupTree(groupList, statisticsGroupNumberMap);
+        treeModel.addDevices(deviceList);
+        return treeModel;
+    }
+
+    /**
+     * 构建分组树
+     * 
+     * @param groupList 需要构建树的分组列表
      */
     public void buildGroupTree(List<GroupEntity> groupList) {
         buildGroupTree(groupList, null);
     }
 
     /**
+     * <pre>
      * 构建分组树
+     * 按照分组ID升序创建节点，保证树节点的显示顺序，不会修改传入的列表
+     * 列表已经按照ID升序排列时不需要排序，否则对ID的副本排序
+     * 从每个分组沿着上级向上查找到已经创建的节点，再从上往下创建，每个分组只访问一次
+     * 上级关系形成环时在环中ID最小的分组处断开，作为根节点，并记录警告
+     * </pre>
      * 
      * @param groupList 当前用户监控的分组
      * @param statisticsGroupNumberMap 分组的统计信息，可以为null，为null时树的节点上不包含统计信息
      */
     public void buildGroupTree(List<GroupEntity> groupList,
                                Map<Integer, StatisticsGroupNumberEntity> statisticsGroupNumberMap) {
+        checkWritable();
+        onGroupsChanged();
+        long startNanos = System.nanoTime();
 
-        // 先排序，可以减少递归的次数，并且保证树节点的显示顺序
-        Collections.sort(groupList, getAscGroupComparator());
+        GroupEntity[] groups = groupList.toArray(new GroupEntity[groupList.size()]);
 
         // 用Map结构保存用户监控的全部分组，便于快速定位
-        for (GroupEntity groupEntity : groupList) {
-            allGroups.put(groupEntity.getId(), groupEntity);
+        for (GroupEntity groupEntity : groups) {
+            if (groupEntity != null) {
+                allGroups.put(groupEntity.getId(), groupEntity);
+            }
+        }
+
+        // 构建一个树，统计信息在全部节点创建完后统一汇总
+        bulkGroupNodes = new ArrayList<>(groups.length);
+        try {
+            List<GroupEntity> path = new ArrayList<>();
+            Map<Integer, Integer> walkMarks = new HashMap<>();
+            int walk = 0;
+            for (int index : ascendingOrder(groups)) {
+                buildTreeNodePath(groups[index], statisticsGroupNumberMap, path, walkMarks, ++walk);
+            }
+            if (statisticsFromDevices) {
+                applyDeviceStatistics();
+            } else {
+                aggregateStatisticsInfo(bulkGroupNodes);
+            }
+        } finally {
+            bulkGroupNodes = null;
+        }
+
+        metricsListener.onBuildGroupTree(this, groups.length, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 分组按照ID升序排列后的下标，ID相同时保持原来的顺序，忽略null
+     * 
+     * @param groups
+     * @return
+     */
+    private static int[] ascendingOrder(GroupEntity[] groups) {
+        // 高32位为分组ID，低32位为下标，排序后就是稳定的升序
+        long[] keys = new long[groups.length];
+        int count = 0;
+        boolean sorted = true;
+        for (int i = 0; i < groups.length; i++) {
+            if (groups[i] == null) {
+                continue;
+            }
+            keys[count] = ((long) groups[i].getId() << 32) | i;
+            if (count > 0 && keys[count] < keys[count - 1]) {
+                sorted = false;
+            }
+            count++;
+        }
+        if (!sorted) {
+            Arrays.sort(keys, 0, count);
+        }
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * <pre>
+     * 创建分组以及还没有创建的上级分组
+     * 先沿着上级向上查找，直到上级已经创建或者不在监控的分组中，再从上往下创建
+     * 查找时记录每个分组所在的查找批次，同一批次中再次遇到说明上级关系形成了环
+     * </pre>
+     * 
+     * @param groupEntity
+     * @param statisticsGroupNumberMap
+     * @param path 复用的查找路径
+     * @param walkMarks 分组ID对应的查找批次，一次构建中共用
+     * @param walk 当前的查找批次
+     */
+    private void buildTreeNodePath(GroupEntity groupEntity,
+                                   Map<Integer, StatisticsGroupNumberEntity> statisticsGroupNumberMap,
+                                   List<GroupEntity> path, Map<Integer, Integer> walkMarks, int walk) {
+        path.clear();
+        int cycleStart = -1;
+
+        GroupEntity current = groupEntity;
+        while (current != null && !allGroupNodes.containsKey(current.getId())) {
+            Integer mark = walkMarks.put(current.getId(), walk);
+            if (mark != null && mark == walk) {
+                cycleStart = indexOfGroup(path, current.getId());
+                break;
+            }
+            path.add(current);
+            current = allGroups.get(current.getParentId());
+        }
+
+        if (cycleStart < 0) {
+            for (int i = path.size() - 1; i >= 0; i--) {
+                createTreeNode(path.get(i), statisticsGroupNumberMap);
+            }
+            return;
+        }
+
+        // path[i + 1] 是 path[i] 的上级，环为 path[cycleStart..end]，在ID最小的分组处断开
+        int breakIndex = cycleStart;
+        for (int i = cycleStart + 1; i < path.size(); i++) {
+            if (path.get(i).getId() < path.get(breakIndex).getId()) {
+                breakIndex = i;
+            }
+        }
+        reportGroupCycle(path.subList(cycleStart, path.size()), path.get(breakIndex));
+
+        // 断开的分组创建时上级还不存在，成为根节点，之后沿着环往下创建，最后创建环外的下级
+        for (int i = breakIndex; i >= cycleStart; i--) {
+            createTreeNode(path.get(i), statisticsGroupNumberMap);
         }
+        for (int i = path.size() - 1; i > breakIndex; i--) {
+            createTreeNode(path.get(i), statisticsGroupNumberMap);
+        }
+        for (int i = cycleStart - 1; i >= 0; i--) {
+            createTreeNode(path.get(i), statisticsGroupNumberMap);
+        }
+    }
+
+    private static int indexOfGroup(List<GroupEntity> path, Integer groupId) {
+        for (int i = 0; i < path.size(); i++) {
+            if (path.get(i).getId().equals(groupId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 创建节点对象并添加到树中
+     * 
+     * @param groupEntity
+     * @param statisticsGroupNumberMap
+     */
+    private void createTreeNode(GroupEntity groupEntity,
+                                Map<Integer, StatisticsGroupNumberEntity> statisticsGroupNumberMap) {
+        StatisticsGroupNumberEntity statisticsInfo = null;
+        if (statisticsGroupNumberMap != null && !statisticsFromDevices) {
+            statisticsInfo = statisticsGroupNumberMap.get(groupEntity.getId());
+        }
+        TreeGroupNode node = TreeGroupNode.createTreeNode(this, groupEntity, statisticsInfo);
+        addGroupNode(node);
+    }
+
+    /**
+     * 记录分组的上级关系形成的环
+     * 
+     * @param cycle 环中的分组
+     * @param breakGroup 断开的分组
+     */
+    private void reportGroupCycle(List<GroupEntity> cycle, GroupEntity breakGroup) {
+        List<Integer> groupIds = new ArrayList<>(cycle.size());
+        for (GroupEntity groupEntity : cycle) {
+            groupIds.add(groupEntity.getId());
+        }
+        logger.warn("分组的上级关系形成了环，分组ID:{}作为根节点，环中的分组ID:{}", breakGroup.getId(), groupIds);
+        metricsListener.onGroupCycle(this, groupIds, breakGroup.getId());
+    }
+
+    /**
+     * <pre>
+     * 汇总批量创建的节点的统计信息
+     * 上级节点一定先于下级节点创建，逆序处理即为后序遍历，每个节点只向上级累加一次
+     * 上级节点是之前已经存在的节点时，需要一直累加到根节点
+     * </pre>
+     * 
+     * @param createdNodes 按照创建顺序排列的节点
+     */
+    private void aggregateStatisticsInfo(List<TreeGroupNode> createdNodes) {
+        Set<TreeGroupNode> created = Collections.newSetFromMap(new IdentityHashMap<TreeGroupNode, Boolean>());
+        created.addAll(createdNodes);
+
+        for (int i = createdNodes.size() - 1; i >= 0; i--) {
+            TreeGroupNode node = createdNodes.get(i);
+            StatDeviceNumberBO statistics = node.getStatDeviceNumberBO();
+            TreeGroupNode parentNode = node.getParentGroupNode();
+            if (statistics == null || parentNode == null) {
+                continue;
+            }
 
-        // 构建一个树
-        for (GroupEntity groupEntity : groupList) {
-            recursionBuildTreeNode(groupEntity, statisticsGroupNumberMap);
+            if (created.contains(parentNode)) {
+                parentNode.addStatistics(statistics);
+            } else {
+                parentNode.incrementalStatisticsInfo(statistics);
+            }
         }
-
     }
 
     /**
-     * 递归构建树节点
+     * 构建树节点，上级分组不存在时先构建上级分组<br>
+     * 上级分组从已经记录的监控分组中查找，使用循环实现，上级关系形成环时不会无限递归
      * 
      * @param groupEntity
      * @param statisticsGroupNumberMap
      */
     public void recursionBuildTreeNode(GroupEntity groupEntity,
                                        Map<Integer, StatisticsGroupNumberEntity> statisticsGroupNumberMap) {
-        Integer groupId = groupEntity.getId();
-        // 先判断树里面是否已经存在了这个节点
-        if (allGroupNodes.containsKey(groupId)) {
-            return;
-        }
-
-        Integer parentGroupId = groupEntity.getParentId();
-        // 判断上级节点是否存在
-        TreeGroupNode parentNode = allGroupNodes.get(parentGroupId);
-        if (parentNode == null) {
-            GroupEntity parentGroupEntity = allGroups.get(parentGroupId);
-            // 再判断监控的分组里面是否有当前节点的上级节点
-            if (parentGroupEntity != null) {
-                // 先创建上级的节点
-                recursionBuildTreeNode(parentGroupEntity, statisticsGroupNumberMap);
-            }
-        }
-
-        // 创建节点对象
-        TreeGroupNode node = TreeGroupNode.createTreeNode(this,
-            groupEntity,
-            statisticsGroupNumberMap == null ? null : statisticsGroupNumberMap.get(groupId));
-
-        // 将创建的节点添加到树中
-        addGroupNode(node);
-
+        onGroupsChanged();
+        buildTreeNodePath(groupEntity, statisticsGroupNumberMap, new ArrayList<GroupEntity>(),
+            new HashMap<Integer, Integer>(), 1);
     }
 
     /**
@@ -248,7 +1858,7 @@ public class TreeModel {
      * 
      * @return
      */
-    private Comparator<GroupEntity> getAscGroupComparator() {
+    static Comparator<GroupEntity> getAscGroupComparator() {
         return new Comparator<GroupEntity>() {
 
             @Override
@@ -292,17 +1902,24 @@ public class TreeModel {
      * @return 有序的扁平列表
      */
     public List<TreeModelItem> expandTree2FlatList(boolean containDevice) {
+        long startNanos = System.nanoTime();
         List<TreeModelItem> list = new ArrayList<>();
 
+        if (isCompacted()) {
+            CompactGroupTree tree = getCompactTree();
+            tree.expand(this, list, 0, tree.size, -1, containDevice, false);
+            return expanded("expandTree2FlatList", list, startNanos);
+        }
+
         for (TreeGroupNode groupNode : rootNodes) {
             TreeModelItem item = new TreeModelItem(groupNode);
             list.add(item);
 
-            // 递归展开下级
-            recursionExpandGroupNode(list, groupNode, containDevice, false);
+            // 展开下级
+            expandGroupNode(list, groupNode, createExpandFilter(containDevice, false));
         }
 
-        return list;
+        return expanded("expandTree2FlatList", list, startNanos);
     }
 
     /**
@@ -314,8 +1931,15 @@ public class TreeModel {
      * @return
      */
     public List<TreeModelItem> expandTreeExcludeEmptyNode(boolean containDevice) {
+        long startNanos = System.nanoTime();
         List<TreeModelItem> list = new ArrayList<>();
 
+        if (isCompacted()) {
+            CompactGroupTree tree = getCompactTree();
+            tree.expand(this, list, 0, tree.size, -1, containDevice, true);
+            return expanded("expandTreeExcludeEmptyNode", list, startNanos);
+        }
+
         for (TreeGroupNode groupNode : rootNodes) {
             // 过滤掉没有设备的顶级分组
             if (groupNode.getAllDeviceCount() == 0) {
@@ -324,11 +1948,11 @@ public class TreeModel {
 
             list.add(new TreeModelItem(groupNode));
 
-            // 递归展开下级
-            recursionExpandGroupNode(list, groupNode, containDevice, true);
+            // 展开下级
+            expandGroupNode(list, groupNode, createExpandFilter(containDevice, true));
         }
 
-        return list;
+        return expanded("expandTreeExcludeEmptyNode", list, startNanos);
 
     }
 
@@ -340,16 +1964,220 @@ public class TreeModel {
      * @return 有序的扁平列表
      */
     public List<TreeModelItem> expandGroupNode2FlatList(int groupId, boolean containDevice, boolean excludeEmpty) {
+        long startNanos = System.nanoTime();
         List<TreeModelItem> list = new ArrayList<>();
 
-        TreeGroupNode groupNode = allGroupNodes.get(groupId);
+        if (isCompacted()) {
+            CompactGroupTree tree = getCompactTree();
+            int index = tree.indexOf(groupId);
+            if (index >= 0) {
+                tree.expand(this, list, index + 1, index + tree.subtreeSize[index], index, containDevice, excludeEmpty);
+            }
+            return expanded("expandGroupNode2FlatList", list, startNanos);
+        }
+
+        TreeGroupNode groupNode = getTreeGroupNodeByGroupId(groupId);
 
         if (groupNode != null) {
-            // 递归展开下级
-            recursionExpandGroupNode(list, groupNode, containDevice, excludeEmpty);
+            // 展开下级
+            expandGroupNode(list, groupNode, createExpandFilter(containDevice, excludeEmpty));
         }
 
-        return list;
+        return expanded("expandGroupNode2FlatList", list, startNanos);
+    }
+
+    /**
+     * <pre>
+     * 按需展开整棵树
+     * 展开的顺序和expandTree2FlatList、expandTreeExcludeEmptyNode一致，但是不会先生成整个列表
+     * 元素只在遍历时创建，适合边展开边输出的场景，见 TreeModelJsonWriter
+     * 使用迭代器的 moveToNext 和 getCursor 遍历时不创建任何元素
+     * </pre>
+     * 
+     * @param containDevice 是否包含设备对象
+     * @param excludeEmpty 是否排除掉没有设备的节点
+     * @return
+     */
+    public TreeModelItemIterator treeIterator(boolean containDevice, boolean excludeEmpty) {
+        return new TreeModelItemIterator(rootNodes, containDevice, excludeEmpty);
+    }
+
+    /**
+     * 按需展开指定的分组，展开的顺序和expandGroupNode2FlatList一致
+     * 
+     * @param groupId 分组ID
+     * @param containDevice 是否包含设备对象
+     * @param excludeEmpty 是否排除掉没有设备的节点
+     * @return 分组不存在时返回没有元素的迭代器
+     */
+    public TreeModelItemIterator groupNodeIterator(int groupId, boolean containDevice, boolean excludeEmpty) {
+        return new TreeModelItemIterator(getTreeGroupNodeByGroupId(groupId), containDevice, excludeEmpty);
+    }
+
+    /**
+     * 按需展开整棵树的Spliterator，元素个数未知，只能顺序遍历
+     * 
+     * @param containDevice 是否包含设备对象
+     * @param excludeEmpty 是否排除掉没有设备的节点
+     * @return
+     */
+    public Spliterator<TreeModelItem> treeSpliterator(boolean containDevice, boolean excludeEmpty) {
+        return Spliterators.spliteratorUnknownSize(treeIterator(containDevice, excludeEmpty),
+            Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * 按需展开整棵树的Stream
+     * 
+     * @param containDevice 是否包含设备对象
+     * @param excludeEmpty 是否排除掉没有设备的节点
+     * @return
+     */
+    public Stream<TreeModelItem> treeStream(boolean containDevice, boolean excludeEmpty) {
+        return StreamSupport.stream(treeSpliterator(containDevice, excludeEmpty), false);
+    }
+
+    /**
+     * <pre>
+     * 分页展开整棵树，只返回 [offset, offset + limit) 范围内的行
+     * 展开的顺序和expandTree2FlatList、expandTreeExcludeEmptyNode一致，用于前端树的虚拟滚动
+     * 使用每个分组的行号索引直接定位到起始行，不需要展开前面的行
+     * </pre>
+     * 
+     * @param offset 起始行号，从0开始
+     * @param limit 最多返回的行数
+     * @param containDevice 返回的列表中是否包含设备对象
+     * @param excludeEmpty 是否排除掉没有设备的分组
+     * @return
+     */
+    public List<TreeModelItem> expand(int offset, int limit, boolean containDevice, boolean excludeEmpty) {
+        long startNanos = System.nanoTime();
+        List<TreeModelItem> list = new ArrayList<>(Math.max(Math.min(limit, 1024), 0));
+        getCompactTree().expandWindow(this, list, offset, limit, containDevice, excludeEmpty);
+        return expanded("expand", list, startNanos);
+    }
+
+    /**
+     * 展开整棵树后的总行数，分页展开时使用
+     * 
+     * @param containDevice 是否包含设备对象
+     * @param excludeEmpty 是否排除掉没有设备的分组
+     * @return
+     */
+    public int getExpandRowCount(boolean containDevice, boolean excludeEmpty) {
+        return getCompactTree().getRowCount(containDevice, excludeEmpty);
+    }
+
+    /**
+     * <pre>
+     * 按照前端的展开状态展开树，只返回可见的行
+     * 根分组总是可见，展开的分组下的子分组和虚拟分组可见，展开的虚拟分组下的设备可见
+     * 行的顺序和expandTree2FlatList一致，只遍历一次，不会进入收起的分组
+     * </pre>
+     * 
+     * @param expandedGroupIds 已经展开的分组ID，为null时表示都没有展开
+     * @param expandedVirtualKeys 已经展开的虚拟分组的key，见 TreeVirtualNode.getNodeKey，为null时表示都没有展开
+     * @param excludeEmpty 是否排除掉没有设备的分组
+     * @return 有序的扁平列表
+     */
+    public List<TreeModelItem> expandVisibleRows(Set<Integer> expandedGroupIds, Set<String> expandedVirtualKeys,
+                                                 boolean excludeEmpty) {
+        long startNanos = System.nanoTime();
+        List<TreeModelItem> list = new ArrayList<>();
+
+        Set<Integer> groupIds = expandedGroupIds == null ? Collections.<Integer> emptySet() : expandedGroupIds;
+        Set<String> virtualKeys = expandedVirtualKeys == null ? Collections.<String> emptySet() : expandedVirtualKeys;
+        if (deviceSource != null) {
+            loadDevices(getVisibleExpandedGroups(groupIds, excludeEmpty));
+        }
+
+        ExpandFilter filter = createVisibleRowsFilter(groupIds, virtualKeys, excludeEmpty);
+        for (TreeGroupNode groupNode : rootNodes) {
+            if (!filter.accept(groupNode)) {
+                continue;
+            }
+
+            list.add(new TreeModelItem(groupNode));
+
+            if (filter.expand(groupNode)) {
+                expandGroupNode(list, groupNode, filter);
+            }
+        }
+
+        return expanded("expandVisibleRows", list, startNanos);
+    }
+
+    /**
+     * 展开后虚拟分组可见的分组：分组自己和全部上级分组都已经展开，并且没有被排除
+     * 
+     * @param groupIds 已经展开的分组ID
+     * @param excludeEmpty 是否排除掉没有设备的节点
+     * @return 按照展开的顺序排列
+     */
+    private List<TreeGroupNode> getVisibleExpandedGroups(Set<Integer> groupIds, boolean excludeEmpty) {
+        final CompactGroupTree tree = getCompactTree();
+        List<TreeGroupNode> visible = new ArrayList<>();
+        for (Integer groupId : groupIds) {
+            TreeGroupNode groupNode = getTreeGroupNodeByGroupId(groupId);
+            // 上级分组的设备数量不少于下级分组，只需要检查分组自己
+            if (groupNode == null || (excludeEmpty && groupNode.getAllDeviceCount() == 0)) {
+                continue;
+            }
+            TreeGroupNode parent = groupNode.getParentGroupNode();
+            while (parent != null && groupIds.contains(parent.getGroupId())) {
+                parent = parent.getParentGroupNode();
+            }
+            if (parent == null) {
+                visible.add(groupNode);
+            }
+        }
+        Collections.sort(visible, new Comparator<TreeGroupNode>() {
+
+            @Override
+            public int compare(TreeGroupNode o1, TreeGroupNode o2) {
+                return Integer.compare(tree.indexOf(o1.getGroupId()), tree.indexOf(o2.getGroupId()));
+            }
+        });
+        return visible;
+    }
+
+    /**
+     * 展开分组时只进入已经展开的分组，只展开已经展开的虚拟分组中的设备
+     * 
+     * @param groupIds 已经展开的分组ID
+     * @param virtualKeys 已经展开的虚拟分组的key
+     * @param excludeEmpty 是否排除掉没有设备的节点
+     * @return
+     */
+    private ExpandFilter createVisibleRowsFilter(final Set<Integer> groupIds, final Set<String> virtualKeys,
+                                                 final boolean excludeEmpty) {
+        return new ExpandFilter() {
+
+            @Override
+            public boolean accept(TreeGroupNode groupNode) {
+                return !excludeEmpty || groupNode.getAllDeviceCount() != 0;
+            }
+
+            @Override
+            public boolean expand(TreeGroupNode groupNode) {
+                return groupIds.contains(groupNode.getGroupId());
+            }
+
+            @Override
+            public void expandVirtualNode(List<TreeModelItem> list, TreeGroupNode groupNode) {
+                for (TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode : groupNode.getChildVirtualNodeMap()
+                    .values()) {
+                    list.add(new TreeModelItem(virtualNode));
+
+                    // 没有展开的虚拟分组时不需要拼接key
+                    if (!virtualKeys.isEmpty() && virtualKeys.contains(virtualNode.getNodeKey())) {
+                        for (int i = 0; i < virtualNode.getDeviceCount(); i++) {
+                            list.add(TreeModelItem.ofDevice(virtualNode, i));
+                        }
+                    }
+                }
+            }
+        };
     }
 
     /**
@@ -362,13 +2190,15 @@ public class TreeModel {
      * @return
      */
     public List<TreeModelItem> expandOneLevelGroupNode(int groupId, boolean containDevice) {
+        long startNanos = System.nanoTime();
         List<TreeModelItem> list = new ArrayList<>();
 
-        TreeGroupNode groupNode = allGroupNodes.get(groupId);
+        TreeGroupNode groupNode = getTreeGroupNodeByGroupId(groupId);
 
         if (groupNode == null) {
-            return list;
+            return expanded("expandOneLevelGroupNode", list, startNanos);
         }
+        loadDevices(Collections.singletonList(groupNode));
 
         List<TreeGroupNode> childGroupList = groupNode.getChildGroupNode();
         if (childGroupList != null && !childGroupList.isEmpty()) {
@@ -380,37 +2210,233 @@ public class TreeModel {
         // 展开虚拟分组
         expandVirtualNode(list, groupNode, containDevice);
 
+        return expanded("expandOneLevelGroupNode", list, startNanos);
+    }
+
+    /**
+     * <pre>
+     * 按照设备状态过滤后将这颗树展开成扁平的列表对象
+     * 只保留有指定状态的设备的分组和虚拟分组，使用每个节点上的状态数量直接跳过没有匹配设备的分组
+     * 需要在添加设备之前设置deviceResolver
+     * </pre>
+     * 
+     * @param containDevice 返回的列表中是否包含设备对象，包含时只返回匹配的设备
+     * @param statusMask 设备状态，TreeDeviceResolver.STATUS_* 的组合，设备有其中任意一种状态即匹配
+     * @return 有序的扁平列表
+     */
+    public List<TreeModelItem> expandTree2FlatList(boolean containDevice, int statusMask) {
+        long startNanos = System.nanoTime();
+        checkStatusFilter();
+
+        List<TreeModelItem> list = new ArrayList<>();
+
+        Set<TreeGroupNode> partiallyLoaded = getPartiallyLoadedGroups();
+        ExpandFilter filter = createStatusFilter(containDevice, statusMask, partiallyLoaded);
+        for (TreeGroupNode groupNode : rootNodes) {
+            if (!filter.accept(groupNode)) {
+                continue;
+            }
+
+            list.add(new TreeModelItem(groupNode));
+
+            // 展开下级
+            expandGroupNode(list, groupNode, filter);
+        }
+
+        return expanded("expandTree2FlatList", list, startNanos);
+    }
+
+    /**
+     * 按照设备状态过滤后只展开一个层级的分组
+     * 
+     * @param groupId
+     * @param containDevice 返回的列表中是否包含设备对象，包含时只返回匹配的设备
+     * @param statusMask 设备状态，TreeDeviceResolver.STATUS_* 的组合，设备有其中任意一种状态即匹配
+     * @return
+     */
+    public List<TreeModelItem> expandOneLevelGroupNode(int groupId, boolean containDevice, int statusMask) {
+        long startNanos = System.nanoTime();
+        checkStatusFilter();
+
+        List<TreeModelItem> list = new ArrayList<>();
+
+        TreeGroupNode groupNode = getTreeGroupNodeByGroupId(groupId);
+        if (groupNode == null) {
+            return expanded("expandOneLevelGroupNode", list, startNanos);
+        }
+        // 只加载这个分组，下级分组中没有加载的设备状态未知
+        loadDevices(Collections.singletonList(groupNode));
+        Set<TreeGroupNode> partiallyLoaded = getPartiallyLoadedGroups();
+
+        if (!mayHaveStatus(groupNode, statusMask, partiallyLoaded)) {
+            return expanded("expandOneLevelGroupNode", list, startNanos);
+        }
+
+        for (TreeGroupNode childGroupNode : groupNode.getChildGroupNode()) {
+            if (mayHaveStatus(childGroupNode, statusMask, partiallyLoaded)) {
+                list.add(new TreeModelItem(childGroupNode));
+            }
+        }
+
+        // 展开虚拟分组
+        expandVirtualNode(list, groupNode, containDevice, statusMask);
+
+        return expanded("expandOneLevelGroupNode", list, startNanos);
+    }
+
+    private void checkStatusFilter() {
+        if (deviceResolver == null) {
+            throw new IllegalStateException("按照设备状态展开前需要先设置deviceResolver");
+        }
+    }
+
+    /**
+     * 按照设备状态展开分组，没有匹配设备的分组不会进入
+     * 
+     * @param containDevice 展开的List中是否包含设备
+     * @param statusMask 设备状态
+     * @param partiallyLoaded 见 getPartiallyLoadedGroups
+     * @return
+     */
+    private ExpandFilter createStatusFilter(final boolean containDevice, final int statusMask,
+                                            final Set<TreeGroupNode> partiallyLoaded) {
+        return new ExpandFilter() {
+
+            @Override
+            public boolean accept(TreeGroupNode groupNode) {
+                return mayHaveStatus(groupNode, statusMask, partiallyLoaded);
+            }
+
+            @Override
+            public boolean expand(TreeGroupNode groupNode) {
+                return true;
+            }
+
+            @Override
+            public void expandVirtualNode(List<TreeModelItem> list, TreeGroupNode groupNode) {
+                TreeModel.this.expandVirtualNode(list, groupNode, containDevice, statusMask);
+            }
+        };
+    }
+
+    /**
+     * 展开当前节点下有匹配设备的虚拟分组
+     * 
+     * @param list
+     * @param groupNode
+     * @param containDevice
+     * @param statusMask 设备状态
+     */
+    private void expandVirtualNode(List<TreeModelItem> list, TreeGroupNode groupNode, boolean containDevice,
+                                   int statusMask) {
+        for (TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode : groupNode.getChildVirtualNodeMap().values()) {
+            if (!virtualNode.hasStatus(statusMask)) {
+                continue;
+            }
+
+            list.add(new TreeModelItem(virtualNode));
+
+            if (containDevice) {
+                DeviceColumnStore store = virtualNode.getDeviceStore();
+                for (int i = 0; i < virtualNode.getDeviceCount(); i++) {
+                    // 按列存储的设备直接读取状态列，不创建设备对象
+                    int row = virtualNode.getDeviceRow(i);
+                    int flags = row >= 0 ? store.getStatusFlags(row)
+                        : deviceResolver.getStatusFlags(virtualNode.getDevice(i));
+                    if ((flags & statusMask) != 0) {
+                        list.add(TreeModelItem.ofDevice(virtualNode, i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 展开完成后回调监控指标
+     * 
+     * @param operation 展开的方法名称
+     * @param list 展开的结果
+     * @param startNanos 开始展开的时间
+     * @return list
+     */
+    private List<TreeModelItem> expanded(String operation, List<TreeModelItem> list, long startNanos) {
+        metricsListener.onExpand(this, operation, list.size(), System.nanoTime() - startNanos);
         return list;
     }
 
     /**
-     * 递归展开分组
+     * 展开分组的全部下级，排除掉没有设备的节点时不会进入空分组
      * 
-     * @param list 保存展开对象的List
-     * @param groupNode 要展开的分组节点
      * @param containDevice 展开的List中是否包含设备
      * @param excludeEmpty 是否排除掉没有设备的节点
+     * @return
      */
-    private void recursionExpandGroupNode(List<TreeModelItem> list, TreeGroupNode groupNode, boolean containDevice,
-                                          boolean excludeEmpty) {
-        List<TreeGroupNode> childGroupList = groupNode.getChildGroupNode();
-        if (childGroupList != null && !childGroupList.isEmpty()) {
-            for (TreeGroupNode childGroupNode : childGroupList) {
+    private ExpandFilter createExpandFilter(final boolean containDevice, final boolean excludeEmpty) {
+        return new ExpandFilter() {
 
-                if (excludeEmpty && childGroupNode.getAllDeviceCount() == 0) {
-                    // 排除掉没有设备的空分组
-                    continue;
-                }
+            @Override
+            public boolean accept(TreeGroupNode groupNode) {
+                // 排除掉没有设备的空分组
+                return !excludeEmpty || groupNode.getAllDeviceCount() != 0;
+            }
 
-                list.add(new TreeModelItem(childGroupNode));
+            @Override
+            public boolean expand(TreeGroupNode groupNode) {
+                return true;
+            }
 
-                // 递归展开下级
-                recursionExpandGroupNode(list, childGroupNode, containDevice, excludeEmpty);
+            @Override
+            public void expandVirtualNode(List<TreeModelItem> list, TreeGroupNode groupNode) {
+                TreeModel.this.expandVirtualNode(list, groupNode, containDevice);
             }
-        }
+        };
+    }
 
-        // 展开虚拟分组
-        expandVirtualNode(list, groupNode, containDevice);
+    /**
+     * <pre>
+     * 展开分组，顺序和递归展开一致：先依次展开每个下级分组，最后展开当前分组的虚拟分组
+     * 使用显式的栈代替递归，层级很深时也不会栈溢出
+     * </pre>
+     * 
+     * @param list 保存展开对象的List
+     * @param groupNode 要展开的分组节点，本身不会添加到list中
+     * @param filter 展开的条件
+     */
+    private void expandGroupNode(List<TreeModelItem> list, TreeGroupNode groupNode, ExpandFilter filter) {
+        List<TreeGroupNode> nodeStack = new ArrayList<>();
+        int[] childIndexes = new int[16];
+        nodeStack.add(groupNode);
+
+        while (!nodeStack.isEmpty()) {
+            int top = nodeStack.size() - 1;
+            TreeGroupNode node = nodeStack.get(top);
+            List<TreeGroupNode> childGroupList = node.getChildGroupNode();
+
+            // 找到下一个需要进入的下级分组
+            TreeGroupNode next = null;
+            while (next == null && childIndexes[top] < childGroupList.size()) {
+                TreeGroupNode childGroupNode = childGroupList.get(childIndexes[top]++);
+                if (filter.accept(childGroupNode)) {
+                    list.add(new TreeModelItem(childGroupNode));
+                    if (filter.expand(childGroupNode)) {
+                        next = childGroupNode;
+                    }
+                }
+            }
+
+            if (next != null) {
+                if (nodeStack.size() == childIndexes.length) {
+                    childIndexes = Arrays.copyOf(childIndexes, childIndexes.length * 2);
+                }
+                childIndexes[nodeStack.size()] = 0;
+                nodeStack.add(next);
+                continue;
+            }
+
+            // 下级分组都已经展开，再展开虚拟分组
+            nodeStack.remove(top);
+            filter.expandVirtualNode(list, node);
+        }
     }
 
     /**
@@ -420,7 +2446,7 @@ public class TreeModel {
      * @param groupNode
      * @param containDevice
      */
-    private void expandVirtualNode(List<TreeModelItem> list, TreeGroupNode groupNode, boolean containDevice) {
+    void expandVirtualNode(List<TreeModelItem> list, TreeGroupNode groupNode, boolean containDevice) {
         // 展开虚拟分组
         Map<String, TreeVirtualNode<DeviceStatusExpandMergeTreeBO>> virtualNodeMap = groupNode.getChildVirtualNodeMap();
         if (virtualNodeMap == null || virtualNodeMap.isEmpty()) {
@@ -434,12 +2460,75 @@ public class TreeModel {
 
             if (containDevice) {
                 // 添加设备
-                List<DeviceStatusExpandMergeTreeBO> deviceList = virtualNode.getDeviceList();
-                for (DeviceStatusExpandMergeTreeBO device : deviceList) {
-                    list.add(new TreeModelItem(device));
+                for (int i = 0; i < virtualNode.getDeviceCount(); i++) {
+                    list.add(TreeModelItem.ofDevice(virtualNode, i));
                 }
             }
         }
     }
 
+    /**
+     * 展开分组时的条件
+     */
+    private interface ExpandFilter {
+
+        /**
+         * 下级分组是否显示
+         * 
+         * @param groupNode
+         * @return
+         */
+        boolean accept(TreeGroupNode groupNode);
+
+        /**
+         * 显示的分组是否继续展开下级
+         * 
+         * @param groupNode
+         * @return
+         */
+        boolean expand(TreeGroupNode groupNode);
+
+        /**
+         * 展开分组下的虚拟分组，在下级分组都展开之后调用
+         * 
+         * @param list
+         * @param groupNode
+         */
+        void expandVirtualNode(List<TreeModelItem> list, TreeGroupNode groupNode);
+    }
+
+    /**
+     * 按需加载设备时，所在分组没有加载设备的设备
+     */
+    private static class UnloadedDevice {
+
+        private final int groupId;
+
+        private int statusFlags;
+
+        UnloadedDevice(int groupId, int statusFlags){
+            this.groupId = groupId;
+            this.statusFlags = statusFlags;
+        }
+    }
+
+    /**
+     * 树上的设备以及设备所在的虚拟分组
+     */
+    private static class DeviceEntry {
+
+        private DeviceStatusExpandMergeTreeBO device;
+
+        private TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode;
+
+        private int statusFlags;
+
+        DeviceEntry(DeviceStatusExpandMergeTreeBO device, TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode,
+                    int statusFlags){
+            this.device = device;
+            this.virtualNode = virtualNode;
+            this.statusFlags = statusFlags;
+        }
+    }
+
 }
@@ -0,0 +1,287 @@
+package com.chedaia.boss.web.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.chedaia.boss.web.bo.StatDeviceNumberBO;
+import com.chedaia.boss.web.model.TreeModelItem.TreeModelItemType;
+
+/**
+ * <pre>
+ * 解码 TreeModelBinaryWriter 输出的二进制格式，格式见 TreeModelBinaryWriter
+ * 
+ * 主要给Java客户端和测试使用，每个元素解码成一个 Item
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelBinaryReader {
+
+    private TreeModelBinaryReader(){
+    }
+
+    /**
+     * 解码缓冲区中的全部元素，从缓冲区的当前位置开始读
+     * 
+     * @param buffer
+     * @return 按行号排列的元素
+     * @throws IllegalArgumentException 魔数或者版本号不对
+     */
+    public static List<Item> read(ByteBuffer buffer) {
+        if (buffer.remaining() < 8 || buffer.getInt() != TreeModelBinaryWriter.MAGIC) {
+            throw new IllegalArgumentException("不是TreeModelBinaryWriter输出的格式或者版本不对");
+        }
+        int count = buffer.getInt();
+
+        List<Item> items = new ArrayList<>(count);
+        List<String> stringTable = new ArrayList<>();
+        int previousGroupId = 0;
+        long previousDeviceId = 0;
+        for (int row = 0; row < count; row++) {
+            Item item = new Item();
+            int type = buffer.get();
+            int parentRowDelta = readVarInt(buffer);
+            if (parentRowDelta == 0) {
+                item.parentRow = -1;
+                item.depth = 0;
+            } else {
+                item.parentRow = row - parentRowDelta;
+                item.depth = items.get(item.parentRow).depth + 1;
+            }
+
+            switch (type & 3) {
+                case TreeModelBinaryWriter.TYPE_GROUP_NODE:
+                    item.type = TreeModelItemType.GROUP_NODE;
+                    previousGroupId += unzigzag(readVarInt(buffer));
+                    item.groupId = previousGroupId;
+                    item.name = readString(buffer, stringTable);
+                    item.deviceCount = readVarInt(buffer);
+                    item.statusCounts = readStatusCounts(buffer);
+                    if ((type & TreeModelBinaryWriter.FLAG_NULL_STATISTICS) == 0) {
+                        item.statistics = readStatistics(buffer);
+                    }
+                    break;
+                case TreeModelBinaryWriter.TYPE_VIRTUAL_NODE:
+                    item.type = TreeModelItemType.VIRTUAL_NODE;
+                    int property = unzigzag(readVarInt(buffer));
+                    item.property = (type & TreeModelBinaryWriter.FLAG_NULL_PROPERTY) != 0 ? null : property;
+                    item.name = readString(buffer, stringTable);
+                    item.deviceCount = readVarInt(buffer);
+                    item.statusCounts = readStatusCounts(buffer);
+                    break;
+                default:
+                    item.type = TreeModelItemType.DATA_NODE;
+                    previousDeviceId += unzigzag(readVarLong(buffer));
+                    item.deviceId = previousDeviceId;
+                    item.statusFlags = buffer.get() & 0xFF;
+                    break;
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    private static int[] readStatusCounts(ByteBuffer buffer) {
+        int mask = buffer.get() & 0xFF;
+        int[] counts = new int[TreeDeviceResolver.STATUS_TYPES];
+        for (int i = 0; i < counts.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                counts[i] = readVarInt(buffer);
+            }
+        }
+        return counts;
+    }
+
+    private static StatDeviceNumberBO readStatistics(ByteBuffer buffer) {
+        int mask = buffer.get() & 0xFF;
+        Integer[] values = new Integer[TreeModelBinaryWriter.STATISTICS_FIELDS];
+        for (int i = 0; i < values.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                values[i] = unzigzag(readVarInt(buffer));
+            }
+        }
+
+        StatDeviceNumberBO statistics = new StatDeviceNumberBO();
+        statistics.setAll(values[0]);
+        statistics.setDring(values[1]);
+        statistics.setOffline(values[2]);
+        statistics.setAlarm(values[3]);
+        statistics.setOnline(values[4]);
+        statistics.setLineDelocali(values[5]);
+        statistics.setRisk(values[6]);
+        statistics.setWarning(values[7]);
+        return statistics;
+    }
+
+    private static String readString(ByteBuffer buffer, List<String> stringTable) {
+        int index = readVarInt(buffer);
+        if (index == 0) {
+            return null;
+        }
+        if (index <= stringTable.size()) {
+            return stringTable.get(index - 1);
+        }
+        byte[] bytes = new byte[readVarInt(buffer)];
+        buffer.get(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        stringTable.add(value);
+        return value;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 解码后的一个元素
+     */
+    public static class Item {
+
+        private TreeModelItemType type;
+
+        private int depth;
+
+        private int parentRow;
+
+        private Integer groupId;
+
+        private Integer property;
+
+        private String name;
+
+        private int deviceCount;
+
+        private int[] statusCounts;
+
+        private StatDeviceNumberBO statistics;
+
+        private long deviceId;
+
+        private int statusFlags;
+
+        private Item(){
+        }
+
+        public TreeModelItemType getType() {
+            return type;
+        }
+
+        /**
+         * 最外层的元素深度为0
+         * 
+         * @return
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * 父元素的行号
+         * 
+         * @return 最外层的元素返回-1
+         */
+        public int getParentRow() {
+            return parentRow;
+        }
+
+        /**
+         * 分组ID
+         * 
+         * @return 不是分组时返回null
+         */
+        public Integer getGroupId() {
+            return groupId;
+        }
+
+        /**
+         * 虚拟分组的property
+         * 
+         * @return
+         */
+        public Integer getProperty() {
+            return property;
+        }
+
+        /**
+         * 分组或者虚拟分组的名称
+         * 
+         * @return
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 分组的全部设备数量，或者虚拟分组的设备数量
+         * 
+         * @return
+         */
+        public int getDeviceCount() {
+            return deviceCount;
+        }
+
+        /**
+         * 分组或者虚拟分组中某个状态的设备数量
+         * 
+         * @param status TreeDeviceResolver 中的一个状态
+         * @return
+         */
+        public int getStatusCount(int status) {
+            return statusCounts == null ? 0 : statusCounts[Integer.numberOfTrailingZeros(status)];
+        }
+
+        /**
+         * 分组的统计信息
+         * 
+         * @return 不是分组或者分组没有统计信息时返回null
+         */
+        public StatDeviceNumberBO getStatistics() {
+            return statistics;
+        }
+
+        public long getDeviceId() {
+            return deviceId;
+        }
+
+        public int getStatusFlags() {
+            return statusFlags;
+        }
+    }
+
+}
@@ -0,0 +1,357 @@
+package com.chedaia.boss.web.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.boss.web.bo.StatDeviceNumberBO;
+
+/**
+ * <pre>
+ * 将树的展开结果编码成紧凑的二进制格式，代替 TreeModelJsonWriter 输出的JSON
+ * 
+ * 配合 TreeModelItemIterator 使用，边展开边写入一个可以重复使用的 ByteBuffer，每一行都不创建对象
+ * 一个实例同一时间只能被一个线程使用，每次编码都会覆盖上一次的结果
+ * 
+ * 格式，整数都是大端序，varint 为每字节7位的变长整数，zigzag 为有符号数的变长编码：
+ * 文件头     int 魔数 0x544D4201，int 元素数量
+ * 每个元素   byte 类型，varint 父元素行号差
+ * 
+ * 类型的低两位：0 分组，1 虚拟分组，2 设备；第3位为1时表示虚拟分组的property为null，第4位为1时表示分组没有统计信息
+ * 父元素行号差 = 当前元素的行号 - 父元素的行号，最外层的元素为0，行号从0开始
+ * 
+ * 分组       zigzag 和上一个分组ID的差，字符串 名称，varint 全部设备数量，状态数量，统计信息
+ * 虚拟分组   zigzag property，字符串 名称，varint 设备数量，状态数量
+ * 设备       zigzag 和上一个设备ID的差（64位），byte 状态标记
+ * 
+ * 字符串     varint n，0 表示null，n 不超过字符串表的大小时为字符串表中第n个字符串
+ *            n 等于字符串表的大小+1时后面跟着 varint 字节数 和 UTF-8 编码的字符串，并加入字符串表
+ * 状态数量   byte 不为0的状态的标记，后面按状态从低到高依次为每个不为0的状态写 varint 数量
+ * 统计信息   StatDeviceNumberBO，byte 不为null的字段的标记，
+ *            后面按 all、dring、offline、alarm、online、lineDelocali、risk、warning 的顺序为每个不为null的字段写 zigzag 数量
+ * 
+ * 解码见 TreeModelBinaryReader
+ * 
+ * 设备ID和状态标记由 TreeDeviceResolver 提供，按列存储的设备直接读取列，不创建设备对象
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelBinaryWriter {
+
+    /**
+     * 魔数 "TMB" 和格式的版本号
+     */
+    public static final int MAGIC = 0x544D4202;
+
+    public static final byte TYPE_GROUP_NODE = 0;
+
+    public static final byte TYPE_VIRTUAL_NODE = 1;
+
+    public static final byte TYPE_DATA_NODE = 2;
+
+    /**
+     * 虚拟分组的property为null
+     */
+    public static final byte FLAG_NULL_PROPERTY = 1 << 2;
+
+    /**
+     * 分组没有统计信息
+     */
+    public static final byte FLAG_NULL_STATISTICS = 1 << 3;
+
+    /**
+     * 统计信息的字段数量
+     */
+    static final int STATISTICS_FIELDS = 8;
+
+    /**
+     * 文件头的长度
+     */
+    private static final int HEADER_LENGTH = 8;
+
+    /**
+     * 一个元素除了字符串以外最多占用的字节数
+     */
+    private static final int MAX_ITEM_LENGTH = 1 + 5 + 10 + 5 + 5 + 5 + 1 + 5 * TreeDeviceResolver.STATUS_TYPES + 1
+                                               + 5 * STATISTICS_FIELDS;
+
+    /**
+     * 为null时对象设备的ID和状态标记都写0
+     */
+    private final TreeDeviceResolver deviceResolver;
+
+    private ByteBuffer buffer;
+
+    /**
+     * 字符串表，字符串对应的编号从1开始
+     */
+    private final Map<String, Integer> stringTable = new HashMap<>();
+
+    /**
+     * 每一层最后一个元素的行号，用于计算父元素的行号
+     */
+    private int[] depthRows = new int[16];
+
+    private int previousGroupId;
+
+    private long previousDeviceId;
+
+    public TreeModelBinaryWriter(TreeDeviceResolver deviceResolver){
+        this(deviceResolver, 64 * 1024);
+    }
+
+    /**
+     * @param deviceResolver 提供设备ID和状态标记，为null时对象设备的ID和状态标记都写0
+     * @param initialCapacity 缓冲区的初始大小，不够时自动扩容
+     */
+    public TreeModelBinaryWriter(TreeDeviceResolver deviceResolver, int initialCapacity){
+        this.deviceResolver = deviceResolver;
+        this.buffer = ByteBuffer.allocate(Math.max(initialCapacity, HEADER_LENGTH + MAX_ITEM_LENGTH));
+    }
+
+    /**
+     * <pre>
+     * 将迭代器中的全部元素编码到缓冲区中
+     * 返回的缓冲区可以直接读取，下一次调用encode前有效
+     * </pre>
+     * 
+     * @param iterator
+     * @return
+     */
+    public ByteBuffer encode(TreeModelItemIterator iterator) {
+        buffer.clear();
+        stringTable.clear();
+        previousGroupId = 0;
+        previousDeviceId = 0;
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(0);
+
+        int row = 0;
+        TreeModelCursor cursor = iterator.getCursor();
+        while (iterator.moveToNext()) {
+            writeItem(cursor, row);
+            row++;
+        }
+        buffer.putInt(4, row);
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 将迭代器中的全部元素编码后写到输出流中，写完后不会关闭输出流
+     * 
+     * @param iterator
+     * @param out
+     * @throws IOException
+     */
+    public void write(TreeModelItemIterator iterator, OutputStream out) throws IOException {
+        ByteBuffer encoded = encode(iterator);
+        out.write(encoded.array(), encoded.arrayOffset(), encoded.limit());
+        out.flush();
+    }
+
+    /**
+     * 写一个元素
+     * 
+     * @param item 迭代器的当前元素
+     * @param row 元素的行号
+     */
+    private void writeItem(TreeModelCursor item, int row) {
+        ensureCapacity(MAX_ITEM_LENGTH);
+
+        int depth = item.getDepth();
+        if (depth >= depthRows.length) {
+            depthRows = Arrays.copyOf(depthRows, Math.max(depthRows.length * 2, depth + 1));
+        }
+        depthRows[depth] = row;
+        int parentRowDelta = depth == 0 ? 0 : row - depthRows[depth - 1];
+
+        switch (item.getType()) {
+            case GROUP_NODE:
+                TreeGroupNode groupNode = item.getGroupNode();
+                StatDeviceNumberBO statistics = groupNode.getStatDeviceNumberBO();
+                buffer.put(statistics == null ? (byte) (TYPE_GROUP_NODE | FLAG_NULL_STATISTICS) : TYPE_GROUP_NODE);
+                writeVarInt(parentRowDelta);
+                int groupId = groupNode.getGroupId();
+                writeVarInt(zigzag(groupId - previousGroupId));
+                previousGroupId = groupId;
+                writeString(groupNode.getGroupName());
+                writeVarInt(groupNode.getAllDeviceCount());
+                writeStatusCounts(groupNode, null);
+                if (statistics != null) {
+                    writeStatistics(statistics);
+                }
+                break;
+            case VIRTUAL_NODE:
+                TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode = item.getVirtualNode();
+                Integer property = virtualNode.getProperty();
+                buffer.put(property == null ? (byte) (TYPE_VIRTUAL_NODE | FLAG_NULL_PROPERTY) : TYPE_VIRTUAL_NODE);
+                writeVarInt(parentRowDelta);
+                writeVarInt(property == null ? 0 : zigzag(property));
+                writeString(virtualNode.getNodeName());
+                writeVarInt(virtualNode.getDeviceCount());
+                writeStatusCounts(null, virtualNode);
+                break;
+            default:
+                buffer.put(TYPE_DATA_NODE);
+                writeVarInt(parentRowDelta);
+                long deviceId;
+                int statusFlags;
+                if (item.getDeviceStore() != null) {
+                    // 按列存储的设备直接读取列
+                    deviceId = item.getDeviceStore().getDeviceId(item.getDeviceRow());
+                    statusFlags = item.getDeviceStore().getStatusFlags(item.getDeviceRow());
+                } else if (deviceResolver != null) {
+                    deviceId = deviceResolver.getDeviceId(item.getDataNode());
+                    statusFlags = deviceResolver.getStatusFlags(item.getDataNode());
+                } else {
+                    deviceId = 0;
+                    statusFlags = 0;
+                }
+                writeVarLong(zigzag(deviceId - previousDeviceId));
+                previousDeviceId = deviceId;
+                buffer.put((byte) statusFlags);
+                break;
+        }
+    }
+
+    /**
+     * 写状态数量，groupNode和virtualNode只有一个不为null
+     * 
+     * @param groupNode
+     * @param virtualNode
+     */
+    private void writeStatusCounts(TreeGroupNode groupNode, TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode) {
+        int mask = 0;
+        for (int i = 0; i < TreeDeviceResolver.STATUS_TYPES; i++) {
+            int count = groupNode != null ? groupNode.getStatusCount(1 << i) : virtualNode.getStatusCount(1 << i);
+            if (count != 0) {
+                mask |= 1 << i;
+            }
+        }
+        buffer.put((byte) mask);
+        for (int i = 0; i < TreeDeviceResolver.STATUS_TYPES; i++) {
+            if ((mask & (1 << i)) != 0) {
+                writeVarInt(groupNode != null ? groupNode.getStatusCount(1 << i) : virtualNode.getStatusCount(1 << i));
+            }
+        }
+    }
+
+    /**
+     * 写分组的统计信息，字段的顺序和 TreeModelJsonWriter 输出的相同
+     * 
+     * @param statistics
+     */
+    private void writeStatistics(StatDeviceNumberBO statistics) {
+        // 先占用标记的位置，写完字段后再回填
+        int maskPosition = buffer.position();
+        buffer.put((byte) 0);
+        int mask = writeStatistic(statistics.getAll(), 0);
+        mask |= writeStatistic(statistics.getDring(), 1);
+        mask |= writeStatistic(statistics.getOffline(), 2);
+        mask |= writeStatistic(statistics.getAlarm(), 3);
+        mask |= writeStatistic(statistics.getOnline(), 4);
+        mask |= writeStatistic(statistics.getLineDelocali(), 5);
+        mask |= writeStatistic(statistics.getRisk(), 6);
+        mask |= writeStatistic(statistics.getWarning(), 7);
+        buffer.put(maskPosition, (byte) mask);
+    }
+
+    /**
+     * 写统计信息的一个字段
+     * 
+     * @param value
+     * @param index 字段的顺序
+     * @return 字段在标记中的位，为null时返回0
+     */
+    private int writeStatistic(Integer value, int index) {
+        if (value == null) {
+            return 0;
+        }
+        writeVarInt(zigzag(value));
+        return 1 << index;
+    }
+
+    /**
+     * 写字符串，重复的字符串只写编号
+     * 
+     * @param value
+     */
+    private void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        Integer index = stringTable.get(value);
+        if (index != null) {
+            writeVarInt(index);
+            return;
+        }
+        index = stringTable.size() + 1;
+        stringTable.put(value, index);
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // 字符串之后还有这个元素剩余的字段
+        ensureCapacity(10 + bytes.length + MAX_ITEM_LENGTH);
+        writeVarInt(index);
+        writeVarInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * 剩余空间不够时扩容，已经写入的内容保持不变
+     * 
+     * @param length 需要的空间
+     */
+    private void ensureCapacity(int length) {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + length);
+        ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.chedaia.boss.web.model;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.boss.web.model.TreeModelItem.TreeModelItemType;
+
+/**
+ * <pre>
+ * 展开树时可以重复使用的当前元素，代替每一行创建一个 TreeModelItem
+ * 
+ * 由 TreeModelItemIterator.moveToNext 移动到下一个元素，之后读取到的都是新元素的内容
+ * 只在移动到下一个元素之前有效，需要保存时调用 toTreeModelItem 复制一份
+ * 
+ * 设备元素只记录所在的虚拟分组和下标，按列存储的设备通过 getDeviceStore 和 getDeviceRow 直接读取列
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelCursor {
+
+    private TreeModelItemType type;
+
+    private TreeGroupNode groupNode;
+
+    /**
+     * 虚拟分组，或者设备所在的虚拟分组
+     */
+    private TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode;
+
+    /**
+     * 设备在虚拟分组中的下标
+     */
+    private int dataIndex = -1;
+
+    /**
+     * 最外层的元素深度为0
+     */
+    private int depth;
+
+    TreeModelCursor(){
+    }
+
+    void setGroup(TreeGroupNode groupNode, int depth) {
+        this.type = TreeModelItemType.GROUP_NODE;
+        this.groupNode = groupNode;
+        this.virtualNode = null;
+        this.dataIndex = -1;
+        this.depth = depth;
+    }
+
+    void setVirtual(TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode, int depth) {
+        this.type = TreeModelItemType.VIRTUAL_NODE;
+        this.groupNode = null;
+        this.virtualNode = virtualNode;
+        this.dataIndex = -1;
+        this.depth = depth;
+    }
+
+    void setData(TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode, int dataIndex, int depth) {
+        this.type = TreeModelItemType.DATA_NODE;
+        this.groupNode = null;
+        this.virtualNode = virtualNode;
+        this.dataIndex = dataIndex;
+        this.depth = depth;
+    }
+
+    /**
+     * 复制当前元素
+     * 
+     * @param other
+     */
+    void copyFrom(TreeModelCursor other) {
+        this.type = other.type;
+        this.groupNode = other.groupNode;
+        this.virtualNode = other.virtualNode;
+        this.dataIndex = other.dataIndex;
+        this.depth = other.depth;
+    }
+
+    public TreeModelItemType getType() {
+        return type;
+    }
+
+    public TreeGroupNode getGroupNode() {
+        return groupNode;
+    }
+
+    /**
+     * 虚拟分组元素返回虚拟分组，设备元素返回设备所在的虚拟分组
+     * 
+     * @return
+     */
+    public TreeVirtualNode<DeviceStatusExpandMergeTreeBO> getVirtualNode() {
+        return virtualNode;
+    }
+
+    /**
+     * 当前的设备，按列存储的设备每次调用都会创建新的设备对象
+     * 
+     * @return 不是设备元素时返回null
+     */
+    public DeviceStatusExpandMergeTreeBO getDataNode() {
+        if (type != TreeModelItemType.DATA_NODE) {
+            return null;
+        }
+        return virtualNode.getDevice(dataIndex);
+    }
+
+    /**
+     * 按列存储的设备所在的DeviceColumnStore，可以直接读取列而不创建设备对象
+     * 
+     * @return 不是按列存储的设备时返回null
+     */
+    public DeviceColumnStore getDeviceStore() {
+        return getDeviceRow() < 0 ? null : virtualNode.getDeviceStore();
+    }
+
+    /**
+     * 按列存储的设备的行号
+     * 
+     * @return 不是按列存储的设备时返回-1
+     */
+    public int getDeviceRow() {
+        if (type != TreeModelItemType.DATA_NODE) {
+            return -1;
+        }
+        return virtualNode.getDeviceRow(dataIndex);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * 创建一个和当前元素相同的 TreeModelItem，移动到下一个元素后仍然有效
+     * 
+     * @return
+     */
+    public TreeModelItem toTreeModelItem() {
+        switch (type) {
+            case GROUP_NODE:
+                return new TreeModelItem(groupNode);
+            case VIRTUAL_NODE:
+                return new TreeModelItem(virtualNode);
+            default:
+                return TreeModelItem.ofDevice(virtualNode, dataIndex);
+        }
+    }
+
+}
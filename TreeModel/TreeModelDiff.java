@@ -0,0 +1,396 @@
+package com.chedaia.boss.web.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.boss.web.bo.StatDeviceNumberBO;
+
+/**
+ * <pre>
+ * 同一个用户的两个版本的树模型之间的差异，客户端只需要获取差异就可以更新本地的树
+ * 
+ * 分组的差异：新增的分组、删除的分组、上级分组变化的分组、设备数量或统计信息变化的分组
+ * 设备的差异：新增、删除、移动到其他虚拟分组、状态标记变化的设备，按设备ID比较
+ * 
+ * 设备ID和状态标记由各自树模型的 TreeDeviceResolver 提供，按列存储的设备直接读取列
+ * 树上有对象设备但没有设置 TreeDeviceResolver 时不能比较设备
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public final class TreeModelDiff {
+
+    /**
+     * 新增的分组，按新版本的展开顺序，上级分组在下级分组之前
+     */
+    private final List<TreeGroupNode> addedGroups = new ArrayList<>();
+
+    /**
+     * 删除的分组ID，按旧版本的展开顺序
+     */
+    private final List<Integer> removedGroupIds = new ArrayList<>();
+
+    /**
+     * 上级分组变化的分组
+     */
+    private final List<GroupMove> movedGroups = new ArrayList<>();
+
+    /**
+     * 设备数量或统计信息变化的分组，不包含新增的分组
+     */
+    private final List<GroupChange> changedGroups = new ArrayList<>();
+
+    /**
+     * 新增、删除、移动或者状态变化的设备
+     */
+    private final List<DeviceChange> deviceChanges = new ArrayList<>();
+
+    private TreeModelDiff(){
+    }
+
+    /**
+     * 比较两个版本的树模型
+     * 
+     * @param oldModel 旧版本
+     * @param newModel 新版本
+     * @return
+     */
+    public static TreeModelDiff diff(TreeModel oldModel, TreeModel newModel) {
+        TreeModelDiff diff = new TreeModelDiff();
+
+        Map<Integer, TreeGroupNode> oldGroups = new LinkedHashMap<>();
+        Map<Long, DeviceState> oldDevices = new HashMap<>();
+        collect(oldModel, oldGroups, oldDevices);
+
+        Map<Integer, TreeGroupNode> newGroups = new LinkedHashMap<>();
+        Map<Long, DeviceState> newDevices = new HashMap<>();
+        collect(newModel, newGroups, newDevices);
+
+        diff.diffGroups(oldGroups, newGroups);
+        diff.diffDevices(oldDevices, newDevices);
+        return diff;
+    }
+
+    private void diffGroups(Map<Integer, TreeGroupNode> oldGroups, Map<Integer, TreeGroupNode> newGroups) {
+        for (Integer groupId : oldGroups.keySet()) {
+            if (!newGroups.containsKey(groupId)) {
+                removedGroupIds.add(groupId);
+            }
+        }
+
+        for (TreeGroupNode newNode : newGroups.values()) {
+            TreeGroupNode oldNode = oldGroups.get(newNode.getGroupId());
+            if (oldNode == null) {
+                addedGroups.add(newNode);
+                continue;
+            }
+
+            Integer oldParentId = getTreeParentId(oldNode);
+            Integer newParentId = getTreeParentId(newNode);
+            if (!Objects.equals(oldParentId, newParentId)) {
+                movedGroups.add(new GroupMove(newNode.getGroupId(), oldParentId, newParentId));
+            }
+
+            if (oldNode.getAllDeviceCount() != newNode.getAllDeviceCount()
+                || !sameStatistics(oldNode.getStatDeviceNumberBO(), newNode.getStatDeviceNumberBO())) {
+                changedGroups.add(new GroupChange(newNode.getGroupId(),
+                    oldNode.getAllDeviceCount(),
+                    newNode.getAllDeviceCount(),
+                    oldNode.getStatDeviceNumberBO(),
+                    newNode.getStatDeviceNumberBO()));
+            }
+        }
+    }
+
+    private void diffDevices(Map<Long, DeviceState> oldDevices, Map<Long, DeviceState> newDevices) {
+        for (Map.Entry<Long, DeviceState> entry : oldDevices.entrySet()) {
+            if (!newDevices.containsKey(entry.getKey())) {
+                DeviceState oldState = entry.getValue();
+                deviceChanges.add(new DeviceChange(entry.getKey(), oldState.virtualNodeKey, null,
+                    oldState.statusFlags, 0));
+            }
+        }
+
+        for (Map.Entry<Long, DeviceState> entry : newDevices.entrySet()) {
+            DeviceState newState = entry.getValue();
+            DeviceState oldState = oldDevices.get(entry.getKey());
+            if (oldState == null) {
+                deviceChanges.add(new DeviceChange(entry.getKey(), null, newState.virtualNodeKey, 0,
+                    newState.statusFlags));
+            } else if (!oldState.virtualNodeKey.equals(newState.virtualNodeKey)
+                || oldState.statusFlags != newState.statusFlags) {
+                deviceChanges.add(new DeviceChange(entry.getKey(), oldState.virtualNodeKey, newState.virtualNodeKey,
+                    oldState.statusFlags, newState.statusFlags));
+            }
+        }
+    }
+
+    /**
+     * 按展开顺序收集树上的分组和设备
+     * 
+     * @param treeModel
+     * @param groups
+     * @param devices
+     */
+    private static void collect(TreeModel treeModel, Map<Integer, TreeGroupNode> groups,
+                                Map<Long, DeviceState> devices) {
+        TreeDeviceResolver deviceResolver = treeModel.getDeviceResolver();
+        TreeModelItemIterator iterator = treeModel.treeIterator(true, false);
+        String virtualNodeKey = null;
+        TreeModelCursor item = iterator.getCursor();
+        while (iterator.moveToNext()) {
+            switch (item.getType()) {
+                case GROUP_NODE:
+                    groups.put(item.getGroupNode().getGroupId(), item.getGroupNode());
+                    break;
+                case VIRTUAL_NODE:
+                    virtualNodeKey = item.getVirtualNode().getNodeKey();
+                    break;
+                default:
+                    DeviceColumnStore store = item.getDeviceStore();
+                    if (store != null) {
+                        devices.put(store.getDeviceId(item.getDeviceRow()),
+                            new DeviceState(virtualNodeKey, store.getStatusFlags(item.getDeviceRow())));
+                        break;
+                    }
+                    if (deviceResolver == null) {
+                        throw new IllegalStateException("比较树模型的设备前需要先设置deviceResolver");
+                    }
+                    DeviceStatusExpandMergeTreeBO device = item.getDataNode();
+                    devices.put(deviceResolver.getDeviceId(device),
+                        new DeviceState(virtualNodeKey, deviceResolver.getStatusFlags(device)));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 分组在树上的上级分组ID，上级分组不在树上时作为根节点，返回null
+     * 
+     * @param groupNode
+     * @return
+     */
+    private static Integer getTreeParentId(TreeGroupNode groupNode) {
+        TreeGroupNode parent = groupNode.getParentGroupNode();
+        return parent == null ? null : parent.getGroupId();
+    }
+
+    private static boolean sameStatistics(StatDeviceNumberBO a, StatDeviceNumberBO b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return Objects.equals(a.getAll(), b.getAll())
+               && Objects.equals(a.getDring(), b.getDring())
+               && Objects.equals(a.getOffline(), b.getOffline())
+               && Objects.equals(a.getAlarm(), b.getAlarm())
+               && Objects.equals(a.getOnline(), b.getOnline())
+               && Objects.equals(a.getLineDelocali(), b.getLineDelocali())
+               && Objects.equals(a.getRisk(), b.getRisk())
+               && Objects.equals(a.getWarning(), b.getWarning());
+    }
+
+    /**
+     * 两个版本是否完全相同
+     * 
+     * @return
+     */
+    public boolean isEmpty() {
+        return addedGroups.isEmpty()
+               && removedGroupIds.isEmpty()
+               && movedGroups.isEmpty()
+               && changedGroups.isEmpty()
+               && deviceChanges.isEmpty();
+    }
+
+    public List<TreeGroupNode> getAddedGroups() {
+        return Collections.unmodifiableList(addedGroups);
+    }
+
+    public List<Integer> getRemovedGroupIds() {
+        return Collections.unmodifiableList(removedGroupIds);
+    }
+
+    public List<GroupMove> getMovedGroups() {
+        return Collections.unmodifiableList(movedGroups);
+    }
+
+    public List<GroupChange> getChangedGroups() {
+        return Collections.unmodifiableList(changedGroups);
+    }
+
+    public List<DeviceChange> getDeviceChanges() {
+        return Collections.unmodifiableList(deviceChanges);
+    }
+
+    /**
+     * 设备所在的虚拟分组和状态标记
+     */
+    private static class DeviceState {
+
+        private final String virtualNodeKey;
+
+        private final int statusFlags;
+
+        private DeviceState(String virtualNodeKey, int statusFlags){
+            this.virtualNodeKey = virtualNodeKey;
+            this.statusFlags = statusFlags;
+        }
+    }
+
+    /**
+     * 上级分组变化的分组，上级分组ID为null时是根节点
+     */
+    public static final class GroupMove {
+
+        private final Integer groupId;
+
+        private final Integer oldParentId;
+
+        private final Integer newParentId;
+
+        public GroupMove(Integer groupId, Integer oldParentId, Integer newParentId){
+            this.groupId = groupId;
+            this.oldParentId = oldParentId;
+            this.newParentId = newParentId;
+        }
+
+        public Integer getGroupId() {
+            return groupId;
+        }
+
+        public Integer getOldParentId() {
+            return oldParentId;
+        }
+
+        public Integer getNewParentId() {
+            return newParentId;
+        }
+    }
+
+    /**
+     * 设备数量或统计信息变化的分组
+     */
+    public static final class GroupChange {
+
+        private final Integer groupId;
+
+        private final int oldAllDeviceCount;
+
+        private final int newAllDeviceCount;
+
+        private final StatDeviceNumberBO oldStatistics;
+
+        private final StatDeviceNumberBO newStatistics;
+
+        public GroupChange(Integer groupId, int oldAllDeviceCount, int newAllDeviceCount,
+                           StatDeviceNumberBO oldStatistics, StatDeviceNumberBO newStatistics){
+            this.groupId = groupId;
+            this.oldAllDeviceCount = oldAllDeviceCount;
+            this.newAllDeviceCount = newAllDeviceCount;
+            this.oldStatistics = oldStatistics;
+            this.newStatistics = newStatistics;
+        }
+
+        public Integer getGroupId() {
+            return groupId;
+        }
+
+        public int getOldAllDeviceCount() {
+            return oldAllDeviceCount;
+        }
+
+        public int getNewAllDeviceCount() {
+            return newAllDeviceCount;
+        }
+
+        public StatDeviceNumberBO getOldStatistics() {
+            return oldStatistics;
+        }
+
+        public StatDeviceNumberBO getNewStatistics() {
+            return newStatistics;
+        }
+    }
+
+    /**
+     * <pre>
+     * 一个设备的变化
+     * 新增的设备旧的虚拟分组为null，删除的设备新的虚拟分组为null
+     * 虚拟分组用 TreeVirtualNode.getNodeKey 表示
+     * </pre>
+     */
+    public static final class DeviceChange {
+
+        private final long deviceId;
+
+        private final String oldVirtualNodeKey;
+
+        private final String newVirtualNodeKey;
+
+        private final int oldStatusFlags;
+
+        private final int newStatusFlags;
+
+        public DeviceChange(long deviceId, String oldVirtualNodeKey, String newVirtualNodeKey, int oldStatusFlags,
+                            int newStatusFlags){
+            this.deviceId = deviceId;
+            this.oldVirtualNodeKey = oldVirtualNodeKey;
+            this.newVirtualNodeKey = newVirtualNodeKey;
+            this.oldStatusFlags = oldStatusFlags;
+            this.newStatusFlags = newStatusFlags;
+        }
+
+        public boolean isAdded() {
+            return oldVirtualNodeKey == null;
+        }
+
+        public boolean isRemoved() {
+            return newVirtualNodeKey == null;
+        }
+
+        /**
+         * 设备是否移动到了其他虚拟分组
+         * 
+         * @return
+         */
+        public boolean isMoved() {
+            return oldVirtualNodeKey != null && newVirtualNodeKey != null
+                   && !oldVirtualNodeKey.equals(newVirtualNodeKey);
+        }
+
+        public long getDeviceId() {
+            return deviceId;
+        }
+
+        public String getOldVirtualNodeKey() {
+            return oldVirtualNodeKey;
+        }
+
+        public String getNewVirtualNodeKey() {
+            return newVirtualNodeKey;
+        }
+
+        public int getOldStatusFlags() {
+            return oldStatusFlags;
+        }
+
+        public int getNewStatusFlags() {
+            return newStatusFlags;
+        }
+    }
+
+}
@@ -34,6 +34,13 @@ public class TreeModelItem {
 
     private DeviceStatusExpandMergeTreeBO dataNode;
 
+    /**
+     * 按列存储的设备，读取dataNode时才创建设备对象
+     */
+    private DeviceColumnStore deviceStore;
+
+    private int deviceRow = -1;
+
     public TreeModelItem(TreeGroupNode groupNode){
         this.groupNode = groupNode;
         this.type = TreeModelItemType.GROUP_NODE;
@@ -50,6 +57,33 @@ public class TreeModelItem {
         this.type = TreeModelItemType.DATA_NODE;
     }
 
+    /**
+     * 按列存储的设备，第一次调用getDataNode时才创建设备对象
+     * 
+     * @param deviceStore
+     * @param deviceRow 行号
+     */
+    public TreeModelItem(DeviceColumnStore deviceStore, int deviceRow){
+        this.deviceStore = deviceStore;
+        this.deviceRow = deviceRow;
+        this.type = TreeModelItemType.DATA_NODE;
+    }
+
+    /**
+     * 虚拟分组中第index个设备对应的元素，按列存储的设备不会立即创建设备对象
+     * 
+     * @param virtualNode
+     * @param index
+     * @return
+     */
+    static TreeModelItem ofDevice(TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode, int index) {
+        int row = virtualNode.getDeviceRow(index);
+        if (row < 0) {
+            return new TreeModelItem(virtualNode.getDevice(index));
+        }
+        return new TreeModelItem(virtualNode.getDeviceStore(), row);
+    }
+
     public void setGroupNode(TreeGroupNode groupNode) {
         this.groupNode = groupNode;
         this.type = TreeModelItemType.GROUP_NODE;
@@ -63,6 +97,8 @@ public class TreeModelItem {
 
     public void setDataNode(DeviceStatusExpandMergeTreeBO dataNode) {
         this.dataNode = dataNode;
+        this.deviceStore = null;
+        this.deviceRow = -1;
         this.type = TreeModelItemType.DATA_NODE;
 
     }
@@ -76,9 +112,25 @@ public class TreeModelItem {
     }
 
     public DeviceStatusExpandMergeTreeBO getDataNode() {
+        if (dataNode == null && deviceStore != null) {
+            dataNode = deviceStore.materialize(deviceRow);
+        }
         return dataNode;
     }
 
+    /**
+     * 按列存储的设备所在的DeviceColumnStore，可以直接读取列而不创建设备对象
+     * 
+     * @return 不是按列存储的设备时返回null
+     */
+    public DeviceColumnStore getDeviceStore() {
+        return deviceStore;
+    }
+
+    public int getDeviceRow() {
+        return deviceRow;
+    }
+
     public TreeGroupNode getGroupNode() {
         return groupNode;
     }
@@ -106,7 +158,7 @@ public class TreeModelItem {
                 break;
             case DATA_NODE:
                 sbf.append("数据节点     ");
-                sbf.append(dataNode.toString());
+                sbf.append(getDataNode().toString());
                 break;
 
             default:
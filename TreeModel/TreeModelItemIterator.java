@@ -0,0 +1,269 @@
+package com.chedaia.boss.web.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 按需展开树的迭代器
+ * 
+ * 展开的顺序和 expandTree2FlatList、expandGroupNode2FlatList 一致
+ * 每次调用next时才展开下一个节点，不会先生成整个列表
+ * 用显式的栈代替递归，树的深度不影响线程栈
+ * 
+ * 不需要保存元素时使用 moveToNext 和 getCursor，每一行都不创建对象
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelItemIterator implements Iterator<TreeModelItem> {
+
+    /**
+     * 展开的List中是否包含设备
+     */
+    private final boolean containDevice;
+
+    /**
+     * 是否排除掉没有设备的节点
+     */
+    private final boolean excludeEmpty;
+
+    /**
+     * 正在展开的分组
+     */
+    private Frame[] stack = new Frame[16];
+
+    private int top = -1;
+
+    /**
+     * 下一个元素是否已经准备好
+     */
+    private boolean prepared = false;
+
+    /**
+     * 是否还有下一个元素
+     */
+    private boolean hasNext = false;
+
+    /**
+     * 已经准备好的下一个元素
+     */
+    private final TreeModelCursor pending = new TreeModelCursor();
+
+    /**
+     * 上一次调用next或moveToNext移动到的元素
+     */
+    private final TreeModelCursor cursor = new TreeModelCursor();
+
+    /**
+     * 展开整棵树，根节点也会输出
+     * 
+     * @param rootNodes 根节点
+     * @param containDevice 展开的List中是否包含设备
+     * @param excludeEmpty 是否排除掉没有设备的节点
+     */
+    TreeModelItemIterator(List<TreeGroupNode> rootNodes, boolean containDevice, boolean excludeEmpty){
+        this.containDevice = containDevice;
+        this.excludeEmpty = excludeEmpty;
+        push(null, rootNodes, 0);
+    }
+
+    /**
+     * 展开指定的分组，分组本身不会输出
+     * 
+     * @param groupNode 要展开的分组，为null时没有元素
+     * @param containDevice 展开的List中是否包含设备
+     * @param excludeEmpty 是否排除掉没有设备的节点
+     */
+    TreeModelItemIterator(TreeGroupNode groupNode, boolean containDevice, boolean excludeEmpty){
+        this.containDevice = containDevice;
+        this.excludeEmpty = excludeEmpty;
+        if (groupNode != null) {
+            push(groupNode, groupNode.getChildGroupNode(), 0);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!prepared) {
+            hasNext = advance();
+            prepared = true;
+        }
+        return hasNext;
+    }
+
+    @Override
+    public TreeModelItem next() {
+        if (!moveToNext()) {
+            throw new NoSuchElementException();
+        }
+        return cursor.toTreeModelItem();
+    }
+
+    /**
+     * <pre>
+     * 移动到下一个元素，不创建 TreeModelItem
+     * 元素的内容通过 getCursor 返回的同一个对象读取
+     * </pre>
+     * 
+     * @return 没有更多的元素时返回false
+     */
+    public boolean moveToNext() {
+        if (!hasNext()) {
+            return false;
+        }
+        prepared = false;
+        cursor.copyFrom(pending);
+        return true;
+    }
+
+    /**
+     * 上一次调用next或moveToNext移动到的元素，每次移动后内容都会变化
+     * 
+     * @return
+     */
+    public TreeModelCursor getCursor() {
+        return cursor;
+    }
+
+    /**
+     * 上一次调用next返回的元素的深度，最外层的元素深度为0
+     * 
+     * @return
+     */
+    public int getDepth() {
+        return cursor.getDepth();
+    }
+
+    /**
+     * 展开下一个元素
+     * 
+     * @return 没有更多的元素时返回false
+     */
+    private boolean advance() {
+        while (top >= 0) {
+            Frame frame = stack[top];
+
+            // 正在输出虚拟分组下的设备
+            if (frame.virtualNode != null) {
+                if (frame.deviceIndex < frame.virtualNode.getDeviceCount()) {
+                    pending.setData(frame.virtualNode, frame.deviceIndex++, frame.depth + 1);
+                    return true;
+                }
+                frame.virtualNode = null;
+            }
+
+            // 下级分组
+            if (frame.childIndex < frame.children.size()) {
+                TreeGroupNode child = frame.children.get(frame.childIndex++);
+                if (excludeEmpty && child.getAllDeviceCount() == 0) {
+                    // 排除掉没有设备的空分组
+                    continue;
+                }
+                pending.setGroup(child, frame.depth);
+                push(child, child.getChildGroupNode(), frame.depth + 1);
+                return true;
+            }
+
+            // 下级分组全部展开后再展开虚拟分组
+            if (frame.groupNode != null) {
+                if (frame.virtualIterator == null) {
+                    frame.virtualIterator = frame.groupNode.getChildVirtualNodeMap().values().iterator();
+                }
+                if (frame.virtualIterator.hasNext()) {
+                    TreeVirtualNode<DeviceStatusExpandMergeTreeBO> child = frame.virtualIterator.next();
+                    pending.setVirtual(child, frame.depth);
+                    if (containDevice) {
+                        frame.virtualNode = child;
+                        frame.deviceIndex = 0;
+                    }
+                    return true;
+                }
+            }
+
+            // 展开完的Frame留在栈上，之后展开同一层的分组时重复使用
+            stack[top--].clear();
+        }
+        return false;
+    }
+
+    private void push(TreeGroupNode node, List<TreeGroupNode> children, int frameDepth) {
+        if (++top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        Frame frame = stack[top];
+        if (frame == null) {
+            frame = new Frame();
+            stack[top] = frame;
+        }
+        frame.groupNode = node;
+        frame.children = children == null ? Collections.<TreeGroupNode> emptyList() : children;
+        frame.childIndex = 0;
+        frame.depth = frameDepth;
+    }
+
+    /**
+     * 一个正在展开的分组
+     */
+    private static class Frame {
+
+        /**
+         * 正在展开的分组，展开整棵树时最外层为null
+         */
+        private TreeGroupNode groupNode;
+
+        /**
+         * 下级分组
+         */
+        private List<TreeGroupNode> children;
+
+        /**
+         * 下一个要展开的下级分组
+         */
+        private int childIndex;
+
+        /**
+         * 虚拟分组
+         */
+        private Iterator<TreeVirtualNode<DeviceStatusExpandMergeTreeBO>> virtualIterator;
+
+        /**
+         * 正在输出设备的虚拟分组
+         */
+        private TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode;
+
+        /**
+         * 下一个要输出的设备
+         */
+        private int deviceIndex;
+
+        /**
+         * 下级分组和虚拟分组的深度
+         */
+        private int depth;
+
+        /**
+         * 展开完后释放对节点的引用
+         */
+        private void clear() {
+            groupNode = null;
+            children = null;
+            virtualIterator = null;
+            virtualNode = null;
+        }
+    }
+
+}
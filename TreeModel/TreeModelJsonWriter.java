@@ -0,0 +1,206 @@
+package com.chedaia.boss.web.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.boss.web.bo.StatDeviceNumberBO;
+
+/**
+ * <pre>
+ * 将树的展开结果直接以JSON数组的格式写到输出流中
+ * 
+ * 配合 TreeModelItemIterator 使用，边展开边输出，不需要先生成整个列表
+ * 输出的每个元素：
+ * 分组节点   {"type":"GROUP_NODE","depth":0,"groupId":1,"parentId":0,"name":"","allDeviceCount":0,"stat":{...}}
+ * 虚拟分组   {"type":"VIRTUAL_NODE","depth":1,"parentGroupId":1,"property":1,"name":"","deviceCount":0}
+ * 设备       {"type":"DATA_NODE","depth":2,"data":{...}}
+ * 设备对象的JSON由调用方提供的 DeviceJsonConverter 生成
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelJsonWriter {
+
+    /**
+     * 将设备对象转换成JSON
+     */
+    public interface DeviceJsonConverter {
+
+        /**
+         * 将设备对象转换成JSON对象字符串
+         * 
+         * @param device
+         * @return
+         */
+        String toJson(DeviceStatusExpandMergeTreeBO device);
+    }
+
+    private final DeviceJsonConverter deviceJsonConverter;
+
+    public TreeModelJsonWriter(DeviceJsonConverter deviceJsonConverter){
+        this.deviceJsonConverter = deviceJsonConverter;
+    }
+
+    /**
+     * 将迭代器中的全部元素写到输出流中，写完后不会关闭输出流
+     * 
+     * @param iterator
+     * @param out
+     * @throws IOException
+     */
+    public void write(TreeModelItemIterator iterator, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8192);
+
+        writer.write('[');
+        boolean first = true;
+        TreeModelCursor cursor = iterator.getCursor();
+        while (iterator.moveToNext()) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writeItem(writer, cursor, cursor.getDepth());
+        }
+        writer.write(']');
+
+        writer.flush();
+    }
+
+    /**
+     * 写一个元素
+     * 
+     * @param writer
+     * @param item
+     * @param depth
+     * @throws IOException
+     */
+    private void writeItem(Writer writer, TreeModelCursor item, int depth) throws IOException {
+        writer.write("{\"type\":\"");
+        writer.write(item.getType().name());
+        writer.write("\",\"depth\":");
+        writer.write(Integer.toString(depth));
+
+        switch (item.getType()) {
+            case GROUP_NODE:
+                TreeGroupNode groupNode = item.getGroupNode();
+                writer.write(",\"groupId\":");
+                writer.write(String.valueOf(groupNode.getGroupId()));
+                writer.write(",\"parentId\":");
+                writer.write(String.valueOf(groupNode.getParentNodeId()));
+                writer.write(",\"name\":");
+                writeString(writer, groupNode.getGroupName());
+                writer.write(",\"allDeviceCount\":");
+                writer.write(Integer.toString(groupNode.getAllDeviceCount()));
+                writeStatistics(writer, groupNode.getStatDeviceNumberBO());
+                break;
+            case VIRTUAL_NODE:
+                TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode = item.getVirtualNode();
+                writer.write(",\"parentGroupId\":");
+                writer.write(String.valueOf(virtualNode.getParentGroupId()));
+                writer.write(",\"property\":");
+                writer.write(String.valueOf(virtualNode.getProperty()));
+                writer.write(",\"name\":");
+                writeString(writer, virtualNode.getNodeName());
+                writer.write(",\"deviceCount\":");
+                writer.write(Integer.toString(virtualNode.getDeviceCount()));
+                break;
+            case DATA_NODE:
+                writer.write(",\"data\":");
+                String json = deviceJsonConverter.toJson(item.getDataNode());
+                writer.write(json == null ? "null" : json);
+                break;
+
+            default:
+                break;
+        }
+
+        writer.write('}');
+    }
+
+    /**
+     * 写统计信息，没有统计信息时不输出
+     * 
+     * @param writer
+     * @param stat
+     * @throws IOException
+     */
+    private void writeStatistics(Writer writer, StatDeviceNumberBO stat) throws IOException {
+        if (stat == null) {
+            return;
+        }
+        writer.write(",\"stat\":{\"all\":");
+        writer.write(String.valueOf(stat.getAll()));
+        writer.write(",\"dring\":");
+        writer.write(String.valueOf(stat.getDring()));
+        writer.write(",\"offline\":");
+        writer.write(String.valueOf(stat.getOffline()));
+        writer.write(",\"alarm\":");
+        writer.write(String.valueOf(stat.getAlarm()));
+        writer.write(",\"online\":");
+        writer.write(String.valueOf(stat.getOnline()));
+        writer.write(",\"lineDelocali\":");
+        writer.write(String.valueOf(stat.getLineDelocali()));
+        writer.write(",\"risk\":");
+        writer.write(String.valueOf(stat.getRisk()));
+        writer.write(",\"warning\":");
+        writer.write(String.valueOf(stat.getWarning()));
+        writer.write('}');
+    }
+
+    /**
+     * 写JSON字符串，转义特殊字符
+     * 
+     * @param writer
+     * @param value
+     * @throws IOException
+     */
+    private void writeString(Writer writer, String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                    break;
+            }
+        }
+        writer.write('"');
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.chedaia.boss.web.model;
+
+/**
+ * <pre>
+ * 树模型当前的规模
+ * 由 TreeModel.getMetrics 计算，需要遍历全部分组，不要在展开时频繁调用
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelMetrics {
+
+    /**
+     * 分组节点数量
+     */
+    private int groupCount;
+
+    /**
+     * 虚拟分组节点数量
+     */
+    private int virtualNodeCount;
+
+    /**
+     * 设备数量
+     */
+    private int deviceCount;
+
+    /**
+     * 分组的最大层级，根分组为1
+     */
+    private int maxDepth;
+
+    /**
+     * 分组不存在而没有添加的设备总数
+     */
+    private int rejectedDeviceCount;
+
+    public TreeModelMetrics(int groupCount, int virtualNodeCount, int deviceCount, int maxDepth,
+                            int rejectedDeviceCount){
+        this.groupCount = groupCount;
+        this.virtualNodeCount = virtualNodeCount;
+        this.deviceCount = deviceCount;
+        this.maxDepth = maxDepth;
+        this.rejectedDeviceCount = rejectedDeviceCount;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public int getVirtualNodeCount() {
+        return virtualNodeCount;
+    }
+
+    public int getDeviceCount() {
+        return deviceCount;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getRejectedDeviceCount() {
+        return rejectedDeviceCount;
+    }
+
+    @Override
+    public String toString() {
+        return "TreeModelMetrics [groupCount=" + groupCount + ", virtualNodeCount=" + virtualNodeCount
+               + ", deviceCount=" + deviceCount + ", maxDepth=" + maxDepth + ", rejectedDeviceCount="
+               + rejectedDeviceCount + "]";
+    }
+
+}
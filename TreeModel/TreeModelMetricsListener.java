@@ -0,0 +1,87 @@
+package com.chedaia.boss.web.model;
+
+import java.util.List;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 树模型的监控指标回调
+ * 
+ * 构建分组树、批量添加设备和每次展开后回调，用于统计每个用户的树的开销
+ * 回调在执行构建或展开的线程中同步调用，实现类不要做耗时操作
+ * 节点数量、最大层级等可以在回调中通过 TreeModel.getMetrics 获取
+ * 
+ * 默认不做任何处理，见 TreeModel.setDefaultMetricsListener
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public interface TreeModelMetricsListener {
+
+    /**
+     * 不做任何处理的实现
+     */
+    TreeModelMetricsListener NOOP = new TreeModelMetricsListener() {
+    };
+
+    /**
+     * 构建分组树完成
+     * 
+     * @param treeModel
+     * @param groupCount 本次构建的分组数量
+     * @param durationNanos 耗时，纳秒
+     */
+    default void onBuildGroupTree(TreeModel treeModel, int groupCount, long durationNanos) {
+    }
+
+    /**
+     * 分组的上级关系形成了环，环在breakGroupId处断开，这个分组成为根节点
+     * 
+     * @param treeModel
+     * @param cycleGroupIds 环中的分组ID
+     * @param breakGroupId 断开的分组ID
+     */
+    default void onGroupCycle(TreeModel treeModel, List<Integer> cycleGroupIds, Integer breakGroupId) {
+    }
+
+    /**
+     * 批量添加设备完成
+     * 
+     * @param treeModel
+     * @param deviceCount 本次添加的设备数量，包含被拒绝的设备
+     * @param rejectedCount 分组不存在而没有添加的设备数量
+     * @param durationNanos 耗时，纳秒
+     */
+    default void onAddDevices(TreeModel treeModel, int deviceCount, int rejectedCount, long durationNanos) {
+    }
+
+    /**
+     * 设备对应的分组不存在，设备没有添加到树上
+     * 
+     * @param treeModel
+     * @param device
+     */
+    default void onDeviceRejected(TreeModel treeModel, DeviceStatusExpandMergeTreeBO device) {
+    }
+
+    /**
+     * 展开完成
+     * 
+     * @param treeModel
+     * @param operation 展开的方法名称，例如 expandTree2FlatList
+     * @param itemCount 返回的元素数量
+     * @param durationNanos 耗时，纳秒
+     */
+    default void onExpand(TreeModel treeModel, String operation, int itemCount, long durationNanos) {
+    }
+
+}
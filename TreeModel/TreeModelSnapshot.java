@@ -0,0 +1,421 @@
+package com.chedaia.boss.web.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.chedaia.biz.base.bo.ParameterBO;
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.device.entity.StatisticsGroupNumberEntity;
+import com.chedaia.biz.user.entity.GroupEntity;
+
+/**
+ * <pre>
+ * 全量分组和设备的共享快照
+ * 
+ * 快照创建后不再修改，全部分组只排序一次，设备按照分组归类一次
+ * 每个用户根据自己监控的分组从快照中获取树模型视图：getUserTreeModel
+ * 监控分组相同的用户共用同一个视图，视图是只读的
+ * 视图在返回前已经创建了紧凑存储、行号索引和搜索索引，多个线程可以同时展开和搜索同一个视图
+ * 
+ * 用户监控了一个分组及它的全部下级分组时，这棵子树共用全量树上的虚拟分组和设备，只复制分组节点
+ * 多个用户的监控范围重叠时共用这些设备，每个视图只为监控范围不完整的分组重新归类设备
+ * 视图上的分组节点都属于视图，不能通过它们访问到监控范围以外的分组
+ * 全量树在第一次获取视图时创建，分组的上级关系有环时不共用子树
+ * 
+ * 数据变化时创建新版本的快照整体替换，见 TreeModelSnapshotHolder
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public final class TreeModelSnapshot {
+
+    /**
+     * 缓存的用户视图的最大数量，超过后新的视图不再缓存
+     */
+    private static final int MAX_CACHED_VIEWS = 1024;
+
+    /**
+     * 快照的版本
+     */
+    private final long version;
+
+    /**
+     * 全部分组，按照ID升序排列
+     */
+    private final List<GroupEntity> sortedGroups;
+
+    /**
+     * 分组的统计信息，可以为null
+     */
+    private final Map<Integer, StatisticsGroupNumberEntity> statisticsGroupNumberMap;
+
+    /**
+     * 虚拟分组的配置
+     */
+    private final List<ParameterBO> propertyInfo;
+
+    /**
+     * 按照分组归类的设备，保持设备原来的顺序
+     */
+    private final Map<Integer, List<DeviceStatusExpandMergeTreeBO>> groupDevices;
+
+    /**
+     * 已经构建的用户视图，key是用户监控的分组ID集合
+     */
+    private final ConcurrentMap<Set<Integer>, TreeModel> userViews = new ConcurrentHashMap<>();
+
+    /**
+     * 包含全部分组和设备的全量树，用户视图共用其中的子树，第一次使用时创建
+     */
+    private volatile SharedGroupTree sharedGroupTree;
+
+    private TreeModelSnapshot(long version, List<GroupEntity> sortedGroups,
+                              Map<Integer, StatisticsGroupNumberEntity> statisticsGroupNumberMap,
+                              List<ParameterBO> propertyInfo,
+                              Map<Integer, List<DeviceStatusExpandMergeTreeBO>> groupDevices){
+        this.version = version;
+        this.sortedGroups = sortedGroups;
+        this.statisticsGroupNumberMap = statisticsGroupNumberMap;
+        this.propertyInfo = propertyInfo;
+        this.groupDevices = groupDevices;
+    }
+
+    /**
+     * 创建快照
+     * 
+     * @param version 快照的版本
+     * @param groupList 全部分组，不会修改这个列表
+     * @param statisticsGroupNumberMap 分组的统计信息，可以为null
+     * @param propertyInfo 虚拟分组的配置，可以为null
+     * @param deviceList 全部设备，可以为null
+     * @return
+     */
+    public static TreeModelSnapshot create(long version, List<GroupEntity> groupList,
+                                           Map<Integer, StatisticsGroupNumberEntity> statisticsGroupNumberMap,
+                                           List<ParameterBO> propertyInfo,
+                                           List<DeviceStatusExpandMergeTreeBO> deviceList) {
+        List<GroupEntity> sortedGroups = new ArrayList<>(groupList);
+        Collections.sort(sortedGroups, TreeModel.getAscGroupComparator());
+
+        Map<Integer, List<DeviceStatusExpandMergeTreeBO>> groupDevices = new HashMap<>();
+        if (deviceList != null) {
+            for (DeviceStatusExpandMergeTreeBO device : deviceList) {
+                if (device == null) {
+                    continue;
+                }
+                List<DeviceStatusExpandMergeTreeBO> list = groupDevices.get(device.getGroupId());
+                if (list == null) {
+                    list = new ArrayList<>();
+                    groupDevices.put(device.getGroupId(), list);
+                }
+                list.add(device);
+            }
+        }
+
+        return new TreeModelSnapshot(version, Collections.unmodifiableList(sortedGroups),
+            statisticsGroupNumberMap == null ? null : new HashMap<>(statisticsGroupNumberMap),
+            propertyInfo == null ? null : new ArrayList<>(propertyInfo), groupDevices);
+    }
+
+    /**
+     * <pre>
+     * 获取用户的树模型视图
+     * 监控分组相同的用户共用同一个视图，返回的树模型是只读的
+     * 上级分组不在监控范围内的分组会成为根节点，和 TreeModel.createTreeModel 的结果一致
+     * </pre>
+     * 
+     * @param monitorGroupIds 用户监控的分组ID
+     * @return
+     */
+    public TreeModel getUserTreeModel(Collection<Integer> monitorGroupIds) {
+        Set<Integer> key = Collections.unmodifiableSet(new HashSet<>(monitorGroupIds));
+
+        TreeModel treeModel = userViews.get(key);
+        if (treeModel != null) {
+            return treeModel;
+        }
+
+        treeModel = buildUserTreeModel(key);
+
+        if (userViews.size() < MAX_CACHED_VIEWS) {
+            TreeModel existing = userViews.putIfAbsent(key, treeModel);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return treeModel;
+    }
+
+    /**
+     * <pre>
+     * 构建用户的树模型视图
+     * 全量树上监控了全部下级分组的子树共用虚拟分组和设备，其余分组和这些分组的设备单独构建
+     * 按先序遍历全量树上用户监控的分组，子树中监控的分组数量等于子树的大小时共用整棵子树
+     * </pre>
+     * 
+     * @param monitorGroupIds
+     * @return
+     */
+    private TreeModel buildUserTreeModel(Set<Integer> monitorGroupIds) {
+        SharedGroupTree shared = getSharedGroupTree();
+        if (shared.hasCycle) {
+            return buildPrivateTreeModel(monitorGroupIds);
+        }
+        CompactGroupTree tree = shared.compactTree;
+
+        // 用户监控的分组在全量树上的下标，升序即为先序
+        int[] indexes = new int[monitorGroupIds.size()];
+        int count = 0;
+        for (Integer groupId : monitorGroupIds) {
+            int index = groupId == null ? -1 : tree.indexOf(groupId);
+            if (index >= 0) {
+                indexes[count++] = index;
+            }
+        }
+        Arrays.sort(indexes, 0, count);
+
+        List<GroupEntity> localGroups = new ArrayList<>();
+        List<TreeGroupNode> sharedRoots = new ArrayList<>();
+        List<Integer> sharedMinGroupIds = new ArrayList<>();
+        int sharedEnd = -1;
+        for (int k = 0; k < count; k++) {
+            int index = indexes[k];
+            if (index < sharedEnd) {
+                // 已经共用的子树中的分组
+                continue;
+            }
+            int end = index + tree.subtreeSize[index];
+            int monitored = lowerBound(indexes, k, count, end) - k;
+            if (monitored == tree.subtreeSize[index]) {
+                sharedRoots.add(tree.nodes[index]);
+                sharedMinGroupIds.add(shared.subtreeMinGroupIds[index]);
+                sharedEnd = end;
+            } else {
+                localGroups.add(tree.nodes[index].getGroupEntity());
+            }
+        }
+        if (sharedRoots.isEmpty()) {
+            return buildPrivateTreeModel(monitorGroupIds);
+        }
+
+        TreeModel treeModel = new TreeModel();
+        treeModel.setPropertyInfo(propertyInfo);
+        treeModel.buildGroupTree(localGroups, statisticsGroupNumberMap);
+
+        List<DeviceStatusExpandMergeTreeBO> localDevices = new ArrayList<>();
+        for (GroupEntity groupEntity : localGroups) {
+            List<DeviceStatusExpandMergeTreeBO> deviceList = groupDevices.get(groupEntity.getId());
+            if (deviceList != null) {
+                localDevices.addAll(deviceList);
+            }
+        }
+        treeModel.addDevices(localDevices);
+
+        int[] minGroupIds = new int[sharedMinGroupIds.size()];
+        for (int i = 0; i < minGroupIds.length; i++) {
+            minGroupIds[i] = sharedMinGroupIds.get(i);
+        }
+        treeModel.attachSharedGroupNodes(sharedRoots, minGroupIds);
+
+        // 视图不会再修改，压缩并创建读取时才创建的索引后共享使用
+        treeModel.compact();
+        treeModel.prepareForSharedRead();
+        treeModel.markReadOnly();
+        return treeModel;
+    }
+
+    /**
+     * 有序数组中第一个不小于key的下标
+     * 
+     * @param array
+     * @param from
+     * @param to
+     * @param key
+     * @return
+     */
+    private static int lowerBound(int[] array, int from, int to, int key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (array[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 获取全量树，不存在时创建
+     * 
+     * @return
+     */
+    private SharedGroupTree getSharedGroupTree() {
+        SharedGroupTree shared = sharedGroupTree;
+        if (shared == null) {
+            synchronized (this) {
+                shared = sharedGroupTree;
+                if (shared == null) {
+                    shared = buildSharedGroupTree();
+                    sharedGroupTree = shared;
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * 用全部分组和设备构建全量树，构建完后压缩并标记为只读
+     * 
+     * @return
+     */
+    private SharedGroupTree buildSharedGroupTree() {
+        TreeModel treeModel = new TreeModel();
+        treeModel.setPropertyInfo(propertyInfo);
+        treeModel.buildGroupTree(sortedGroups, statisticsGroupNumberMap);
+
+        List<DeviceStatusExpandMergeTreeBO> allDevices = new ArrayList<>();
+        for (List<DeviceStatusExpandMergeTreeBO> deviceList : groupDevices.values()) {
+            allDevices.addAll(deviceList);
+        }
+        treeModel.addDevices(allDevices);
+        treeModel.compact();
+        treeModel.markReadOnly();
+
+        CompactGroupTree tree = treeModel.getCompactTree();
+
+        // 上级分组在树上却作为根节点，说明上级关系有环
+        boolean hasCycle = false;
+        for (TreeGroupNode root : treeModel.getRootNodes()) {
+            Integer parentId = root.getGroupEntity().getParentId();
+            if (parentId != null && tree.indexOf(parentId) >= 0) {
+                hasCycle = true;
+                break;
+            }
+        }
+
+        // 子树中最小的分组ID，下级节点的下标总是大于上级节点，逆序处理
+        int[] subtreeMinGroupIds = new int[tree.size];
+        for (int i = 0; i < tree.size; i++) {
+            subtreeMinGroupIds[i] = tree.nodes[i].getGroupId();
+        }
+        for (int i = tree.size - 1; i > 0; i--) {
+            int p = tree.parent[i];
+            if (p >= 0 && subtreeMinGroupIds[i] < subtreeMinGroupIds[p]) {
+                subtreeMinGroupIds[p] = subtreeMinGroupIds[i];
+            }
+        }
+
+        return new SharedGroupTree(treeModel, tree, subtreeMinGroupIds, hasCycle);
+    }
+
+    /**
+     * 从快照中过滤出用户监控的分组和设备构建树模型，不共用节点<br>
+     * 分组已经是有序的，不需要再排序
+     * 
+     * @param monitorGroupIds
+     * @return
+     */
+    private TreeModel buildPrivateTreeModel(Set<Integer> monitorGroupIds) {
+        List<GroupEntity> groupList = new ArrayList<>(monitorGroupIds.size());
+        for (GroupEntity groupEntity : sortedGroups) {
+            if (monitorGroupIds.contains(groupEntity.getId())) {
+                groupList.add(groupEntity);
+            }
+        }
+
+        TreeModel treeModel = new TreeModel();
+        treeModel.setPropertyInfo(propertyInfo);
+        treeModel.buildGroupTree(groupList, statisticsGroupNumberMap);
+
+        List<DeviceStatusExpandMergeTreeBO> userDevices = new ArrayList<>();
+        for (Integer groupId : monitorGroupIds) {
+            List<DeviceStatusExpandMergeTreeBO> deviceList = groupDevices.get(groupId);
+            if (deviceList != null) {
+                userDevices.addAll(deviceList);
+            }
+        }
+        treeModel.addDevices(userDevices);
+
+        // 视图不会再修改，压缩并创建读取时才创建的索引后共享使用
+        treeModel.compact();
+        treeModel.prepareForSharedRead();
+        treeModel.markReadOnly();
+        return treeModel;
+    }
+
+    /**
+     * 快照的版本
+     * 
+     * @return
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 全部分组，按照ID升序排列，只读
+     * 
+     * @return
+     */
+    public List<GroupEntity> getSortedGroups() {
+        return sortedGroups;
+    }
+
+    /**
+     * 当前缓存的用户视图数量
+     * 
+     * @return
+     */
+    public int getCachedViewCount() {
+        return userViews.size();
+    }
+
+    /**
+     * 全量树和它的紧凑存储
+     */
+    private static class SharedGroupTree {
+
+        private final TreeModel treeModel;
+
+        private final CompactGroupTree compactTree;
+
+        /**
+         * 以紧凑存储中每个节点为根的子树中最小的分组ID
+         */
+        private final int[] subtreeMinGroupIds;
+
+        /**
+         * 分组的上级关系是否有环
+         */
+        private final boolean hasCycle;
+
+        private SharedGroupTree(TreeModel treeModel, CompactGroupTree compactTree, int[] subtreeMinGroupIds,
+                                boolean hasCycle){
+            this.treeModel = treeModel;
+            this.compactTree = compactTree;
+            this.subtreeMinGroupIds = subtreeMinGroupIds;
+            this.hasCycle = hasCycle;
+        }
+    }
+
+}
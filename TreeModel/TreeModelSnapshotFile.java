@@ -0,0 +1,390 @@
+package com.chedaia.boss.web.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.chedaia.biz.base.bo.ParameterBO;
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.user.entity.GroupEntity;
+import com.chedaia.boss.web.bo.StatDeviceNumberBO;
+import com.chedaia.boss.web.model.DeviceColumnStore.DeviceMaterializer;
+
+/**
+ * <pre>
+ * 将构建好的树模型保存成带版本的快照文件，重启后直接从文件恢复，不需要再从数据库查询和构建
+ * 
+ * 文件格式，整数都是大端序：
+ * 文件头     int 魔数 0x544D5301，int 格式版本，long 快照版本
+ * 虚拟分组   int 数量，每个：int 虚拟分组Id，字符串 名称
+ * 分组       int 数量，按展开顺序，每个：int 分组ID，byte 标记，[int 上级ID]，[字符串 名称]，[8个int 统计信息]
+ * 设备       int 数量，按展开顺序按列保存：long[] 设备ID，int[] 分组ID，int[] 设备类型，long[] 安装时间，int[] 状态标记
+ * 字符串     int 字节数，UTF-8 编码的字符串，字节数为-1时表示null
+ * 
+ * 读取时将文件映射到内存，设备的各列整块读取到 DeviceColumnStore，设备对象在展开到设备时才由 DeviceMaterializer 创建
+ * 分组只保存ID、上级ID和名称，自定义的 VirtualGroupingStrategy 和 TreeDeviceResolver 不保存，恢复后由调用方重新设置
+ * 格式版本或快照版本和期望的不一致时认为快照已经过期，需要重新构建
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public final class TreeModelSnapshotFile {
+
+    private static Logger logger = LoggerFactory.getLogger(TreeModelSnapshotFile.class);
+
+    /**
+     * 魔数 "TMS"
+     */
+    public static final int MAGIC = 0x544D5301;
+
+    /**
+     * 文件格式的版本，格式变化时修改
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final byte FLAG_PARENT = 1;
+
+    private static final byte FLAG_NAME = 1 << 1;
+
+    private static final byte FLAG_STATISTICS = 1 << 2;
+
+    private TreeModelSnapshotFile(){
+    }
+
+    /**
+     * <pre>
+     * 保存树模型的快照
+     * 先写到临时文件再替换原来的文件，读取的进程不会读到写了一半的文件，失败时删除临时文件
+     * 对象设备的设备ID和状态标记由树模型的 TreeDeviceResolver 提供，没有设置时都保存为0
+     * </pre>
+     * 
+     * @param treeModel
+     * @param version 快照版本，例如数据的版本号
+     * @param file
+     * @throws IOException
+     */
+    public static void write(TreeModel treeModel, long version, Path file) throws IOException {
+        TreeDeviceResolver deviceResolver = treeModel.getDeviceResolver();
+
+        // 按展开顺序收集分组和设备，恢复后的展开顺序和原来一致
+        List<TreeGroupNode> groupNodes = new ArrayList<>();
+        DeviceColumnStore devices = new DeviceColumnStore(null, 1024);
+        TreeModelItemIterator iterator = treeModel.treeIterator(true, false);
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode = null;
+        TreeModelCursor item = iterator.getCursor();
+        while (iterator.moveToNext()) {
+            switch (item.getType()) {
+                case GROUP_NODE:
+                    groupNodes.add(item.getGroupNode());
+                    break;
+                case VIRTUAL_NODE:
+                    virtualNode = item.getVirtualNode();
+                    break;
+                default:
+                    addDeviceRow(devices, item, virtualNode.getParentGroupId(), deviceResolver);
+                    break;
+            }
+        }
+
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        // 写入或者替换失败时删除临时文件，替换成功后临时文件已经不存在
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(version);
+
+                Map<Integer, String> propertyNames = treeModel.getPropertyNames();
+                out.writeInt(propertyNames.size());
+                for (Map.Entry<Integer, String> entry : propertyNames.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    writeString(out, entry.getValue());
+                }
+
+                out.writeInt(groupNodes.size());
+                for (TreeGroupNode groupNode : groupNodes) {
+                    writeGroup(out, groupNode);
+                }
+
+                int deviceCount = devices.size();
+                out.writeInt(deviceCount);
+                for (int row = 0; row < deviceCount; row++) {
+                    out.writeLong(devices.getDeviceId(row));
+                }
+                for (int row = 0; row < deviceCount; row++) {
+                    out.writeInt(devices.getGroupId(row));
+                }
+                for (int row = 0; row < deviceCount; row++) {
+                    out.writeInt(devices.getRawProperty(row));
+                }
+                for (int row = 0; row < deviceCount; row++) {
+                    out.writeLong(devices.getInstallTime(row));
+                }
+                for (int row = 0; row < deviceCount; row++) {
+                    out.writeInt(devices.getStatusFlags(row));
+                }
+            }
+
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * <pre>
+     * 从快照文件恢复树模型
+     * 文件不存在、格式不正确或者版本不一致时返回null，由调用方重新构建
+     * </pre>
+     * 
+     * @param file
+     * @param expectedVersion 期望的快照版本
+     * @param materializer 展开到设备时根据设备ID等列创建设备对象
+     * @return
+     * @throws IOException
+     */
+    public static TreeModel read(Path file, long expectedVersion, DeviceMaterializer materializer) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                logger.warn("树模型快照文件的格式不正确或者格式版本已经变化，文件:{}", file);
+                return null;
+            }
+            long version = buffer.getLong();
+            if (version != expectedVersion) {
+                logger.info("树模型快照已经过期，快照版本:{}，期望版本:{}", version, expectedVersion);
+                return null;
+            }
+            return readTreeModel(buffer, materializer);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            logger.warn("树模型快照文件不完整，文件:{}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * <pre>
+     * 优先从快照文件恢复树模型，快照不可用时重新构建并保存新的快照
+     * 读写快照失败只记录日志，不影响返回构建的树模型
+     * </pre>
+     * 
+     * @param file
+     * @param version 当前数据的版本
+     * @param materializer 展开到设备时根据设备ID等列创建设备对象
+     * @param builder 重新构建树模型
+     * @return
+     */
+    public static TreeModel readOrBuild(Path file, long version, DeviceMaterializer materializer,
+                                        Supplier<TreeModel> builder) {
+        try {
+            TreeModel treeModel = read(file, version, materializer);
+            if (treeModel != null) {
+                return treeModel;
+            }
+        } catch (IOException e) {
+            logger.warn("读取树模型快照失败，文件:{}", file, e);
+        }
+
+        TreeModel treeModel = builder.get();
+        try {
+            write(treeModel, version, file);
+        } catch (IOException e) {
+            logger.warn("保存树模型快照失败，文件:{}", file, e);
+        }
+        return treeModel;
+    }
+
+    private static TreeModel readTreeModel(ByteBuffer buffer, DeviceMaterializer materializer) {
+        int propertyCount = buffer.getInt();
+        List<ParameterBO> propertyInfo = new ArrayList<>(propertyCount);
+        for (int i = 0; i < propertyCount; i++) {
+            ParameterBO parameterBO = new ParameterBO();
+            parameterBO.setParameterCode(String.valueOf(buffer.getInt()));
+            parameterBO.setParameterName(readString(buffer));
+            propertyInfo.add(parameterBO);
+        }
+
+        int groupCount = buffer.getInt();
+        List<GroupEntity> groupList = new ArrayList<>(groupCount);
+        List<StatDeviceNumberBO> statistics = new ArrayList<>(groupCount);
+        for (int i = 0; i < groupCount; i++) {
+            GroupEntity groupEntity = new GroupEntity();
+            groupEntity.setId(buffer.getInt());
+            byte flags = buffer.get();
+            if ((flags & FLAG_PARENT) != 0) {
+                groupEntity.setParentId(buffer.getInt());
+            }
+            if ((flags & FLAG_NAME) != 0) {
+                groupEntity.setName(readString(buffer));
+            }
+            groupList.add(groupEntity);
+            statistics.add((flags & FLAG_STATISTICS) != 0 ? readStatistics(buffer) : null);
+        }
+
+        // 各列整块读取
+        int deviceCount = buffer.getInt();
+        long[] deviceIds = new long[deviceCount];
+        int[] groupIds = new int[deviceCount];
+        int[] properties = new int[deviceCount];
+        long[] installTimes = new long[deviceCount];
+        int[] statusFlags = new int[deviceCount];
+        buffer.asLongBuffer().get(deviceIds);
+        buffer.position(buffer.position() + deviceCount * 8);
+        buffer.asIntBuffer().get(groupIds);
+        buffer.position(buffer.position() + deviceCount * 4);
+        buffer.asIntBuffer().get(properties);
+        buffer.position(buffer.position() + deviceCount * 4);
+        buffer.asLongBuffer().get(installTimes);
+        buffer.position(buffer.position() + deviceCount * 8);
+        buffer.asIntBuffer().get(statusFlags);
+        buffer.position(buffer.position() + deviceCount * 4);
+
+        TreeModel treeModel = new TreeModel();
+        treeModel.setPropertyInfo(propertyInfo);
+        treeModel.buildGroupTree(groupList);
+        for (int i = 0; i < groupCount; i++) {
+            if (statistics.get(i) != null) {
+                treeModel.getTreeGroupNodeByGroupId(groupList.get(i).getId()).setStatDeviceNumberBO(statistics.get(i));
+            }
+        }
+        treeModel.addDevices(new DeviceColumnStore(materializer, deviceIds, groupIds, properties, installTimes,
+            statusFlags));
+        return treeModel;
+    }
+
+    /**
+     * 将展开的设备添加到列中
+     * 
+     * @param devices
+     * @param item
+     * @param groupId 设备所在的分组
+     * @param deviceResolver
+     */
+    private static void addDeviceRow(DeviceColumnStore devices, TreeModelCursor item, int groupId,
+                                     TreeDeviceResolver deviceResolver) {
+        DeviceColumnStore store = item.getDeviceStore();
+        if (store != null) {
+            int row = item.getDeviceRow();
+            devices.addRawRow(store.getDeviceId(row), groupId, store.getRawProperty(row), store.getInstallTime(row),
+                store.getStatusFlags(row));
+            return;
+        }
+
+        DeviceStatusExpandMergeTreeBO device = item.getDataNode();
+        if (deviceResolver == null) {
+            devices.addRow(0, groupId, device.getProperty(), device.getInstallTime(), 0);
+        } else {
+            devices.addRow(deviceResolver.getDeviceId(device), groupId, device.getProperty(), device.getInstallTime(),
+                deviceResolver.getStatusFlags(device));
+        }
+    }
+
+    private static void writeGroup(DataOutputStream out, TreeGroupNode groupNode) throws IOException {
+        GroupEntity groupEntity = groupNode.getGroupEntity();
+        StatDeviceNumberBO statistics = groupNode.getStatDeviceNumberBO();
+
+        byte flags = 0;
+        if (groupEntity.getParentId() != null) {
+            flags |= FLAG_PARENT;
+        }
+        if (groupEntity.getName() != null) {
+            flags |= FLAG_NAME;
+        }
+        if (statistics != null) {
+            flags |= FLAG_STATISTICS;
+        }
+
+        out.writeInt(groupEntity.getId());
+        out.writeByte(flags);
+        if (groupEntity.getParentId() != null) {
+            out.writeInt(groupEntity.getParentId());
+        }
+        if (groupEntity.getName() != null) {
+            writeString(out, groupEntity.getName());
+        }
+        if (statistics != null) {
+            // 保存的是已经向上汇总后的统计信息，恢复时直接设置
+            out.writeInt(intValue(statistics.getAll()));
+            out.writeInt(intValue(statistics.getDring()));
+            out.writeInt(intValue(statistics.getOffline()));
+            out.writeInt(intValue(statistics.getAlarm()));
+            out.writeInt(intValue(statistics.getOnline()));
+            out.writeInt(intValue(statistics.getLineDelocali()));
+            out.writeInt(intValue(statistics.getRisk()));
+            out.writeInt(intValue(statistics.getWarning()));
+        }
+    }
+
+    private static StatDeviceNumberBO readStatistics(ByteBuffer buffer) {
+        StatDeviceNumberBO statistics = new StatDeviceNumberBO();
+        statistics.setAll(buffer.getInt());
+        statistics.setDring(buffer.getInt());
+        statistics.setOffline(buffer.getInt());
+        statistics.setAlarm(buffer.getInt());
+        statistics.setOnline(buffer.getInt());
+        statistics.setLineDelocali(buffer.getInt());
+        statistics.setRisk(buffer.getInt());
+        statistics.setWarning(buffer.getInt());
+        return statistics;
+    }
+
+    private static int intValue(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.chedaia.boss.web.model;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.chedaia.biz.base.bo.ParameterBO;
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.device.entity.StatisticsGroupNumberEntity;
+import com.chedaia.biz.user.entity.GroupEntity;
+
+/**
+ * <pre>
+ * 持有当前版本的共享快照
+ * 
+ * 分组或设备变化时调用 update 创建新版本的快照并整体替换
+ * 请求线程调用 getUserTreeModel 获取用户的树模型视图，不需要加锁
+ * 替换前已经取得旧快照视图的请求不受影响
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelSnapshotHolder {
+
+    /**
+     * 当前的快照
+     */
+    private final AtomicReference<TreeModelSnapshot> current = new AtomicReference<>();
+
+    /**
+     * 快照版本号
+     */
+    private final AtomicLong versionSequence = new AtomicLong();
+
+    /**
+     * 创建新版本的快照并替换当前的快照
+     * 
+     * @param groupList 全部分组
+     * @param statisticsGroupNumberMap 分组的统计信息，可以为null
+     * @param propertyInfo 虚拟分组的配置，可以为null
+     * @param deviceList 全部设备，可以为null
+     * @return 新的快照
+     */
+    public TreeModelSnapshot update(List<GroupEntity> groupList,
+                                    Map<Integer, StatisticsGroupNumberEntity> statisticsGroupNumberMap,
+                                    List<ParameterBO> propertyInfo, List<DeviceStatusExpandMergeTreeBO> deviceList) {
+        TreeModelSnapshot snapshot = TreeModelSnapshot.create(versionSequence.incrementAndGet(),
+            groupList,
+            statisticsGroupNumberMap,
+            propertyInfo,
+            deviceList);
+
+        // 并发更新时只保留版本最新的快照
+        while (true) {
+            TreeModelSnapshot old = current.get();
+            if (old != null && old.getVersion() > snapshot.getVersion()) {
+                return old;
+            }
+            if (current.compareAndSet(old, snapshot)) {
+                return snapshot;
+            }
+        }
+    }
+
+    /**
+     * 获取当前的快照
+     * 
+     * @return 还没有创建快照时返回null
+     */
+    public TreeModelSnapshot getSnapshot() {
+        return current.get();
+    }
+
+    /**
+     * 获取用户的树模型视图，返回的树模型是只读的
+     * 
+     * @param monitorGroupIds 用户监控的分组ID
+     * @return 还没有创建快照时返回null
+     */
+    public TreeModel getUserTreeModel(Collection<Integer> monitorGroupIds) {
+        TreeModelSnapshot snapshot = current.get();
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.getUserTreeModel(monitorGroupIds);
+    }
+
+}
@@ -0,0 +1,330 @@
+package com.chedaia.boss.web.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 树上分组、虚拟分组和设备的搜索索引
+ * 
+ * 每个可以被搜索的文字作为一条记录，记录中每两个相邻字符组成一个二元组，建立二元组到记录的倒排表
+ * 搜索时取关键字中记录最少的二元组，只检查这些记录是否包含关键字，不需要遍历整棵树
+ * 只有一个字符的关键字需要检查全部记录
+ * 
+ * 删除的记录只做标记，删除的记录超过一半后由 TreeModel 重新构建，见 needsRebuild
+ * 设备更新时搜索文字没有变化的不会重新添加记录
+ * 由 TreeModel 维护，见 TreeModel.search
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+class TreeSearchIndex {
+
+    /**
+     * 记录的文字，已经转成小写
+     */
+    private String[] texts = new String[64];
+
+    /**
+     * 记录对应的对象：TreeGroupNode、TreeVirtualNode 或者设备
+     */
+    private Object[] targets = new Object[64];
+
+    /**
+     * 记录是否已经删除
+     */
+    private boolean[] removed = new boolean[64];
+
+    private int size = 0;
+
+    /**
+     * 已经删除的记录数量
+     */
+    private int removedCount = 0;
+
+    /**
+     * 二元组的倒排表，key为两个字符组成的int
+     */
+    private final Map<Integer, Postings> postings = new HashMap<>();
+
+    /**
+     * 虚拟分组对应的记录
+     */
+    private final Map<Object, Integer> virtualEntries = new IdentityHashMap<>();
+
+    /**
+     * 设备ID对应的记录，一个设备可以有多条记录
+     */
+    private final Map<Long, int[]> deviceEntries = new HashMap<>();
+
+    /**
+     * 添加分组
+     * 
+     * @param groupNode
+     */
+    void addGroup(TreeGroupNode groupNode) {
+        add(groupNode.getGroupName(), groupNode);
+    }
+
+    /**
+     * 添加虚拟分组，已经添加过的不会重复添加
+     * 
+     * @param virtualNode
+     */
+    void addVirtualNode(TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode) {
+        if (virtualNode == null || virtualEntries.containsKey(virtualNode)) {
+            return;
+        }
+        int id = add(virtualNode.getNodeName(), virtualNode);
+        if (id >= 0) {
+            virtualEntries.put(virtualNode, id);
+        }
+    }
+
+    /**
+     * 删除虚拟分组
+     * 
+     * @param virtualNode
+     */
+    void removeVirtualNode(TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode) {
+        Integer id = virtualEntries.remove(virtualNode);
+        if (id != null) {
+            markRemoved(id);
+        }
+    }
+
+    /**
+     * 添加设备，同一个设备ID之前的记录会被删除
+     * 搜索文字和之前的记录相同时只替换记录对应的设备对象
+     * 
+     * @param deviceId
+     * @param device
+     * @param searchTexts 设备可以被搜索的文字
+     */
+    void addDevice(long deviceId, DeviceStatusExpandMergeTreeBO device, String[] searchTexts) {
+        int[] oldIds = deviceEntries.get(deviceId);
+        if (oldIds != null && sameTexts(oldIds, searchTexts)) {
+            for (int id : oldIds) {
+                targets[id] = device;
+            }
+            return;
+        }
+        removeDevice(deviceId);
+        if (searchTexts == null || searchTexts.length == 0) {
+            return;
+        }
+
+        int[] ids = new int[searchTexts.length];
+        int count = 0;
+        for (String text : searchTexts) {
+            int id = add(text, device);
+            if (id >= 0) {
+                ids[count++] = id;
+            }
+        }
+        if (count > 0) {
+            deviceEntries.put(deviceId, count == ids.length ? ids : Arrays.copyOf(ids, count));
+        }
+    }
+
+    /**
+     * 删除设备
+     * 
+     * @param deviceId
+     */
+    void removeDevice(long deviceId) {
+        int[] ids = deviceEntries.remove(deviceId);
+        if (ids == null) {
+            return;
+        }
+        for (int id : ids) {
+            markRemoved(id);
+        }
+    }
+
+    /**
+     * 删除的记录超过一半，需要重新构建
+     * 
+     * @return
+     */
+    boolean needsRebuild() {
+        return removedCount > size / 2;
+    }
+
+    private void markRemoved(int id) {
+        removed[id] = true;
+        removedCount++;
+    }
+
+    /**
+     * 设备已有的记录和新的搜索文字是否相同，空的文字不会添加记录
+     * 
+     * @param ids
+     * @param searchTexts
+     * @return
+     */
+    private boolean sameTexts(int[] ids, String[] searchTexts) {
+        if (searchTexts == null) {
+            return false;
+        }
+        int count = 0;
+        for (String text : searchTexts) {
+            if (text == null || text.isEmpty()) {
+                continue;
+            }
+            if (count == ids.length || !texts[ids[count]].equals(text.toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+            count++;
+        }
+        return count == ids.length;
+    }
+
+    /**
+     * 搜索包含关键字的记录
+     * 
+     * @param keyword 关键字，不区分大小写
+     * @param prefix true:只匹配以关键字开头的记录
+     * @param limit 最多返回的数量
+     * @return 匹配的对象，按照添加的顺序排列，同一个对象只返回一次
+     */
+    List<Object> find(String keyword, boolean prefix, int limit) {
+        if (keyword == null || keyword.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String key = keyword.toLowerCase(Locale.ROOT);
+
+        List<Object> result = new ArrayList<>();
+        Set<Object> found = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+        if (key.length() == 1) {
+            for (int id = 0; id < size && result.size() < limit; id++) {
+                collect(id, key, prefix, result, found);
+            }
+            return result;
+        }
+
+        // 取记录最少的二元组
+        Postings candidates = null;
+        for (int i = 0; i + 1 < key.length(); i++) {
+            Postings p = postings.get(bigram(key.charAt(i), key.charAt(i + 1)));
+            if (p == null) {
+                return result;
+            }
+            if (candidates == null || p.size < candidates.size) {
+                candidates = p;
+            }
+        }
+
+        for (int i = 0; i < candidates.size && result.size() < limit; i++) {
+            collect(candidates.ids[i], key, prefix, result, found);
+        }
+        return result;
+    }
+
+    private void collect(int id, String key, boolean prefix, List<Object> result, Set<Object> found) {
+        if (removed[id]) {
+            return;
+        }
+        String text = texts[id];
+        boolean matched = prefix ? text.startsWith(key) : text.contains(key);
+        if (matched && found.add(targets[id])) {
+            result.add(targets[id]);
+        }
+    }
+
+    /**
+     * 添加一条记录
+     * 
+     * @param text
+     * @param target
+     * @return 记录的ID，文字为空时返回-1
+     */
+    private int add(String text, Object target) {
+        if (text == null || text.isEmpty()) {
+            return -1;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+
+        if (size == texts.length) {
+            texts = Arrays.copyOf(texts, size * 2);
+            targets = Arrays.copyOf(targets, size * 2);
+            removed = Arrays.copyOf(removed, size * 2);
+        }
+        int id = size++;
+        texts[id] = lower;
+        targets[id] = target;
+
+        for (int i = 0; i + 1 < lower.length(); i++) {
+            Integer gram = bigram(lower.charAt(i), lower.charAt(i + 1));
+            Postings p = postings.get(gram);
+            if (p == null) {
+                p = new Postings();
+                postings.put(gram, p);
+            }
+            p.add(id);
+        }
+        return id;
+    }
+
+    private static int bigram(char c1, char c2) {
+        return (c1 << 16) | c2;
+    }
+
+    /**
+     * 记录数量，包含已经删除的记录
+     * 
+     * @return
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 已经删除的记录数量
+     * 
+     * @return
+     */
+    int removedCount() {
+        return removedCount;
+    }
+
+    /**
+     * 一个二元组的倒排表，记录ID递增
+     */
+    private static class Postings {
+
+        private int[] ids = new int[4];
+
+        private int size = 0;
+
+        void add(int id) {
+            // 同一条记录中重复的二元组只记录一次
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.chedaia.boss.web.model;
+
+import java.util.List;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 树的搜索结果
+ * 
+ * item 为匹配的分组、虚拟分组或设备
+ * path 为从根节点到匹配对象所在分组的路径，前端只需要展开这条路径
+ * 匹配分组时path不包含分组本身，匹配虚拟分组和设备时path的最后一个节点是它们所在的分组
+ * 匹配设备时virtualNode为设备所在的虚拟分组
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeSearchResult {
+
+    private TreeModelItem item;
+
+    private List<TreeGroupNode> path;
+
+    private TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode;
+
+    public TreeSearchResult(TreeModelItem item, List<TreeGroupNode> path,
+                            TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode){
+        this.item = item;
+        this.path = path;
+        this.virtualNode = virtualNode;
+    }
+
+    public TreeModelItem getItem() {
+        return item;
+    }
+
+    public List<TreeGroupNode> getPath() {
+        return path;
+    }
+
+    public TreeVirtualNode<DeviceStatusExpandMergeTreeBO> getVirtualNode() {
+        return virtualNode;
+    }
+
+}
@@ -1,8 +1,13 @@
 package com.chedaia.boss.web.model;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <pre>
@@ -42,6 +47,26 @@ public class TreeVirtualNode<T> {
      */
     private List<T> deviceList = new ArrayList<>();
 
+    /**
+     * 按列存储的设备所在的DeviceColumnStore，只记录设备的行号，排在deviceList中的设备之后
+     */
+    private DeviceColumnStore deviceStore;
+
+    private int[] deviceRows;
+
+    private int deviceRowCount = 0;
+
+    /**
+     * 每种状态的设备数量，下标为状态标记的位序号，见 TreeDeviceResolver.STATUS_*
+     */
+    private int[] statusCounts = new int[TreeDeviceResolver.STATUS_TYPES];
+
+    /**
+     * 按照排序方式排好序的设备，key为排序方式的名称，设备变化后清空<br>
+     * 写入时复制一个新的Map再替换，多个线程同时读取只读的树模型时也可以安全使用
+     */
+    private volatile Map<String, Object[]> sortedDeviceCache;
+
     public TreeVirtualNode(Integer parentGroupId, Integer property, String nodeName){
         this.parentGroupId = parentGroupId;
         this.property = property;
@@ -55,6 +80,98 @@ public class TreeVirtualNode<T> {
      */
     public void addDevice(T device) {
         deviceList.add(device);
+        invalidateSortOrders();
+    }
+
+    /**
+     * 添加按列存储的设备，只记录行号<br>
+     * 一个虚拟分组中的行都属于同一个DeviceColumnStore
+     * 
+     * @param store
+     * @param row 行号
+     */
+    void addDeviceRow(DeviceColumnStore store, int row) {
+        if (deviceStore == null) {
+            deviceStore = store;
+            deviceRows = new int[8];
+        } else if (deviceStore != store) {
+            throw new IllegalArgumentException("同一个虚拟分组中的设备行需要属于同一个DeviceColumnStore");
+        }
+        if (deviceRowCount == deviceRows.length) {
+            deviceRows = Arrays.copyOf(deviceRows, deviceRowCount * 2);
+        }
+        deviceRows[deviceRowCount++] = row;
+        invalidateSortOrders();
+    }
+
+    /**
+     * 按列存储的设备所在的DeviceColumnStore
+     * 
+     * @return 没有按列存储的设备时返回null
+     */
+    public DeviceColumnStore getDeviceStore() {
+        return deviceStore;
+    }
+
+    /**
+     * 第index个设备在DeviceColumnStore中的行号
+     * 
+     * @param index
+     * @return 设备对象返回-1
+     */
+    public int getDeviceRow(int index) {
+        int objectCount = deviceList.size();
+        return index < objectCount ? -1 : deviceRows[index - objectCount];
+    }
+
+    /**
+     * 获取第index个设备，按列存储的设备每次调用都会创建新的设备对象
+     * 
+     * @param index
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public T getDevice(int index) {
+        int objectCount = deviceList.size();
+        if (index < objectCount) {
+            return deviceList.get(index);
+        }
+        return (T) deviceStore.materialize(deviceRows[index - objectCount]);
+    }
+
+    /**
+     * 从当前的虚拟分组中移除设备，按照对象引用查找
+     * 
+     * @param device
+     * @return 设备不在这个虚拟分组中时返回false
+     */
+    public boolean removeDevice(T device) {
+        for (int i = 0; i < deviceList.size(); i++) {
+            if (deviceList.get(i) == device) {
+                deviceList.remove(i);
+                invalidateSortOrders();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 用新的设备对象替换虚拟分组中旧的设备对象，设备的位置不变
+     * 
+     * @param oldDevice
+     * @param newDevice
+     * @return 旧的设备不在这个虚拟分组中时返回false
+     */
+    public boolean replaceDevice(T oldDevice, T newDevice) {
+        for (int i = 0; i < deviceList.size(); i++) {
+            if (deviceList.get(i) == oldDevice) {
+                deviceList.set(i, newDevice);
+                invalidateSortOrders();
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -63,7 +180,61 @@ public class TreeVirtualNode<T> {
      * @return
      */
     public int getDeviceCount() {
-        return deviceList.size();
+        return deviceList.size() + deviceRowCount;
+    }
+
+    /**
+     * 虚拟分组的key，同一棵树上唯一，前端记录虚拟分组的展开状态时使用
+     * 
+     * @return
+     */
+    public String getNodeKey() {
+        return nodeKey(parentGroupId, nodeName);
+    }
+
+    /**
+     * 虚拟分组的key，格式为【分组ID:虚拟分组名称】
+     * 
+     * @param parentGroupId 虚拟分组所属的分组ID
+     * @param nodeName 虚拟分组的名称
+     * @return
+     */
+    public static String nodeKey(Integer parentGroupId, String nodeName) {
+        return parentGroupId + ":" + nodeName;
+    }
+
+    /**
+     * 获取指定状态的设备数量
+     * 
+     * @param statusFlag TreeDeviceResolver.STATUS_* 中的一个
+     * @return
+     */
+    public int getStatusCount(int statusFlag) {
+        return statusCounts[Integer.numberOfTrailingZeros(statusFlag)];
+    }
+
+    /**
+     * 是否有设备处于指定的任意一种状态
+     * 
+     * @param statusMask TreeDeviceResolver.STATUS_* 的组合
+     * @return
+     */
+    public boolean hasStatus(int statusMask) {
+        return TreeGroupNode.hasStatus(statusCounts, statusMask);
+    }
+
+    /**
+     * 累加状态数量，设备添加、删除或状态变化时由分组调用
+     * 
+     * @param statusFlags 设备的状态标记
+     * @param delta 1:添加设备，-1:删除设备
+     */
+    void countStatus(int statusFlags, int delta) {
+        TreeGroupNode.addStatusCounts(statusCounts, statusFlags, delta);
+    }
+
+    int[] getStatusCounts() {
+        return statusCounts;
     }
 
     public Integer getParentGroupId() {
@@ -90,23 +261,180 @@ public class TreeVirtualNode<T> {
         this.nodeName = nodeName;
     }
 
+    /**
+     * 获取全部设备<br>
+     * 有按列存储的设备时返回只读的列表，读取时才创建设备对象，只需要部分设备时使用getDevice
+     * 
+     * @return
+     */
     public List<T> getDeviceList() {
-        return deviceList;
+        if (deviceRowCount == 0) {
+            return deviceList;
+        }
+        return new AbstractList<T>() {
+
+            @Override
+            public T get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+                }
+                return getDevice(index);
+            }
+
+            @Override
+            public int size() {
+                return getDeviceCount();
+            }
+        };
     }
 
     public void setDeviceList(List<T> deviceList) {
         this.deviceList = deviceList;
+        invalidateSortOrders();
     }
 
     /**
+     * <pre>
      * 使用指定的排序器对当前已经添加到列表中的数据进行排序
+     * 设备对象和按列存储的设备分别排序，按列存储的设备仍然排在设备对象之后
+     * 按列存储的设备排序时每行创建一次设备对象，需要全部设备统一排序时使用 getSortedDeviceList
+     * </pre>
      * 
      * @param comparator
      */
     public void sortDeviceList(Comparator<? super T> comparator) {
         if (deviceList != null && !deviceList.isEmpty()) {
             deviceList.sort(comparator);
+            invalidateSortOrders();
+        }
+        if (deviceRowCount > 1) {
+            sortDeviceRows(comparator);
+            invalidateSortOrders();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void sortDeviceRows(final Comparator<? super T> comparator) {
+        final Object[] devices = new Object[deviceRowCount];
+        Integer[] order = new Integer[deviceRowCount];
+        for (int i = 0; i < deviceRowCount; i++) {
+            devices[i] = deviceStore.materialize(deviceRows[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                return comparator.compare((T) devices[a], (T) devices[b]);
+            }
+        });
+
+        int[] sortedRows = new int[deviceRows.length];
+        for (int i = 0; i < deviceRowCount; i++) {
+            sortedRows[i] = deviceRows[order[i]];
+        }
+        deviceRows = sortedRows;
+    }
+
+    /**
+     * <pre>
+     * 按照排序方式获取排好序的设备，不修改设备列表本身的顺序
+     * 第一次使用某个排序方式时计算每个设备的排序key并排序，之后直接返回缓存的结果
+     * 添加、删除或替换设备后缓存失效
+     * </pre>
+     * 
+     * @param sortOrder 排序方式
+     * @return 只读的列表
+     */
+    public List<T> getSortedDeviceList(TreeDeviceSortOrder<? super T> sortOrder) {
+        Object[] sorted = getCachedSortedDevices(sortOrder.getName());
+        if (sorted == null) {
+            sorted = sortDevices(sortOrder);
+
+            Map<String, Object[]> cache = sortedDeviceCache;
+            Map<String, Object[]> newCache = cache == null ? new HashMap<String, Object[]>(4) : new HashMap<>(cache);
+            newCache.put(sortOrder.getName(), sorted);
+            sortedDeviceCache = newCache;
+        }
+        return asList(sorted, sorted.length);
+    }
+
+    /**
+     * <pre>
+     * 按照排序方式获取排在最前面的limit个设备
+     * 已经有缓存的排序结果时直接截取，否则只选出前limit个，不对全部设备排序，也不缓存
+     * 使用比较器的排序方式对全部设备排序并缓存，见 getSortedDeviceList
+     * </pre>
+     * 
+     * @param sortOrder 排序方式
+     * @param limit 最多返回的数量
+     * @return 只读的列表
+     */
+    public List<T> getTopDevices(TreeDeviceSortOrder<? super T> sortOrder, int limit) {
+        Object[] sorted = getCachedSortedDevices(sortOrder.getName());
+        if (sorted != null) {
+            return asList(sorted, Math.max(0, Math.min(limit, sorted.length)));
+        }
+        if (sortOrder.getComparator() != null) {
+            List<T> all = getSortedDeviceList(sortOrder);
+            return all.subList(0, Math.max(0, Math.min(limit, all.size())));
+        }
+
+        List<T> devices = getDeviceList();
+        int[] indexes = SortedIndexes.top(computeSortKeys(devices, sortOrder), sortOrder.isDescending(), limit);
+        Object[] top = new Object[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            top[i] = devices.get(indexes[i]);
+        }
+        return asList(top, top.length);
+    }
+
+    /**
+     * 清空缓存的排序结果，直接修改了设备对象中参与排序的字段后需要调用
+     */
+    public void invalidateSortOrders() {
+        sortedDeviceCache = null;
+    }
+
+    private Object[] getCachedSortedDevices(String name) {
+        Map<String, Object[]> cache = sortedDeviceCache;
+        return cache == null ? null : cache.get(name);
+    }
+
+    /**
+     * 按照排序方式对全部设备排序，比较器使用稳定的排序，相等的设备保持原来的顺序
+     * 
+     * @param sortOrder
+     * @return
+     */
+    private Object[] sortDevices(TreeDeviceSortOrder<? super T> sortOrder) {
+        List<T> devices = getDeviceList();
+        if (sortOrder.getComparator() != null) {
+            @SuppressWarnings("unchecked")
+            T[] sorted = (T[]) devices.toArray();
+            Arrays.sort(sorted, sortOrder.getComparator());
+            return sorted;
+        }
+
+        int[] indexes = SortedIndexes.sort(computeSortKeys(devices, sortOrder), sortOrder.isDescending());
+        Object[] sorted = new Object[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            sorted[i] = devices.get(indexes[i]);
+        }
+        return sorted;
+    }
+
+    private static <T> long[] computeSortKeys(List<T> devices, TreeDeviceSortOrder<? super T> sortOrder) {
+        long[] keys = new long[devices.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = sortOrder.getSortKey().applyAsLong(devices.get(i));
         }
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> asList(Object[] devices, int size) {
+        return (List<T>) Collections.unmodifiableList(Arrays.asList(devices).subList(0, size));
     }
 
 }
@@ -0,0 +1,60 @@
+package com.chedaia.boss.web.model;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * 虚拟分组的划分方式
+ * 
+ * 每个设备先计算一个long类型的key，同一个分组下key相同的设备属于同一个虚拟分组
+ * 虚拟分组的名称只在分组下第一次出现这个key时计算一次，不会每个设备都计算
+ * 名称相同的不同key属于同一个虚拟分组，虚拟分组按照名称排序
+ * 
+ * 并行添加设备时会在多个线程中同时调用，实现类需要是线程安全的
+ * 默认的实现见 PropertyVirtualGroupingStrategy
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public interface VirtualGroupingStrategy {
+
+    /**
+     * 计算设备所属的虚拟分组的key
+     * 
+     * @param treeModel 设备所在的树模型
+     * @param device
+     * @return
+     */
+    long bucketKey(TreeModel treeModel, DeviceStatusExpandMergeTreeBO device);
+
+    /**
+     * 计算按列存储的设备所属的虚拟分组的key，和同样数据的设备对象的key一致<br>
+     * 默认创建完整的设备对象后计算，实现类应该直接使用列中的数据
+     * 
+     * @param treeModel 设备所在的树模型
+     * @param store
+     * @param row 行号
+     * @return
+     */
+    default long bucketKey(TreeModel treeModel, DeviceColumnStore store, int row) {
+        return bucketKey(treeModel, store.materialize(row));
+    }
+
+    /**
+     * 根据虚拟分组的key计算虚拟分组的名称
+     * 
+     * @param treeModel 设备所在的树模型
+     * @param bucketKey
+     * @return 不能为null
+     */
+    String bucketName(TreeModel treeModel, long bucketKey);
+
+}
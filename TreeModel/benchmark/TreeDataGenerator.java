@@ -0,0 +1,181 @@
+package com.chedaia.boss.web.model.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import com.chedaia.biz.base.bo.ParameterBO;
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.user.entity.GroupEntity;
+import com.chedaia.boss.web.model.TreeGroupNode;
+
+/**
+ * <pre>
+ * 生成基准测试使用的分组、设备和虚拟分组配置
+ * 
+ * 分组ID从1开始连续递增，前rootCount个分组为根分组
+ * 其他分组的上级从已经生成的、层级小于maxDepth的分组中选择
+ * fanOutSkew为1时均匀选择，越大越集中在前面的分组上，形成少数分组下有大量子分组的情况
+ * 虚拟分组类型1为月份组，installTimeRatio为月份组设备的比例，安装时间分布在最近三年内
+ * 相同的参数和种子生成的数据完全一致
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeDataGenerator {
+
+    /**
+     * 月份组的虚拟分组类型
+     */
+    public static final int INSTALL_TIME_PROPERTY = 1;
+
+    private static final long THREE_YEARS_MILLIS = 3L * 365 * 24 * 60 * 60 * 1000;
+
+    private int groupCount = 10000;
+
+    private int rootCount = 10;
+
+    private int maxDepth = 6;
+
+    private double fanOutSkew = 1.0;
+
+    private int devicesPerGroup = 20;
+
+    private double installTimeRatio = 0.3;
+
+    private int propertyCount = 8;
+
+    private long seed = 20190111L;
+
+    public TreeDataGenerator groupCount(int groupCount) {
+        this.groupCount = groupCount;
+        return this;
+    }
+
+    public TreeDataGenerator rootCount(int rootCount) {
+        this.rootCount = rootCount;
+        return this;
+    }
+
+    public TreeDataGenerator maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public TreeDataGenerator fanOutSkew(double fanOutSkew) {
+        this.fanOutSkew = fanOutSkew;
+        return this;
+    }
+
+    public TreeDataGenerator devicesPerGroup(int devicesPerGroup) {
+        this.devicesPerGroup = devicesPerGroup;
+        return this;
+    }
+
+    public TreeDataGenerator installTimeRatio(double installTimeRatio) {
+        this.installTimeRatio = installTimeRatio;
+        return this;
+    }
+
+    public TreeDataGenerator propertyCount(int propertyCount) {
+        this.propertyCount = propertyCount;
+        return this;
+    }
+
+    public TreeDataGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * 生成分组，按照ID递增排列
+     * 
+     * @return
+     */
+    public List<GroupEntity> generateGroups() {
+        Random random = new Random(seed);
+        List<GroupEntity> groups = new ArrayList<>(groupCount);
+
+        // 可以作为上级的分组的ID，以及每个分组的层级
+        List<Integer> parentCandidates = new ArrayList<>();
+        int[] depths = new int[groupCount + 1];
+
+        for (int id = 1; id <= groupCount; id++) {
+            int parentId = 0;
+            int depth = 1;
+            if (id > rootCount && !parentCandidates.isEmpty()) {
+                int index = (int) (parentCandidates.size() * Math.pow(random.nextDouble(), fanOutSkew));
+                parentId = parentCandidates.get(index);
+                depth = depths[parentId] + 1;
+            }
+            depths[id] = depth;
+            if (depth < maxDepth) {
+                parentCandidates.add(id);
+            }
+
+            GroupEntity group = new GroupEntity();
+            group.setId(id);
+            group.setParentId(parentId);
+            group.setName("分组" + id);
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    /**
+     * 为每个分组生成devicesPerGroup个设备
+     * 
+     * @return
+     */
+    public List<DeviceStatusExpandMergeTreeBO> generateDevices() {
+        Random random = new Random(seed + 1);
+        long now = System.currentTimeMillis();
+        List<DeviceStatusExpandMergeTreeBO> devices = new ArrayList<>(groupCount * devicesPerGroup);
+
+        for (int groupId = 1; groupId <= groupCount; groupId++) {
+            for (int i = 0; i < devicesPerGroup; i++) {
+                DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+                device.setGroupId(groupId);
+                if (random.nextDouble() < installTimeRatio) {
+                    device.setProperty(INSTALL_TIME_PROPERTY);
+                    device.setInstallTime(new Date(now - (long) (random.nextDouble() * THREE_YEARS_MILLIS)));
+                } else {
+                    device.setProperty(INSTALL_TIME_PROPERTY + 1 + random.nextInt(propertyCount));
+                }
+                devices.add(device);
+            }
+        }
+        return devices;
+    }
+
+    /**
+     * 虚拟分组的配置，类型1为月份组
+     * 
+     * @return
+     */
+    public List<ParameterBO> generatePropertyInfo() {
+        List<ParameterBO> propertyInfo = new ArrayList<>(propertyCount + 1);
+        propertyInfo.add(createParameter(INSTALL_TIME_PROPERTY, TreeGroupNode.YFZ));
+        for (int i = 1; i <= propertyCount; i++) {
+            propertyInfo.add(createParameter(INSTALL_TIME_PROPERTY + i, "类型" + i));
+        }
+        return propertyInfo;
+    }
+
+    private static ParameterBO createParameter(int code, String name) {
+        ParameterBO parameter = new ParameterBO();
+        parameter.setParameterCode(String.valueOf(code));
+        parameter.setParameterName(name);
+        return parameter;
+    }
+
+}
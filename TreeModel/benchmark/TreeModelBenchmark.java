@@ -0,0 +1,183 @@
+package com.chedaia.boss.web.model.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.chedaia.biz.base.bo.ParameterBO;
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.user.entity.GroupEntity;
+import com.chedaia.boss.web.model.TreeModel;
+import com.chedaia.boss.web.model.TreeModelCursor;
+import com.chedaia.boss.web.model.TreeModelItem;
+import com.chedaia.boss.web.model.TreeModelItemIterator;
+
+/**
+ * <pre>
+ * 树模型的基准测试
+ * 
+ * 覆盖构建分组树、添加设备、展开整棵树和展开一级分组
+ * 使用main方法运行时同时开启gc profiler，输出每次调用分配的内存（gc.alloc.rate.norm）
+ * 运行方式见同目录下的README.md
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class TreeModelBenchmark {
+
+    @Param({ "1000", "10000" })
+    private int groupCount;
+
+    @Param({ "6" })
+    private int maxDepth;
+
+    @Param({ "1.0", "3.0" })
+    private double fanOutSkew;
+
+    @Param({ "20" })
+    private int devicesPerGroup;
+
+    @Param({ "0.3" })
+    private double installTimeRatio;
+
+    private List<GroupEntity> groups;
+
+    private List<DeviceStatusExpandMergeTreeBO> devices;
+
+    private List<ParameterBO> propertyInfo;
+
+    /**
+     * 已经添加了全部设备的树，展开的测试使用
+     */
+    private TreeModel treeModel;
+
+    /**
+     * 展开一级分组时依次使用的分组ID
+     */
+    private int nextGroupId = 1;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TreeDataGenerator generator = new TreeDataGenerator().groupCount(groupCount)
+            .maxDepth(maxDepth)
+            .fanOutSkew(fanOutSkew)
+            .devicesPerGroup(devicesPerGroup)
+            .installTimeRatio(installTimeRatio);
+
+        groups = generator.generateGroups();
+        devices = generator.generateDevices();
+        propertyInfo = generator.generatePropertyInfo();
+
+        treeModel = TreeModel.createTreeModel(groups, null, propertyInfo, devices);
+    }
+
+    /**
+     * 只构建分组树
+     */
+    @Benchmark
+    public TreeModel createTreeModel() {
+        return TreeModel.createTreeModel(groups);
+    }
+
+    /**
+     * 构建分组树后逐个添加设备，减去createTreeModel即为添加设备的开销
+     */
+    @Benchmark
+    public TreeModel createTreeModelAndAddDevice() {
+        TreeModel model = TreeModel.createTreeModel(groups);
+        model.setPropertyInfo(propertyInfo);
+        for (DeviceStatusExpandMergeTreeBO device : devices) {
+            model.addDevice(device);
+        }
+        return model;
+    }
+
+    /**
+     * 构建分组树后批量添加设备
+     */
+    @Benchmark
+    public TreeModel createTreeModelAndAddDevices() {
+        TreeModel model = TreeModel.createTreeModel(groups);
+        model.setPropertyInfo(propertyInfo);
+        model.addDevices(devices);
+        return model;
+    }
+
+    @Benchmark
+    public List<TreeModelItem> expandTree2FlatListWithDevice() {
+        return treeModel.expandTree2FlatList(true);
+    }
+
+    @Benchmark
+    public List<TreeModelItem> expandTree2FlatListWithoutDevice() {
+        return treeModel.expandTree2FlatList(false);
+    }
+
+    /**
+     * 用迭代器的游标遍历整棵树，和expandTree2FlatListWithDevice比较每一行的内存分配
+     */
+    @Benchmark
+    public int iterateTreeCursorWithDevice() {
+        TreeModelItemIterator iterator = treeModel.treeIterator(true, false);
+        TreeModelCursor cursor = iterator.getCursor();
+        int depthSum = 0;
+        while (iterator.moveToNext()) {
+            depthSum += cursor.getDepth();
+        }
+        return depthSum;
+    }
+
+    @Benchmark
+    public List<TreeModelItem> expandTreeExcludeEmptyNode() {
+        return treeModel.expandTreeExcludeEmptyNode(false);
+    }
+
+    /**
+     * 依次展开每个分组的一级
+     */
+    @Benchmark
+    public List<TreeModelItem> expandOneLevelGroupNode() {
+        int groupId = nextGroupId;
+        nextGroupId = groupId == groupCount ? 1 : groupId + 1;
+        return treeModel.expandOneLevelGroupNode(groupId, true);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(TreeModelBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,204 @@
+package com.chedaia.boss.web.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.user.entity.GroupEntity;
+
+/**
+ * <pre>
+ * ConcurrentTreeModel 的测试
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class ConcurrentTreeModelTest {
+
+    private static final TreeDeviceResolver RESOLVER = new TreeDeviceResolver() {
+
+        @Override
+        public long getDeviceId(DeviceStatusExpandMergeTreeBO device) {
+            return device.getProperty();
+        }
+
+        @Override
+        public int getStatusFlags(DeviceStatusExpandMergeTreeBO device) {
+            return STATUS_ONLINE;
+        }
+    };
+
+    /**
+     * 最新的设备，重新创建树模型时使用
+     */
+    private final List<DeviceStatusExpandMergeTreeBO> devices = new ArrayList<>();
+
+    /**
+     * factory 创建的树模型数量
+     */
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final Supplier<TreeModel> factory = new Supplier<TreeModel>() {
+
+        @Override
+        public TreeModel get() {
+            List<GroupEntity> groups = new ArrayList<>();
+            groups.add(createGroup(1, 0));
+            groups.add(createGroup(2, 1));
+            groups.add(createGroup(3, 1));
+            created.incrementAndGet();
+            TreeModel treeModel = TreeModel.createTreeModel(groups);
+            treeModel.setDeviceResolver(RESOLVER);
+            treeModel.addDevices(devices);
+            return treeModel;
+        }
+    };
+
+    private static GroupEntity createGroup(int id, int parentId) {
+        GroupEntity groupEntity = new GroupEntity();
+        groupEntity.setId(id);
+        groupEntity.setParentId(parentId);
+        groupEntity.setName("分组" + id);
+        return groupEntity;
+    }
+
+    private static DeviceStatusExpandMergeTreeBO createDevice(int deviceId, int groupId) {
+        DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+        device.setProperty(deviceId);
+        device.setGroupId(groupId);
+        return device;
+    }
+
+    /**
+     * 读取当前树模型的设备数量和展开的行数
+     * 
+     * @param concurrentTreeModel
+     * @return
+     */
+    private static int[] readCounts(ConcurrentTreeModel concurrentTreeModel) {
+        return concurrentTreeModel.read(new Function<TreeModel, int[]>() {
+
+            @Override
+            public int[] apply(TreeModel treeModel) {
+                return new int[] { treeModel.getMetrics().getDeviceCount(),
+                                   treeModel.getExpandRowCount(true, false) };
+            }
+        });
+    }
+
+    /**
+     * 多个读线程同时分页展开和搜索，写线程同时修改，每次读到的行数和展开的结果一致
+     */
+    @Test
+    public void testConcurrentReadsDuringWrites() throws InterruptedException {
+        final ConcurrentTreeModel concurrentTreeModel = new ConcurrentTreeModel(factory);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicInteger mismatches = new AtomicInteger();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Thread[] readers = new Thread[2];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        while (!stop.get()) {
+                            boolean consistent = concurrentTreeModel.read(new Function<TreeModel, Boolean>() {
+
+                                @Override
+                                public Boolean apply(TreeModel treeModel) {
+                                    int rows = treeModel.getExpandRowCount(true, true);
+                                    treeModel.search("分组", 10);
+                                    return rows == treeModel.expand(0, Integer.MAX_VALUE, true, true).size();
+                                }
+                            });
+                            if (!consistent) {
+                                mismatches.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        for (int i = 0; i < 500; i++) {
+            if (i % 3 == 0) {
+                concurrentTreeModel.removeDevice(i % 50);
+            } else {
+                concurrentTreeModel.updateDevice(createDevice(i % 50, 1 + i % 3));
+            }
+        }
+        stop.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(error.get());
+        assertEquals(0, mismatches.get());
+    }
+
+    /**
+     * 第二次执行写操作失败后重新创建两个树模型，两个树模型的内容相同
+     */
+    @Test
+    public void testFailedWriteRecreatesBothTreeModels() {
+        devices.add(createDevice(1, 2));
+        ConcurrentTreeModel concurrentTreeModel = new ConcurrentTreeModel(factory);
+
+        final DeviceStatusExpandMergeTreeBO device = createDevice(2, 3);
+        devices.add(device);
+        RuntimeException failure = null;
+        try {
+            concurrentTreeModel.write(new Function<TreeModel, Boolean>() {
+
+                private int calls;
+
+                @Override
+                public Boolean apply(TreeModel treeModel) {
+                    if (++calls == 2) {
+                        // 第二个树模型没有修改，两个树模型不再相同
+                        throw new IllegalStateException("second apply");
+                    }
+                    return treeModel.updateDevice(device);
+                }
+            });
+        } catch (IllegalStateException e) {
+            failure = e;
+        }
+        assertTrue(failure != null);
+        assertEquals(4, created.get());
+
+        int[] first = readCounts(concurrentTreeModel);
+        assertEquals(2, first[0]);
+
+        // 切换到另一个树模型后内容仍然相同
+        concurrentTreeModel.removeDevice(100);
+        int[] second = readCounts(concurrentTreeModel);
+        assertEquals(first[0], second[0]);
+        assertEquals(first[1], second[1]);
+    }
+
+}
@@ -0,0 +1,234 @@
+package com.chedaia.boss.web.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import com.chedaia.biz.base.bo.ParameterBO;
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.user.entity.GroupEntity;
+import com.chedaia.boss.web.model.PropertyVirtualGroupingStrategy.InstallTimePeriod;
+
+/**
+ * <pre>
+ * PropertyVirtualGroupingStrategy 的测试，安装时间的周期和java.time的计算结果比较
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class PropertyVirtualGroupingStrategyTest {
+
+    /**
+     * 月份组的设备类型
+     */
+    private static final int YFZ_PROPERTY = 1;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static TreeModel createTreeModel() {
+        List<GroupEntity> groups = new ArrayList<>();
+        GroupEntity groupEntity = new GroupEntity();
+        groupEntity.setId(1);
+        groupEntity.setParentId(0);
+        groupEntity.setName("分组1");
+        groups.add(groupEntity);
+
+        TreeModel treeModel = TreeModel.createTreeModel(groups);
+        List<ParameterBO> propertyInfo = new ArrayList<>();
+        propertyInfo.add(createParameter(YFZ_PROPERTY, TreeGroupNode.YFZ));
+        propertyInfo.add(createParameter(2, "普通"));
+        propertyInfo.add(createParameter(-1, "负数"));
+        treeModel.setPropertyInfo(propertyInfo);
+        return treeModel;
+    }
+
+    private static ParameterBO createParameter(int code, String name) {
+        ParameterBO parameterBO = new ParameterBO();
+        parameterBO.setParameterCode(String.valueOf(code));
+        parameterBO.setParameterName(name);
+        return parameterBO;
+    }
+
+    private static DeviceStatusExpandMergeTreeBO createDevice(Integer property, Date installTime) {
+        DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+        device.setGroupId(1);
+        device.setProperty(property);
+        device.setInstallTime(installTime);
+        return device;
+    }
+
+    private static Date utc(int year, int month, int day, int hour, int minute, int second, int millis) {
+        LocalDateTime time = LocalDateTime.of(year, month, day, hour, minute, second, millis * 1000000);
+        return new Date(time.toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+
+    /**
+     * 安装时间所在周期的名称
+     */
+    private static String periodName(TreeModel treeModel, PropertyVirtualGroupingStrategy strategy, Date installTime) {
+        long bucketKey = strategy.bucketKey(treeModel, createDevice(YFZ_PROPERTY, installTime));
+        return strategy.bucketName(treeModel, bucketKey);
+    }
+
+    /**
+     * 用java.time计算的周期名称
+     */
+    private static String expectedName(LocalDate date, InstallTimePeriod period) {
+        switch (period) {
+            case WEEK:
+                return String.format("%d-W%02d",
+                    date.get(IsoFields.WEEK_BASED_YEAR),
+                    date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            case QUARTER:
+                return String.format("%04d-Q%d", date.getYear(), date.get(IsoFields.QUARTER_OF_YEAR));
+            case YEAR:
+                return String.format("%04d", date.getYear());
+            default:
+                return String.format("%04d-%02d", date.getYear(), date.getMonthValue());
+        }
+    }
+
+    /**
+     * 跨年的前后一毫秒属于不同的月、季度和年
+     */
+    @Test
+    public void testYearChange() {
+        TreeModel treeModel = createTreeModel();
+        Date before = utc(2019, 12, 31, 23, 59, 59, 999);
+        Date after = utc(2020, 1, 1, 0, 0, 0, 0);
+
+        assertEquals("2019-12", periodName(treeModel, strategy(InstallTimePeriod.MONTH), before));
+        assertEquals("2020-01", periodName(treeModel, strategy(InstallTimePeriod.MONTH), after));
+        assertEquals("2019-Q4", periodName(treeModel, strategy(InstallTimePeriod.QUARTER), before));
+        assertEquals("2020-Q1", periodName(treeModel, strategy(InstallTimePeriod.QUARTER), after));
+        assertEquals("2019", periodName(treeModel, strategy(InstallTimePeriod.YEAR), before));
+        assertEquals("2020", periodName(treeModel, strategy(InstallTimePeriod.YEAR), after));
+
+        // 东八区的2020-01-01 00:30是UTC的2019-12-31 16:30，按照时区计算
+        PropertyVirtualGroupingStrategy shanghai = new PropertyVirtualGroupingStrategy(InstallTimePeriod.MONTH,
+            TimeZone.getTimeZone("Asia/Shanghai"));
+        Date shanghaiNewYear = Date.from(LocalDateTime.of(2020, 1, 1, 0, 30).atZone(ZoneId.of("Asia/Shanghai"))
+            .toInstant());
+        assertEquals("2020-01", periodName(treeModel, shanghai, shanghaiNewYear));
+    }
+
+    /**
+     * 闰年的2月29日属于2月，下一天属于3月
+     */
+    @Test
+    public void testLeapDay() {
+        TreeModel treeModel = createTreeModel();
+        PropertyVirtualGroupingStrategy month = strategy(InstallTimePeriod.MONTH);
+
+        assertEquals("2020-02", periodName(treeModel, month, utc(2020, 2, 29, 23, 59, 59, 999)));
+        assertEquals("2020-03", periodName(treeModel, month, utc(2020, 3, 1, 0, 0, 0, 0)));
+        assertEquals("2000-02", periodName(treeModel, month, utc(2000, 2, 29, 12, 0, 0, 0)));
+        assertEquals("1900-03", periodName(treeModel, month, utc(1900, 3, 1, 0, 0, 0, 0)));
+        assertEquals("2020-Q1", periodName(treeModel, strategy(InstallTimePeriod.QUARTER),
+            utc(2020, 2, 29, 0, 0, 0, 0)));
+    }
+
+    /**
+     * 跨年的周按照ISO周所在的年份命名，同一周的设备在同一个虚拟分组中
+     */
+    @Test
+    public void testWeekAcrossYears() {
+        TreeModel treeModel = createTreeModel();
+        PropertyVirtualGroupingStrategy week = strategy(InstallTimePeriod.WEEK);
+
+        // 2020-12-28是周一，这一周到2021-01-03
+        assertEquals("2020-W53", periodName(treeModel, week, utc(2020, 12, 28, 0, 0, 0, 0)));
+        assertEquals("2020-W53", periodName(treeModel, week, utc(2021, 1, 3, 23, 59, 59, 999)));
+        assertEquals("2021-W01", periodName(treeModel, week, utc(2021, 1, 4, 0, 0, 0, 0)));
+        assertEquals(week.bucketKey(treeModel, createDevice(YFZ_PROPERTY, utc(2020, 12, 31, 0, 0, 0, 0))),
+            week.bucketKey(treeModel, createDevice(YFZ_PROPERTY, utc(2021, 1, 1, 0, 0, 0, 0))));
+
+        // 2019-12-30属于2020年的第一周
+        assertEquals("2020-W01", periodName(treeModel, week, utc(2019, 12, 30, 0, 0, 0, 0)));
+    }
+
+    /**
+     * 1970年之前的安装时间，毫秒数为负数时向下取整
+     */
+    @Test
+    public void testBefore1970() {
+        TreeModel treeModel = createTreeModel();
+
+        Date lastMillis1969 = utc(1969, 12, 31, 23, 59, 59, 999);
+        assertTrue(lastMillis1969.getTime() < 0);
+        assertEquals("1969-12", periodName(treeModel, strategy(InstallTimePeriod.MONTH), lastMillis1969));
+        assertEquals("1969-Q4", periodName(treeModel, strategy(InstallTimePeriod.QUARTER), lastMillis1969));
+        assertEquals("1969", periodName(treeModel, strategy(InstallTimePeriod.YEAR), lastMillis1969));
+        // 1969-12-29是周一，和1970-01-01在同一周
+        assertEquals("1970-W01", periodName(treeModel, strategy(InstallTimePeriod.WEEK), lastMillis1969));
+        assertEquals("1969-W52", periodName(treeModel, strategy(InstallTimePeriod.WEEK),
+            utc(1969, 12, 28, 23, 59, 59, 999)));
+        assertEquals("1600-02", periodName(treeModel, strategy(InstallTimePeriod.MONTH),
+            utc(1600, 2, 29, 0, 0, 0, 0)));
+    }
+
+    /**
+     * 1890年到2110年的每一天，四种周期都和java.time的计算结果一致
+     */
+    @Test
+    public void testEveryDayMatchesJavaTime() {
+        TreeModel treeModel = createTreeModel();
+        for (InstallTimePeriod period : InstallTimePeriod.values()) {
+            PropertyVirtualGroupingStrategy strategy = strategy(period);
+            for (LocalDate date = LocalDate.of(1890, 1, 1); date.getYear() < 2110; date = date.plusDays(1)) {
+                Date installTime = new Date(date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli());
+                assertEquals(expectedName(date, period), periodName(treeModel, strategy, installTime));
+            }
+        }
+    }
+
+    /**
+     * key的高32位为设备类型，负数的设备类型和周期不会互相影响
+     */
+    @Test
+    public void testPackedBucketKey() {
+        TreeModel treeModel = createTreeModel();
+        PropertyVirtualGroupingStrategy month = strategy(InstallTimePeriod.MONTH);
+
+        long negative = month.bucketKey(treeModel, createDevice(-1, utc(1960, 1, 1, 0, 0, 0, 0)));
+        assertEquals(-1, (int) (negative >> 32));
+        assertEquals("负数", month.bucketName(treeModel, negative));
+        assertEquals("普通", month.bucketName(treeModel, month.bucketKey(treeModel, createDevice(2, null))));
+        assertEquals("未定义", month.bucketName(treeModel, month.bucketKey(treeModel, createDevice(null, null))));
+        assertEquals("未安装", month.bucketName(treeModel, month.bucketKey(treeModel,
+            createDevice(YFZ_PROPERTY, null))));
+
+        // 按列存储的设备和设备对象的key一致，包括1970年之前的安装时间
+        DeviceColumnStore store = new DeviceColumnStore(null, 4);
+        Date installTime = utc(1965, 6, 15, 8, 0, 0, 0);
+        int row = store.addRow(1, 1, YFZ_PROPERTY, installTime, 0);
+        assertEquals(month.bucketKey(treeModel, createDevice(YFZ_PROPERTY, installTime)),
+            month.bucketKey(treeModel, store, row));
+        int nullRow = store.addRow(2, 1, null, null, 0);
+        assertEquals(month.bucketKey(treeModel, createDevice(null, null)), month.bucketKey(treeModel, store, nullRow));
+    }
+
+    private static PropertyVirtualGroupingStrategy strategy(InstallTimePeriod period) {
+        return new PropertyVirtualGroupingStrategy(period, UTC);
+    }
+
+}
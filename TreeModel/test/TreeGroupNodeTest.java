@@ -0,0 +1,195 @@
+package com.chedaia.boss.web.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.user.entity.GroupEntity;
+
+/**
+ * <pre>
+ * TreeGroupNode 增量修改设备时数量的测试
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeGroupNodeTest {
+
+    private static final TreeDeviceResolver RESOLVER = new TreeDeviceResolver() {
+
+        @Override
+        public long getDeviceId(DeviceStatusExpandMergeTreeBO device) {
+            return device.getProperty();
+        }
+
+        @Override
+        public int getStatusFlags(DeviceStatusExpandMergeTreeBO device) {
+            return device.getProperty() % 2 == 0 ? STATUS_ONLINE : STATUS_OFFLINE;
+        }
+    };
+
+    private static TreeModel createTreeModel() {
+        List<GroupEntity> groups = new ArrayList<>();
+        GroupEntity groupEntity = new GroupEntity();
+        groupEntity.setId(1);
+        groupEntity.setParentId(0);
+        groupEntity.setName("分组1");
+        groups.add(groupEntity);
+        return TreeModel.createTreeModel(groups);
+    }
+
+    /**
+     * 分组：1 -> 2 -> 3，1 -> 4，设备1、2在分组3中，设备3在分组4中
+     * 
+     * @return
+     */
+    private static TreeModel createTreeModelWithDevices() {
+        List<GroupEntity> groups = new ArrayList<>();
+        groups.add(createGroup(1, 0));
+        groups.add(createGroup(2, 1));
+        groups.add(createGroup(3, 2));
+        groups.add(createGroup(4, 1));
+
+        TreeModel treeModel = TreeModel.createTreeModel(groups);
+        treeModel.setDeviceResolver(RESOLVER);
+        List<DeviceStatusExpandMergeTreeBO> devices = new ArrayList<>();
+        devices.add(createDevice(1, 3));
+        devices.add(createDevice(2, 3));
+        devices.add(createDevice(3, 4));
+        treeModel.addDevices(devices);
+        return treeModel;
+    }
+
+    private static GroupEntity createGroup(int id, int parentId) {
+        GroupEntity groupEntity = new GroupEntity();
+        groupEntity.setId(id);
+        groupEntity.setParentId(parentId);
+        groupEntity.setName("分组" + id);
+        return groupEntity;
+    }
+
+    private static DeviceStatusExpandMergeTreeBO createDevice(int deviceId, int groupId) {
+        DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+        device.setProperty(deviceId);
+        device.setGroupId(groupId);
+        return device;
+    }
+
+    /**
+     * 分组1到4的全部设备数量
+     * 
+     * @param treeModel
+     * @return
+     */
+    private static String allDeviceCounts(TreeModel treeModel) {
+        StringBuilder counts = new StringBuilder();
+        for (int groupId = 1; groupId <= 4; groupId++) {
+            counts.append(treeModel.getTreeGroupNodeByGroupId(groupId).getAllDeviceCount()).append(' ');
+        }
+        return counts.toString().trim();
+    }
+
+    private static DeviceStatusExpandMergeTreeBO createDevice() {
+        DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+        device.setGroupId(1);
+        return device;
+    }
+
+    /**
+     * 旧的设备不在虚拟分组中时，新设备只添加一次，数量只累加一次
+     */
+    @Test
+    public void testChangeMissingDeviceAddsOnce() {
+        TreeModel treeModel = createTreeModel();
+        TreeGroupNode groupNode = treeModel.getTreeGroupNodeByGroupId(1);
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode = groupNode.addNewDevice(createDevice(),
+            TreeDeviceResolver.STATUS_ONLINE);
+
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> targetNode = groupNode.changeDevice(virtualNode,
+            createDevice(),
+            createDevice(),
+            TreeDeviceResolver.STATUS_ONLINE,
+            TreeDeviceResolver.STATUS_OFFLINE);
+
+        assertEquals(2, targetNode.getDeviceCount());
+        assertEquals(2, groupNode.getAllDeviceCount());
+        assertEquals(1, targetNode.getStatusCount(TreeDeviceResolver.STATUS_ONLINE));
+        assertEquals(1, targetNode.getStatusCount(TreeDeviceResolver.STATUS_OFFLINE));
+    }
+
+    /**
+     * 直接往分组中添加设备后，树模型展开的行中包含新的设备
+     */
+    @Test
+    public void testAddDeviceRefreshesTreeModel() {
+        TreeModel treeModel = createTreeModel();
+        assertEquals(1, treeModel.getExpandRowCount(true, false));
+
+        treeModel.getTreeGroupNodeByGroupId(1).addDevice(createDevice());
+
+        assertEquals(3, treeModel.getExpandRowCount(true, false));
+        assertEquals(3, treeModel.expandTree2FlatList(true).size());
+    }
+
+    /**
+     * 设备从分组3移动到分组4，旧分组的上级分组减少，新分组的上级分组增加，共同的上级分组不变
+     */
+    @Test
+    public void testMoveDeviceBetweenGroups() {
+        TreeModel treeModel = createTreeModelWithDevices();
+        assertEquals("3 2 2 1", allDeviceCounts(treeModel));
+
+        assertTrue(treeModel.updateDevice(createDevice(2, 4)));
+
+        assertEquals("3 1 1 2", allDeviceCounts(treeModel));
+        assertEquals(1, treeModel.getTreeGroupNodeByGroupId(4).getStatusCount(TreeDeviceResolver.STATUS_ONLINE));
+        assertEquals(0, treeModel.getTreeGroupNodeByGroupId(2).getStatusCount(TreeDeviceResolver.STATUS_ONLINE));
+        assertEquals(1, treeModel.getTreeGroupNodeByGroupId(1).getStatusCount(TreeDeviceResolver.STATUS_ONLINE));
+        assertEquals(3, treeModel.expandGroupNode2FlatList(4, true, false).size());
+    }
+
+    /**
+     * 更新树上没有记录的设备时作为新设备添加，上级分组只增加一次
+     */
+    @Test
+    public void testUpdateDeviceNotIndexed() {
+        TreeModel treeModel = createTreeModelWithDevices();
+
+        assertTrue(treeModel.updateDevice(createDevice(5, 3)));
+        assertEquals("4 3 3 1", allDeviceCounts(treeModel));
+
+        // 再次更新同一个设备时原位置替换，数量不变
+        assertTrue(treeModel.updateDevice(createDevice(5, 3)));
+        assertEquals("4 3 3 1", allDeviceCounts(treeModel));
+    }
+
+    /**
+     * 移除设备后上级分组都减少，重复移除时返回false，数量不变
+     */
+    @Test
+    public void testRemoveDevice() {
+        TreeModel treeModel = createTreeModelWithDevices();
+
+        assertTrue(treeModel.removeDevice(1));
+        assertEquals("2 1 1 1", allDeviceCounts(treeModel));
+        assertEquals(1, treeModel.getTreeGroupNodeByGroupId(1).getStatusCount(TreeDeviceResolver.STATUS_OFFLINE));
+
+        assertFalse(treeModel.removeDevice(1));
+        assertEquals("2 1 1 1", allDeviceCounts(treeModel));
+    }
+
+}
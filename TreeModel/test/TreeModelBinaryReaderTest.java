@@ -0,0 +1,158 @@
+package com.chedaia.boss.web.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.user.entity.GroupEntity;
+import com.chedaia.boss.web.bo.StatDeviceNumberBO;
+
+/**
+ * <pre>
+ * TreeModelBinaryWriter 编码后由 TreeModelBinaryReader 解码，内容和 TreeModelJsonWriter 输出的相同
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelBinaryReaderTest {
+
+    private static final TreeDeviceResolver RESOLVER = new TreeDeviceResolver() {
+
+        @Override
+        public long getDeviceId(DeviceStatusExpandMergeTreeBO device) {
+            return device.getProperty();
+        }
+
+        @Override
+        public int getStatusFlags(DeviceStatusExpandMergeTreeBO device) {
+            return device.getProperty() % 2 == 0 ? STATUS_ONLINE : STATUS_OFFLINE | STATUS_ALARM;
+        }
+    };
+
+    /**
+     * 分组：1 -> 2，1 -> 3，统计信息根据设备计算
+     * 
+     * @return
+     */
+    private static TreeModel createTreeModel() {
+        List<GroupEntity> groups = new ArrayList<>();
+        groups.add(createGroup(1, 0));
+        groups.add(createGroup(2, 1));
+        groups.add(createGroup(3, 1));
+
+        List<DeviceStatusExpandMergeTreeBO> devices = new ArrayList<>();
+        for (int deviceId = 1; deviceId <= 7; deviceId++) {
+            DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+            device.setProperty(deviceId);
+            device.setGroupId(deviceId % 3 + 1);
+            devices.add(device);
+        }
+
+        TreeModel treeModel = TreeModel.createTreeModel(groups);
+        treeModel.setDeviceResolver(RESOLVER);
+        treeModel.setStatisticsFromDevices(true);
+        treeModel.addDevices(devices);
+        return treeModel;
+    }
+
+    private static GroupEntity createGroup(int id, int parentId) {
+        GroupEntity groupEntity = new GroupEntity();
+        groupEntity.setId(id);
+        groupEntity.setParentId(parentId);
+        groupEntity.setName("分组" + id);
+        return groupEntity;
+    }
+
+    @Test
+    public void testRoundTripMatchesJson() throws IOException {
+        TreeModel treeModel = createTreeModel();
+
+        TreeModelJsonWriter jsonWriter = new TreeModelJsonWriter(new TreeModelJsonWriter.DeviceJsonConverter() {
+
+            @Override
+            public String toJson(DeviceStatusExpandMergeTreeBO device) {
+                return "{\"id\":" + RESOLVER.getDeviceId(device) + "}";
+            }
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jsonWriter.write(treeModel.treeIterator(true, false), out);
+        String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+
+        ByteBuffer encoded = new TreeModelBinaryWriter(RESOLVER, 16).encode(treeModel.treeIterator(true, false));
+        List<TreeModelBinaryReader.Item> items = TreeModelBinaryReader.read(encoded);
+
+        assertEquals(json, toJson(items));
+        StatDeviceNumberBO statistics = items.get(0).getStatistics();
+        assertNotNull(statistics);
+        assertEquals(Integer.valueOf(7), statistics.getAll());
+        assertEquals(3, items.get(0).getStatusCount(TreeDeviceResolver.STATUS_ONLINE));
+    }
+
+    /**
+     * 按照 TreeModelJsonWriter 的格式输出解码后的元素
+     * 
+     * @param items
+     * @return
+     */
+    private static String toJson(List<TreeModelBinaryReader.Item> items) {
+        StringBuilder json = new StringBuilder("[");
+        for (TreeModelBinaryReader.Item item : items) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"").append(item.getType().name()).append("\",\"depth\":").append(item.getDepth());
+            // 根分组的上级分组ID为0
+            Integer parentGroupId = item.getParentRow() < 0 ? Integer.valueOf(0)
+                                                            : items.get(item.getParentRow()).getGroupId();
+            switch (item.getType()) {
+                case GROUP_NODE:
+                    json.append(",\"groupId\":").append(item.getGroupId());
+                    json.append(",\"parentId\":").append(parentGroupId);
+                    json.append(",\"name\":\"").append(item.getName()).append('"');
+                    json.append(",\"allDeviceCount\":").append(item.getDeviceCount());
+                    StatDeviceNumberBO stat = item.getStatistics();
+                    if (stat != null) {
+                        json.append(",\"stat\":{\"all\":").append(stat.getAll());
+                        json.append(",\"dring\":").append(stat.getDring());
+                        json.append(",\"offline\":").append(stat.getOffline());
+                        json.append(",\"alarm\":").append(stat.getAlarm());
+                        json.append(",\"online\":").append(stat.getOnline());
+                        json.append(",\"lineDelocali\":").append(stat.getLineDelocali());
+                        json.append(",\"risk\":").append(stat.getRisk());
+                        json.append(",\"warning\":").append(stat.getWarning());
+                        json.append('}');
+                    }
+                    break;
+                case VIRTUAL_NODE:
+                    json.append(",\"parentGroupId\":").append(parentGroupId);
+                    json.append(",\"property\":").append(item.getProperty());
+                    json.append(",\"name\":\"").append(item.getName()).append('"');
+                    json.append(",\"deviceCount\":").append(item.getDeviceCount());
+                    break;
+                default:
+                    json.append(",\"data\":{\"id\":").append(item.getDeviceId()).append('}');
+                    break;
+            }
+            json.append('}');
+        }
+        return json.append(']').toString();
+    }
+
+}
@@ -0,0 +1,282 @@
+package com.chedaia.boss.web.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.user.entity.GroupEntity;
+
+/**
+ * <pre>
+ * 按需加载设备的测试，见 TreeModel.setDeviceSource
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelDeviceSourceTest {
+
+    private static final TreeDeviceResolver RESOLVER = new TreeDeviceResolver() {
+
+        @Override
+        public long getDeviceId(DeviceStatusExpandMergeTreeBO device) {
+            return device.getProperty();
+        }
+
+        @Override
+        public int getStatusFlags(DeviceStatusExpandMergeTreeBO device) {
+            return STATUS_ONLINE;
+        }
+    };
+
+    /**
+     * 分组1下有分组2到6，每个分组有两个设备
+     */
+    private final List<DeviceStatusExpandMergeTreeBO> devices = new ArrayList<>();
+
+    private final List<Integer> loadedGroupIds = new ArrayList<>();
+
+    private TreeModel createTreeModel(int maxLoadedGroups) {
+        List<GroupEntity> groups = new ArrayList<>();
+        for (int groupId = 1; groupId <= 6; groupId++) {
+            GroupEntity groupEntity = new GroupEntity();
+            groupEntity.setId(groupId);
+            groupEntity.setParentId(groupId == 1 ? 0 : 1);
+            groupEntity.setName("分组" + groupId);
+            groups.add(groupEntity);
+
+            for (int i = 0; i < 2; i++) {
+                DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+                device.setProperty(groupId * 10 + i);
+                device.setGroupId(groupId);
+                devices.add(device);
+            }
+        }
+
+        TreeModel treeModel = TreeModel.createTreeModel(groups);
+        treeModel.setDeviceResolver(RESOLVER);
+        treeModel.setDeviceSource(new DeviceSource() {
+
+            @Override
+            public Map<Integer, Integer> countDevices(Collection<Integer> groupIds) {
+                Map<Integer, Integer> counts = new HashMap<>();
+                for (DeviceStatusExpandMergeTreeBO device : devices) {
+                    Integer count = counts.get(device.getGroupId());
+                    counts.put(device.getGroupId(), count == null ? 1 : count + 1);
+                }
+                return counts;
+            }
+
+            @Override
+            public List<DeviceStatusExpandMergeTreeBO> loadDevices(int groupId) {
+                loadedGroupIds.add(groupId);
+                List<DeviceStatusExpandMergeTreeBO> result = new ArrayList<>();
+                for (DeviceStatusExpandMergeTreeBO device : devices) {
+                    if (device.getGroupId() == groupId) {
+                        result.add(device);
+                    }
+                }
+                return result;
+            }
+        }, maxLoadedGroups);
+        return treeModel;
+    }
+
+    private static DeviceStatusExpandMergeTreeBO createDevice(int deviceId, int groupId) {
+        DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+        device.setProperty(deviceId);
+        device.setGroupId(groupId);
+        return device;
+    }
+
+    /**
+     * deviceSource中的设备移动到其他分组，用新的设备对象替换
+     * 
+     * @param deviceId
+     * @param groupId 新的分组
+     */
+    private void moveSourceDevice(int deviceId, int groupId) {
+        for (int i = 0; i < devices.size(); i++) {
+            if (devices.get(i).getProperty() == deviceId) {
+                devices.set(i, createDevice(deviceId, groupId));
+            }
+        }
+    }
+
+    private static int getStatusCount(TreeModel treeModel, int groupId) {
+        return treeModel.getTreeGroupNodeByGroupId(groupId).getStatusCount(TreeDeviceResolver.STATUS_ONLINE);
+    }
+
+    /**
+     * 展开整棵树、分页展开和迭代器不加载设备，没有加载的分组只输出分组本身
+     */
+    @Test
+    public void testWholeTreeExpansionDoesNotLoad() {
+        TreeModel treeModel = createTreeModel(2);
+
+        assertEquals(6, treeModel.expandTree2FlatList(true).size());
+        assertEquals(6, treeModel.getExpandRowCount(true, false));
+        assertEquals(6, treeModel.expand(0, 100, true, true).size());
+        TreeModelItemIterator iterator = treeModel.treeIterator(true, false);
+        while (iterator.moveToNext()) {
+        }
+        treeModel.expandTree2FlatList(true, TreeDeviceResolver.STATUS_ONLINE);
+        assertTrue(loadedGroupIds.isEmpty());
+        assertEquals(12, treeModel.getTreeGroupNodeByGroupId(1).getAllDeviceCount());
+    }
+
+    /**
+     * 展开的分组超过上限时只加载前面的分组，收起的上级分组下的分组不加载
+     */
+    @Test
+    public void testVisibleRowsKeepLoadedGroupsBounded() {
+        TreeModel treeModel = createTreeModel(2);
+
+        treeModel.expandVisibleRows(new HashSet<>(Arrays.asList(2, 3)), null, false);
+        assertTrue(loadedGroupIds.isEmpty());
+
+        treeModel.expandVisibleRows(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5, 6)), null, false);
+        assertEquals(Arrays.asList(1, 2), loadedGroupIds);
+        assertTrue(treeModel.isGroupDevicesLoaded(1));
+        assertFalse(treeModel.isGroupDevicesLoaded(3));
+
+        treeModel.expandOneLevelGroupNode(3, true);
+        treeModel.expandOneLevelGroupNode(4, true);
+        int loaded = 0;
+        for (int groupId = 1; groupId <= 6; groupId++) {
+            if (treeModel.isGroupDevicesLoaded(groupId)) {
+                loaded++;
+            }
+        }
+        assertEquals(2, loaded);
+    }
+
+    /**
+     * 设备从加载了的分组移动到没有加载的分组，两个分组的设备数量都会变化，释放后的设备移除时数量也会变化
+     */
+    @Test
+    public void testUpdatesAdjustUnloadedGroupCounts() {
+        TreeModel treeModel = createTreeModel(1);
+        treeModel.expandOneLevelGroupNode(2, true);
+
+        DeviceStatusExpandMergeTreeBO moved = new DeviceStatusExpandMergeTreeBO();
+        moved.setProperty(20);
+        moved.setGroupId(3);
+        treeModel.updateDevice(moved);
+        assertEquals(1, treeModel.getTreeGroupNodeByGroupId(2).getAllDeviceCount());
+        assertEquals(3, treeModel.getTreeGroupNodeByGroupId(3).getAllDeviceCount());
+
+        // 加载分组4后释放分组2，分组2中的设备位置仍然已知
+        treeModel.expandOneLevelGroupNode(4, true);
+        assertFalse(treeModel.isGroupDevicesLoaded(2));
+        assertTrue(treeModel.removeDevice(21));
+        assertTrue(treeModel.removeDevice(20));
+        assertEquals(0, treeModel.getTreeGroupNodeByGroupId(2).getAllDeviceCount());
+        assertEquals(2, treeModel.getTreeGroupNodeByGroupId(3).getAllDeviceCount());
+        assertEquals(10, treeModel.getTreeGroupNodeByGroupId(1).getAllDeviceCount());
+    }
+
+    /**
+     * 加载的设备已经在其他分组中时从原来的分组移动过来，重复的设备被拒绝，上级分组的数量不变
+     */
+    @Test
+    public void testLoadedDeviceAlreadyIndexedIsMoved() {
+        TreeModel treeModel = createTreeModel(2);
+        treeModel.expandOneLevelGroupNode(2, true);
+        assertEquals(2, treeModel.getTreeGroupNodeByGroupId(2).getAllDeviceCount());
+
+        // 分组2加载后设备20在数据库中移动到了分组3
+        moveSourceDevice(20, 3);
+        treeModel.expandOneLevelGroupNode(3, true);
+        assertTrue(treeModel.isGroupDevicesLoaded(2));
+        assertEquals(1, treeModel.getTreeGroupNodeByGroupId(2).getAllDeviceCount());
+        assertEquals(3, treeModel.getTreeGroupNodeByGroupId(3).getAllDeviceCount());
+        assertEquals(12, treeModel.getTreeGroupNodeByGroupId(1).getAllDeviceCount());
+        assertEquals(1, getStatusCount(treeModel, 2));
+        assertEquals(4, getStatusCount(treeModel, 1));
+        assertTrue(treeModel.removeDevice(20));
+        assertEquals(2, treeModel.getTreeGroupNodeByGroupId(3).getAllDeviceCount());
+
+        // deviceSource重复返回同一个设备
+        devices.add(createDevice(40, 4));
+        treeModel.expandOneLevelGroupNode(4, true);
+        assertEquals(2, treeModel.getTreeGroupNodeByGroupId(4).getAllDeviceCount());
+        assertEquals(1, treeModel.getMetrics().getRejectedDeviceCount());
+        assertEquals(11, treeModel.getTreeGroupNodeByGroupId(1).getAllDeviceCount());
+    }
+
+    /**
+     * 加载的设备在已经释放的分组中时，从释放的分组的数量中减去
+     */
+    @Test
+    public void testLoadedDeviceFromUnloadedGroupIsMoved() {
+        TreeModel treeModel = createTreeModel(1);
+        treeModel.expandOneLevelGroupNode(2, true);
+        treeModel.expandOneLevelGroupNode(3, true);
+        assertFalse(treeModel.isGroupDevicesLoaded(2));
+
+        moveSourceDevice(21, 4);
+        treeModel.expandOneLevelGroupNode(4, true);
+        assertEquals(1, treeModel.getTreeGroupNodeByGroupId(2).getAllDeviceCount());
+        assertEquals(3, treeModel.getTreeGroupNodeByGroupId(4).getAllDeviceCount());
+        assertEquals(12, treeModel.getTreeGroupNodeByGroupId(1).getAllDeviceCount());
+
+        // 再次加载分组2时只有设备20
+        treeModel.expandOneLevelGroupNode(2, true);
+        assertEquals(1, treeModel.getTreeGroupNodeByGroupId(2).getAllDeviceCount());
+        assertEquals(12, treeModel.getTreeGroupNodeByGroupId(1).getAllDeviceCount());
+    }
+
+    /**
+     * 释放分组的设备后设备数量不变，各状态的数量只包含已经加载的设备，按状态展开时释放的分组仍然输出
+     */
+    @Test
+    public void testEvictionKeepsDeviceCounts() {
+        TreeModel treeModel = createTreeModel(1);
+        treeModel.expandOneLevelGroupNode(2, true);
+        assertEquals(2, getStatusCount(treeModel, 2));
+        assertEquals(2, getStatusCount(treeModel, 1));
+
+        treeModel.expandOneLevelGroupNode(3, true);
+        assertFalse(treeModel.isGroupDevicesLoaded(2));
+        TreeGroupNode evicted = treeModel.getTreeGroupNodeByGroupId(2);
+        assertEquals(2, evicted.getAllDeviceCount());
+        assertEquals(2, evicted.getLocalDeviceCount());
+        assertTrue(evicted.getChildVirtualNodeMap().isEmpty());
+        assertEquals(12, treeModel.getTreeGroupNodeByGroupId(1).getAllDeviceCount());
+        assertEquals(0, getStatusCount(treeModel, 2));
+        assertEquals(2, getStatusCount(treeModel, 1));
+
+        boolean evictedListed = false;
+        for (TreeModelItem item : treeModel.expandTree2FlatList(false, TreeDeviceResolver.STATUS_ONLINE)) {
+            evictedListed |= item.getGroupNode() == evicted;
+        }
+        assertTrue(evictedListed);
+
+        // 释放的设备位置已知，更新时数量仍然正确
+        DeviceStatusExpandMergeTreeBO moved = createDevice(21, 3);
+        treeModel.updateDevice(moved);
+        assertEquals(1, evicted.getAllDeviceCount());
+        assertEquals(3, treeModel.getTreeGroupNodeByGroupId(3).getAllDeviceCount());
+        assertEquals(3, getStatusCount(treeModel, 3));
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.chedaia.boss.web.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.user.entity.GroupEntity;
+import com.chedaia.boss.web.model.TreeModelDiff.DeviceChange;
+import com.chedaia.boss.web.model.TreeModelDiff.GroupChange;
+import com.chedaia.boss.web.model.TreeModelDiff.GroupMove;
+
+/**
+ * <pre>
+ * TreeModelDiff 的测试，比较两个版本的分组和设备
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelDiffTest {
+
+    /**
+     * 设备的property除以10为设备ID，个位为0时在线，否则离线
+     */
+    private static final TreeDeviceResolver RESOLVER = new TreeDeviceResolver() {
+
+        @Override
+        public long getDeviceId(DeviceStatusExpandMergeTreeBO device) {
+            return device.getProperty() / 10;
+        }
+
+        @Override
+        public int getStatusFlags(DeviceStatusExpandMergeTreeBO device) {
+            return device.getProperty() % 10 == 0 ? STATUS_ONLINE : STATUS_OFFLINE;
+        }
+    };
+
+    private static GroupEntity createGroup(int id, int parentId) {
+        GroupEntity groupEntity = new GroupEntity();
+        groupEntity.setId(id);
+        groupEntity.setParentId(parentId);
+        groupEntity.setName("分组" + id);
+        return groupEntity;
+    }
+
+    private static DeviceStatusExpandMergeTreeBO createDevice(int property, int groupId) {
+        DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+        device.setProperty(property);
+        device.setGroupId(groupId);
+        return device;
+    }
+
+    private static TreeModel createTreeModel(List<GroupEntity> groups, List<DeviceStatusExpandMergeTreeBO> devices) {
+        TreeModel treeModel = TreeModel.createTreeModel(groups);
+        treeModel.setDeviceResolver(RESOLVER);
+        treeModel.addDevices(devices);
+        return treeModel;
+    }
+
+    /**
+     * 旧版本：1 -> 2 -> 4，1 -> 3，1 -> 6；新版本删除分组6，分组4移动到分组3下，新增分组5
+     */
+    @Test
+    public void testGroupsAddedRemovedMoved() {
+        List<GroupEntity> oldGroups = new ArrayList<>();
+        oldGroups.add(createGroup(1, 0));
+        oldGroups.add(createGroup(2, 1));
+        oldGroups.add(createGroup(3, 1));
+        oldGroups.add(createGroup(4, 2));
+        oldGroups.add(createGroup(6, 1));
+        TreeModel oldModel = createTreeModel(oldGroups, new ArrayList<DeviceStatusExpandMergeTreeBO>());
+
+        List<GroupEntity> newGroups = new ArrayList<>();
+        newGroups.add(createGroup(1, 0));
+        newGroups.add(createGroup(2, 1));
+        newGroups.add(createGroup(3, 1));
+        newGroups.add(createGroup(4, 3));
+        newGroups.add(createGroup(5, 4));
+        TreeModel newModel = createTreeModel(newGroups, new ArrayList<DeviceStatusExpandMergeTreeBO>());
+
+        TreeModelDiff diff = TreeModelDiff.diff(oldModel, newModel);
+        assertFalse(diff.isEmpty());
+
+        assertEquals(1, diff.getAddedGroups().size());
+        assertEquals(Integer.valueOf(5), diff.getAddedGroups().get(0).getGroupId());
+        assertEquals("[6]", diff.getRemovedGroupIds().toString());
+
+        assertEquals(1, diff.getMovedGroups().size());
+        GroupMove move = diff.getMovedGroups().get(0);
+        assertEquals(Integer.valueOf(4), move.getGroupId());
+        assertEquals(Integer.valueOf(2), move.getOldParentId());
+        assertEquals(Integer.valueOf(3), move.getNewParentId());
+
+        assertTrue(diff.getChangedGroups().isEmpty());
+        assertTrue(diff.getDeviceChanges().isEmpty());
+        assertTrue(TreeModelDiff.diff(newModel, newModel).isEmpty());
+    }
+
+    /**
+     * 设备1从在线变为离线，所在的虚拟分组不变，分组的设备数量不变
+     */
+    @Test
+    public void testDeviceStatusChange() {
+        List<GroupEntity> groups = new ArrayList<>();
+        groups.add(createGroup(1, 0));
+        groups.add(createGroup(2, 1));
+
+        List<DeviceStatusExpandMergeTreeBO> oldDevices = new ArrayList<>();
+        oldDevices.add(createDevice(10, 2));
+        oldDevices.add(createDevice(20, 2));
+        TreeModel oldModel = createTreeModel(groups, oldDevices);
+
+        List<DeviceStatusExpandMergeTreeBO> newDevices = new ArrayList<>();
+        newDevices.add(createDevice(11, 2));
+        newDevices.add(createDevice(20, 2));
+        TreeModel newModel = createTreeModel(groups, newDevices);
+
+        TreeModelDiff diff = TreeModelDiff.diff(oldModel, newModel);
+        assertTrue(diff.getAddedGroups().isEmpty());
+        assertTrue(diff.getRemovedGroupIds().isEmpty());
+        assertTrue(diff.getMovedGroups().isEmpty());
+
+        assertEquals(1, diff.getDeviceChanges().size());
+        DeviceChange change = diff.getDeviceChanges().get(0);
+        assertEquals(1, change.getDeviceId());
+        assertFalse(change.isAdded());
+        assertFalse(change.isRemoved());
+        assertFalse(change.isMoved());
+        assertEquals(TreeDeviceResolver.STATUS_ONLINE, change.getOldStatusFlags());
+        assertEquals(TreeDeviceResolver.STATUS_OFFLINE, change.getNewStatusFlags());
+        assertEquals(change.getOldVirtualNodeKey(), change.getNewVirtualNodeKey());
+
+        for (GroupChange groupChange : diff.getChangedGroups()) {
+            assertEquals(groupChange.getOldAllDeviceCount(), groupChange.getNewAllDeviceCount());
+        }
+    }
+
+}
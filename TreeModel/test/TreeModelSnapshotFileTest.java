@@ -0,0 +1,83 @@
+package com.chedaia.boss.web.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.chedaia.biz.user.entity.GroupEntity;
+
+/**
+ * <pre>
+ * TreeModelSnapshotFile 写入临时文件和替换的测试
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelSnapshotFileTest {
+
+    private static TreeModel createTreeModel() {
+        List<GroupEntity> groups = new ArrayList<>();
+        GroupEntity groupEntity = new GroupEntity();
+        groupEntity.setId(1);
+        groupEntity.setParentId(0);
+        groupEntity.setName("分组1");
+        groups.add(groupEntity);
+        return TreeModel.createTreeModel(groups);
+    }
+
+    /**
+     * 写入成功后只留下快照文件
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testWriteLeavesOnlySnapshot() throws IOException {
+        Path dir = Files.createTempDirectory("snapshot");
+        Path file = dir.resolve("tree.snapshot");
+
+        TreeModelSnapshotFile.write(createTreeModel(), 1, file);
+
+        assertTrue(Files.isRegularFile(file));
+        assertFalse(Files.exists(dir.resolve("tree.snapshot.tmp")));
+        assertEquals(1, TreeModelSnapshotFile.read(file, 1, null).getRootNodes().size());
+    }
+
+    /**
+     * 替换失败时删除临时文件，这里目标是一个不为空的目录
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testFailedWriteDeletesTempFile() throws IOException {
+        Path dir = Files.createTempDirectory("snapshot");
+        Path file = dir.resolve("tree.snapshot");
+        Files.createDirectory(file);
+        Files.createFile(file.resolve("child"));
+
+        try {
+            TreeModelSnapshotFile.write(createTreeModel(), 1, file);
+            fail("目标是不为空的目录时应该写入失败");
+        } catch (IOException e) {
+            // 期望的异常
+        }
+        assertFalse(Files.exists(dir.resolve("tree.snapshot.tmp")));
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.chedaia.boss.web.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.user.entity.GroupEntity;
+
+/**
+ * <pre>
+ * TreeModelSnapshot 用户视图的测试
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelSnapshotTest {
+
+    /**
+     * 全部分组：1 -> 2 -> 3，1 -> 4
+     * 
+     * @return
+     */
+    private static TreeModelSnapshot createSnapshot() {
+        List<GroupEntity> groups = new ArrayList<>();
+        groups.add(createGroup(1, 0));
+        groups.add(createGroup(2, 1));
+        groups.add(createGroup(3, 2));
+        groups.add(createGroup(4, 1));
+
+        List<DeviceStatusExpandMergeTreeBO> devices = new ArrayList<>();
+        for (int groupId = 1; groupId <= 4; groupId++) {
+            DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+            device.setGroupId(groupId);
+            devices.add(device);
+        }
+        return TreeModelSnapshot.create(1, groups, null, null, devices);
+    }
+
+    private static GroupEntity createGroup(int id, int parentId) {
+        GroupEntity groupEntity = new GroupEntity();
+        groupEntity.setId(id);
+        groupEntity.setParentId(parentId);
+        groupEntity.setName("分组" + id);
+        return groupEntity;
+    }
+
+    /**
+     * 共用子树的根节点在视图上是根节点，不能通过它访问到全量树上的上级分组
+     */
+    @Test
+    public void testSharedSubtreeRootHasNoParent() {
+        TreeModelSnapshot snapshot = createSnapshot();
+        TreeModel view = snapshot.getUserTreeModel(Arrays.asList(2, 3));
+
+        TreeGroupNode root = view.getTreeGroupNodeByGroupId(2);
+        assertNull(root.getParentGroupNode());
+        assertSame(view, root.getTreeModel());
+        assertEquals(2, root.getAllDeviceCount());
+
+        TreeGroupNode child = view.getTreeGroupNodeByGroupId(3);
+        assertSame(root, child.getParentGroupNode());
+        assertSame(view, child.getTreeModel());
+        assertEquals(1, view.getRootTreeModelItem().size());
+    }
+
+    /**
+     * 共用的子树挂在视图自己的分组下时，上级分组是视图上的节点
+     */
+    @Test
+    public void testSharedSubtreeAttachedToViewNode() {
+        TreeModelSnapshot snapshot = createSnapshot();
+        TreeModel view = snapshot.getUserTreeModel(Arrays.asList(1, 2, 3));
+
+        TreeGroupNode root = view.getTreeGroupNodeByGroupId(1);
+        TreeGroupNode shared = view.getTreeGroupNodeByGroupId(2);
+        assertSame(root, shared.getParentGroupNode());
+        assertNull(root.getParentGroupNode());
+        assertSame(view, shared.getTreeModel());
+        assertEquals(3, root.getAllDeviceCount());
+    }
+
+    /**
+     * 多个线程同时分页展开和搜索同一个视图，结果和单线程读取的相同
+     */
+    @Test
+    public void testConcurrentReadsOnView() throws InterruptedException {
+        TreeModelSnapshot snapshot = createSnapshot();
+        final TreeModel view = snapshot.getUserTreeModel(Arrays.asList(1, 2, 3));
+        final int rows = view.getExpandRowCount(true, false);
+        final int results = view.search("分组", 10).size();
+        final AtomicBoolean mismatch = new AtomicBoolean();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (int n = 0; n < 1000; n++) {
+                            if (view.expand(0, Integer.MAX_VALUE, true, false).size() != rows
+                                || view.getExpandRowCount(true, true) > rows
+                                || view.search("分组", 10).size() != results) {
+                                mismatch.set(true);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            });
+            readers[i].start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(error.get());
+        assertFalse(mismatch.get());
+    }
+
+}
@@ -0,0 +1,582 @@
+package com.chedaia.boss.web.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+import com.chedaia.biz.user.entity.GroupEntity;
+import com.chedaia.boss.web.bo.StatDeviceNumberBO;
+import com.chedaia.boss.web.model.TreeModelItem.TreeModelItemType;
+
+/**
+ * <pre>
+ * TreeModel 的测试
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeModelTest {
+
+    private static final TreeDeviceResolver RESOLVER = new TreeDeviceResolver() {
+
+        @Override
+        public long getDeviceId(DeviceStatusExpandMergeTreeBO device) {
+            return device.getProperty();
+        }
+
+        @Override
+        public int getStatusFlags(DeviceStatusExpandMergeTreeBO device) {
+            return device.getProperty() % 2 == 0 ? STATUS_ONLINE : STATUS_OFFLINE;
+        }
+    };
+
+    /**
+     * 分组：1 -> 2 -> 4，1 -> 3，1 -> 5，设备ID为0到9，分别在分组1到5中
+     * 
+     * @return
+     */
+    private static TreeModel createTreeModel() {
+        TreeModel treeModel = createGroupTree();
+        List<DeviceStatusExpandMergeTreeBO> devices = new ArrayList<>();
+        for (int deviceId = 0; deviceId < 10; deviceId++) {
+            devices.add(createDevice(deviceId, deviceId % 5 + 1));
+        }
+        treeModel.addDevices(devices);
+        return treeModel;
+    }
+
+    /**
+     * 只有分组，没有设备
+     * 
+     * @return
+     */
+    private static TreeModel createGroupTree() {
+        List<GroupEntity> groups = new ArrayList<>();
+        groups.add(createGroup(1, 0));
+        groups.add(createGroup(2, 1));
+        groups.add(createGroup(3, 1));
+        groups.add(createGroup(4, 2));
+        groups.add(createGroup(5, 1));
+
+        TreeModel treeModel = TreeModel.createTreeModel(groups);
+        treeModel.setDeviceResolver(RESOLVER);
+        return treeModel;
+    }
+
+    private static GroupEntity createGroup(int id, int parentId) {
+        GroupEntity groupEntity = new GroupEntity();
+        groupEntity.setId(id);
+        groupEntity.setParentId(parentId);
+        groupEntity.setName("分组" + id);
+        return groupEntity;
+    }
+
+    /**
+     * 分组i的上级分组为i / 2，组成一棵31个分组的二叉树，ID是4的倍数的分组没有设备
+     * 
+     * @return
+     */
+    private static TreeModel createLargeTreeModel() {
+        List<GroupEntity> groups = new ArrayList<>();
+        for (int groupId = 1; groupId <= 31; groupId++) {
+            groups.add(createGroup(groupId, groupId / 2));
+        }
+        TreeModel treeModel = TreeModel.createTreeModel(groups);
+        treeModel.setDeviceResolver(RESOLVER);
+
+        List<DeviceStatusExpandMergeTreeBO> devices = new ArrayList<>();
+        for (int deviceId = 0; deviceId < 60; deviceId++) {
+            int groupId = deviceId * 7 % 31 + 1;
+            if (groupId % 4 != 0) {
+                devices.add(createDevice(deviceId, groupId));
+            }
+        }
+        treeModel.addDevices(devices);
+        return treeModel;
+    }
+
+    /**
+     * 把展开的行转换成字符串，便于比较
+     * 
+     * @param items
+     * @return
+     */
+    private static String rows(List<TreeModelItem> items) {
+        StringBuilder rows = new StringBuilder();
+        for (TreeModelItem item : items) {
+            switch (item.getType()) {
+                case GROUP_NODE:
+                    rows.append('G').append(item.getGroupNode().getGroupId());
+                    break;
+                case VIRTUAL_NODE:
+                    rows.append('V').append(item.getVirtualNode().getNodeKey());
+                    break;
+                default:
+                    rows.append('D').append(item.getDataNode().getProperty());
+                    break;
+            }
+            rows.append(' ');
+        }
+        return rows.toString();
+    }
+
+    /**
+     * 分页展开的结果和完整展开后截取的结果相同
+     * 
+     * @param treeModel
+     * @param offset
+     * @param limit
+     * @param containDevice
+     * @param excludeEmpty
+     */
+    private static void assertWindow(TreeModel treeModel, int offset, int limit, boolean containDevice,
+                                     boolean excludeEmpty) {
+        List<TreeModelItem> all = excludeEmpty ? treeModel.expandTreeExcludeEmptyNode(containDevice)
+                                               : treeModel.expandTree2FlatList(containDevice);
+        List<TreeModelItem> expected = all.subList(Math.min(offset, all.size()),
+            Math.min(offset + limit, all.size()));
+        assertEquals(all.size(), treeModel.getExpandRowCount(containDevice, excludeEmpty));
+        assertEquals(rows(expected), rows(treeModel.expand(offset, limit, containDevice, excludeEmpty)));
+    }
+
+    /**
+     * isAncestor、isGroupInSubtree 和 getGroupDepth 的结果与沿着上级分组查找的结果相同，包括不在树上的分组
+     * 
+     * @param treeModel
+     * @param maxGroupId
+     */
+    private static void assertAncestorsMatchParentChain(TreeModel treeModel, int maxGroupId) {
+        for (int groupId = 1; groupId <= maxGroupId; groupId++) {
+            TreeGroupNode node = treeModel.getTreeGroupNodeByGroupId(groupId);
+            Set<Integer> ancestors = new HashSet<>();
+            int depth = -1;
+            if (node != null) {
+                TreeGroupNode parent = node.getParentGroupNode();
+                for (; parent != null; parent = parent.getParentGroupNode()) {
+                    ancestors.add(parent.getGroupId());
+                }
+                depth = ancestors.size();
+            }
+            for (int ancestorId = 1; ancestorId <= maxGroupId; ancestorId++) {
+                String pair = ancestorId + " -> " + groupId;
+                assertEquals(pair, ancestors.contains(ancestorId), treeModel.isAncestor(ancestorId, groupId));
+                boolean inSubtree = ancestors.contains(ancestorId) || (node != null && ancestorId == groupId);
+                assertEquals(pair, inSubtree, treeModel.isGroupInSubtree(groupId, ancestorId));
+            }
+            assertEquals(depth, treeModel.getGroupDepth(groupId));
+        }
+    }
+
+    /**
+     * <pre>
+     * 从完整展开的结果中手动过滤出有指定状态的设备的行
+     * 设备按状态过滤，虚拟分组保留后面有匹配设备的，分组保留子树中有匹配设备的
+     * </pre>
+     * 
+     * @param treeModel
+     * @param statusMask
+     * @param containDevice
+     * @return
+     */
+    private static List<TreeModelItem> filterByStatus(TreeModel treeModel, int statusMask, boolean containDevice) {
+        List<TreeModelItem> all = treeModel.expandTree2FlatList(true);
+        List<TreeModelItem> result = new ArrayList<>();
+        for (int i = 0; i < all.size(); i++) {
+            TreeModelItem item = all.get(i);
+            boolean matched = false;
+            switch (item.getType()) {
+                case GROUP_NODE:
+                    int depth = treeModel.getGroupDepth(item.getGroupNode().getGroupId());
+                    for (int j = i + 1; j < all.size() && !matched; j++) {
+                        TreeModelItem next = all.get(j);
+                        if (next.getType() == TreeModelItemType.GROUP_NODE
+                            && treeModel.getGroupDepth(next.getGroupNode().getGroupId()) <= depth) {
+                            break;
+                        }
+                        matched = next.getType() == TreeModelItemType.DATA_NODE && hasStatus(next, statusMask);
+                    }
+                    break;
+                case VIRTUAL_NODE:
+                    for (int j = i + 1; j < all.size() && all.get(j).getType() == TreeModelItemType.DATA_NODE
+                                        && !matched; j++) {
+                        matched = hasStatus(all.get(j), statusMask);
+                    }
+                    break;
+                default:
+                    matched = containDevice && hasStatus(item, statusMask);
+                    break;
+            }
+            if (matched) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按照设备状态展开整棵树，包含和不包含设备两种方式
+     * 
+     * @param treeModel
+     * @param statusMask
+     */
+    private static void assertStatusExpansion(TreeModel treeModel, int statusMask) {
+        assertEquals(rows(filterByStatus(treeModel, statusMask, true)),
+            rows(treeModel.expandTree2FlatList(true, statusMask)));
+        assertEquals(rows(filterByStatus(treeModel, statusMask, false)),
+            rows(treeModel.expandTree2FlatList(false, statusMask)));
+    }
+
+    private static boolean hasStatus(TreeModelItem item, int statusMask) {
+        return (RESOLVER.getStatusFlags(item.getDataNode()) & statusMask) != 0;
+    }
+
+    /**
+     * <pre>
+     * 从完整展开的结果中手动过滤出可见的行
+     * 分组的上级分组都展开时可见，虚拟分组的分组可见并且展开时可见，设备的虚拟分组可见并且展开时可见
+     * </pre>
+     * 
+     * @param treeModel
+     * @param groupIds 已经展开的分组ID
+     * @param virtualKeys 已经展开的虚拟分组的key
+     * @param excludeEmpty
+     * @return
+     */
+    private static List<TreeModelItem> filterVisible(TreeModel treeModel, Set<Integer> groupIds,
+                                                     Set<String> virtualKeys, boolean excludeEmpty) {
+        List<TreeModelItem> all = excludeEmpty ? treeModel.expandTreeExcludeEmptyNode(true)
+                                               : treeModel.expandTree2FlatList(true);
+        List<TreeModelItem> result = new ArrayList<>();
+        boolean virtualNodeExpanded = false;
+        for (TreeModelItem item : all) {
+            boolean visible;
+            switch (item.getType()) {
+                case GROUP_NODE:
+                    visible = isGroupVisible(item.getGroupNode(), groupIds);
+                    break;
+                case VIRTUAL_NODE:
+                    TreeGroupNode groupNode = treeModel.getTreeGroupNodeByGroupId(item.getVirtualNode()
+                        .getParentGroupId());
+                    visible = isGroupVisible(groupNode, groupIds) && groupIds.contains(groupNode.getGroupId());
+                    virtualNodeExpanded = visible && virtualKeys.contains(item.getVirtualNode().getNodeKey());
+                    break;
+                default:
+                    visible = virtualNodeExpanded;
+                    break;
+            }
+            if (visible) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 分组的上级分组是否都已经展开
+     * 
+     * @param groupNode
+     * @param groupIds 已经展开的分组ID
+     * @return
+     */
+    private static boolean isGroupVisible(TreeGroupNode groupNode, Set<Integer> groupIds) {
+        for (TreeGroupNode parent = groupNode.getParentGroupNode(); parent != null; parent = parent
+            .getParentGroupNode()) {
+            if (!groupIds.contains(parent.getGroupId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按照展开状态展开的结果和手动过滤的结果相同，包括和不包括空分组两种方式
+     * 
+     * @param treeModel
+     * @param groupIds 已经展开的分组ID
+     * @param virtualKeys 已经展开的虚拟分组的key
+     */
+    private static void assertVisibleRows(TreeModel treeModel, Set<Integer> groupIds, Set<String> virtualKeys) {
+        for (boolean excludeEmpty : new boolean[] { false, true }) {
+            assertEquals(rows(filterVisible(treeModel, groupIds, virtualKeys, excludeEmpty)),
+                rows(treeModel.expandVisibleRows(groupIds, virtualKeys, excludeEmpty)));
+        }
+    }
+
+    private static DeviceStatusExpandMergeTreeBO createDevice(int deviceId, Integer groupId) {
+        DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+        device.setProperty(deviceId);
+        device.setGroupId(groupId);
+        return device;
+    }
+
+    /**
+     * 分页展开：开头、中间、超出末尾的窗口，四种展开方式
+     */
+    @Test
+    public void testExpandWindowMatchesFlatList() {
+        TreeModel treeModel = createLargeTreeModel();
+        for (int mode = 0; mode < 4; mode++) {
+            boolean containDevice = mode >= 2;
+            boolean excludeEmpty = (mode & 1) != 0;
+            int rowCount = treeModel.getExpandRowCount(containDevice, excludeEmpty);
+
+            assertWindow(treeModel, 0, 10, containDevice, excludeEmpty);
+            assertWindow(treeModel, rowCount / 2 - 3, 7, containDevice, excludeEmpty);
+            assertWindow(treeModel, rowCount - 4, 10, containDevice, excludeEmpty);
+            assertWindow(treeModel, rowCount + 5, 10, containDevice, excludeEmpty);
+            for (int offset = 0; offset < rowCount; offset++) {
+                assertWindow(treeModel, offset, 3, containDevice, excludeEmpty);
+            }
+        }
+    }
+
+    /**
+     * 分组的设备和下级分组变化后，行号索引重新创建，分页展开的结果仍然和完整展开的相同
+     */
+    @Test
+    public void testExpandWindowAfterTreeChanges() {
+        TreeModel treeModel = createLargeTreeModel();
+        assertWindow(treeModel, 5, 10, true, true);
+
+        // 空分组8变成有设备的分组，在排除空分组时展开出来
+        treeModel.addDevice(createDevice(100, 8));
+        for (int offset = 0; offset < 40; offset += 5) {
+            assertWindow(treeModel, offset, 6, true, true);
+            assertWindow(treeModel, offset, 6, false, false);
+        }
+
+        // 分组8下新增一个下级分组
+        treeModel.addGroupNode(new TreeGroupNode(treeModel, createGroup(40, 8)));
+        treeModel.addDevice(createDevice(101, 40));
+        for (int offset = 0; offset < 40; offset += 5) {
+            assertWindow(treeModel, offset, 6, true, true);
+            assertWindow(treeModel, offset, 6, false, false);
+        }
+
+        // 分组8的设备全部移除后再次收起
+        assertTrue(treeModel.removeDevice(100));
+        assertTrue(treeModel.removeDevice(101));
+        for (int offset = 0; offset < 40; offset += 5) {
+            assertWindow(treeModel, offset, 6, true, true);
+        }
+    }
+
+    /**
+     * 上级关系形成环 1 -> 2 -> 3 -> 1 时，在环中ID最小的分组处断开，分组1作为根节点并通知监听器
+     */
+    @Test
+    public void testGroupCycleIsBroken() {
+        List<GroupEntity> groups = new ArrayList<>();
+        groups.add(createGroup(1, 2));
+        groups.add(createGroup(2, 3));
+        groups.add(createGroup(3, 1));
+        groups.add(createGroup(4, 2));
+
+        final List<List<Integer>> cycles = new ArrayList<>();
+        final List<Integer> breakGroupIds = new ArrayList<>();
+        TreeModel treeModel = new TreeModel();
+        treeModel.setMetricsListener(new TreeModelMetricsListener() {
+
+            @Override
+            public void onGroupCycle(TreeModel treeModel, List<Integer> cycleGroupIds, Integer breakGroupId) {
+                cycles.add(cycleGroupIds);
+                breakGroupIds.add(breakGroupId);
+            }
+        });
+        treeModel.buildGroupTree(groups);
+
+        assertEquals(1, treeModel.getRootNodes().size());
+        assertEquals(Integer.valueOf(1), treeModel.getRootNodes().get(0).getGroupId());
+        assertEquals(1, cycles.size());
+        assertEquals(3, cycles.get(0).size());
+        assertEquals(Integer.valueOf(1), breakGroupIds.get(0));
+        // 1 <- 3 <- 2 <- 4
+        assertEquals(1, treeModel.getGroupDepth(3));
+        assertEquals(2, treeModel.getGroupDepth(2));
+        assertEquals(3, treeModel.getGroupDepth(4));
+        assertEquals(4, treeModel.expandTree2FlatList(false).size());
+    }
+
+    /**
+     * 十万层的分组链，从最下层的分组开始向上查找，构建时不会栈溢出
+     */
+    @Test
+    public void testDeepGroupChain() {
+        int depth = 100000;
+        List<GroupEntity> groups = new ArrayList<>(depth);
+        for (int groupId = 1; groupId <= depth; groupId++) {
+            // 分组i的上级为i + 1，ID最小的分组在最下层
+            groups.add(createGroup(groupId, groupId == depth ? 0 : groupId + 1));
+        }
+
+        TreeModel treeModel = TreeModel.createTreeModel(groups);
+
+        assertEquals(1, treeModel.getRootNodes().size());
+        assertEquals(depth - 1, treeModel.getGroupDepth(1));
+        assertTrue(treeModel.isAncestor(depth, 1));
+        assertEquals(depth, treeModel.getMetrics().getMaxDepth());
+        assertEquals(depth, treeModel.getMetrics().getGroupCount());
+    }
+
+    /**
+     * 压缩后再开启根据设备计算统计信息，压缩时释放的Map不影响重新计算
+     */
+    @Test
+    public void testStatisticsFromDevicesAfterCompact() {
+        TreeModel treeModel = createTreeModel();
+        treeModel.compact();
+
+        treeModel.setStatisticsFromDevices(true);
+
+        StatDeviceNumberBO root = treeModel.getTreeGroupNodeByGroupId(1).getStatDeviceNumberBO();
+        assertNotNull(root);
+        assertEquals(Integer.valueOf(10), root.getAll());
+        assertEquals(Integer.valueOf(5), root.getOnline());
+        StatDeviceNumberBO leaf = treeModel.getTreeGroupNodeByGroupId(4).getStatDeviceNumberBO();
+        assertEquals(Integer.valueOf(2), leaf.getAll());
+    }
+
+    /**
+     * 并行添加时分组ID为null和分组不存在的设备和顺序添加一样被拒绝并计数
+     */
+    @Test
+    public void testParallelAddRejectsLikeSequential() {
+        List<DeviceStatusExpandMergeTreeBO> devices = new ArrayList<>();
+        for (int deviceId = 0; deviceId < 12000; deviceId++) {
+            // 每7个设备中一个没有分组，一个分组不存在
+            int mod = deviceId % 7;
+            devices.add(createDevice(deviceId, mod == 0 ? null : mod == 1 ? 99 : deviceId % 5 + 1));
+        }
+
+        final int[] sequentialRejected = new int[1];
+        TreeModel sequential = createGroupTree();
+        sequential.setMetricsListener(new TreeModelMetricsListener() {
+
+            @Override
+            public void onAddDevices(TreeModel treeModel, int deviceCount, int rejectedCount, long durationNanos) {
+                sequentialRejected[0] = rejectedCount;
+            }
+        });
+        sequential.addDevices(devices);
+
+        final int[] parallelRejected = new int[1];
+        TreeModel parallel = createGroupTree();
+        parallel.setMetricsListener(new TreeModelMetricsListener() {
+
+            @Override
+            public void onAddDevices(TreeModel treeModel, int deviceCount, int rejectedCount, long durationNanos) {
+                parallelRejected[0] = rejectedCount;
+            }
+        });
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            parallel.addDevicesParallel(devices, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(sequentialRejected[0], parallelRejected[0]);
+        assertEquals(sequential.getMetrics().toString(), parallel.getMetrics().toString());
+        assertEquals(12000 - sequentialRejected[0], parallel.getTreeGroupNodeByGroupId(1).getAllDeviceCount());
+    }
+
+    /**
+     * isAncestor 使用先序下标和子树大小判断，和沿着上级分组查找的结果比较，新增分组后下标过期，需要重新创建
+     */
+    @Test
+    public void testIsAncestorMatchesParentChain() {
+        TreeModel treeModel = createLargeTreeModel();
+        assertAncestorsMatchParentChain(treeModel, 45);
+
+        // 先查询一次，紧凑存储已经创建，再新增分组
+        assertTrue(treeModel.isAncestor(2, 8));
+        treeModel.addGroupNode(new TreeGroupNode(treeModel, createGroup(40, 8)));
+        treeModel.addGroupNode(new TreeGroupNode(treeModel, createGroup(41, 40)));
+        treeModel.addGroupNode(new TreeGroupNode(treeModel, createGroup(42, 0)));
+        treeModel.addGroupNode(new TreeGroupNode(treeModel, createGroup(43, 42)));
+        assertTrue(treeModel.isAncestor(1, 41));
+        assertTrue(treeModel.isAncestor(8, 41));
+        assertTrue(treeModel.isAncestor(42, 43));
+        assertFalse(treeModel.isAncestor(1, 43));
+        assertAncestorsMatchParentChain(treeModel, 45);
+
+        // 压缩后使用同一份紧凑存储
+        treeModel.compact();
+        assertAncestorsMatchParentChain(treeModel, 45);
+    }
+
+    /**
+     * 按照设备状态展开的结果和手动过滤完整展开的结果相同，设备变化后状态数量同步修改
+     */
+    @Test
+    public void testStatusMaskExpansionMatchesFilteredFlatList() {
+        TreeModel treeModel = createLargeTreeModel();
+        int[] statusMasks = { TreeDeviceResolver.STATUS_ONLINE, TreeDeviceResolver.STATUS_OFFLINE,
+                              TreeDeviceResolver.STATUS_ONLINE | TreeDeviceResolver.STATUS_OFFLINE,
+                              TreeDeviceResolver.STATUS_ALARM };
+        for (int statusMask : statusMasks) {
+            assertStatusExpansion(treeModel, statusMask);
+        }
+        assertTrue(treeModel.expandTree2FlatList(true, TreeDeviceResolver.STATUS_ALARM).isEmpty());
+
+        // 空分组8增加一个离线设备，分组3只剩下离线设备49
+        treeModel.addDevice(createDevice(101, 8));
+        assertTrue(treeModel.removeDevice(18));
+        for (int statusMask : statusMasks) {
+            assertStatusExpansion(treeModel, statusMask);
+        }
+    }
+
+    /**
+     * 按照前端的展开状态展开的结果和手动过滤完整展开的结果相同，上级分组收起时下级分组的展开状态不生效
+     */
+    @Test
+    public void testVisibleRowsMatchFilteredFlatList() {
+        TreeModel treeModel = createLargeTreeModel();
+
+        // 分组6展开了但是分组3收起，分组8是空分组
+        Set<Integer> groupIds = new HashSet<>(Arrays.asList(1, 2, 4, 5, 6, 8, 10, 21));
+        Set<String> virtualKeys = new HashSet<>();
+        for (TreeModelItem item : treeModel.expandTree2FlatList(false)) {
+            if (item.getType() == TreeModelItemType.VIRTUAL_NODE
+                && item.getVirtualNode().getParentGroupId() % 3 != 0) {
+                virtualKeys.add(item.getVirtualNode().getNodeKey());
+            }
+        }
+
+        assertEquals("G1 ", rows(treeModel.expandVisibleRows(null, null, false)));
+        assertVisibleRows(treeModel, Collections.<Integer> emptySet(), virtualKeys);
+        assertVisibleRows(treeModel, groupIds, Collections.<String> emptySet());
+        assertVisibleRows(treeModel, groupIds, virtualKeys);
+
+        // 空分组8增加设备和下级分组后展开
+        treeModel.addDevice(createDevice(100, 8));
+        treeModel.addGroupNode(new TreeGroupNode(treeModel, createGroup(40, 8)));
+        treeModel.addDevice(createDevice(101, 40));
+        groupIds.add(40);
+        virtualKeys.add(treeModel.getTreeGroupNodeByGroupId(8).getChildVirtualNodeMap().values().iterator().next()
+            .getNodeKey());
+        assertVisibleRows(treeModel, groupIds, virtualKeys);
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.chedaia.boss.web.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * TreeSearchIndex 的测试
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeSearchIndexTest {
+
+    /**
+     * 搜索文字没有变化时只替换设备对象，不增加记录
+     */
+    @Test
+    public void testUpdateWithSameTextsKeepsRecords() {
+        TreeSearchIndex index = new TreeSearchIndex();
+        index.addDevice(1, new DeviceStatusExpandMergeTreeBO(), new String[] { "粤B12345", "" });
+
+        DeviceStatusExpandMergeTreeBO updated = new DeviceStatusExpandMergeTreeBO();
+        for (int i = 0; i < 100; i++) {
+            index.addDevice(1, updated, new String[] { "粤b12345", null });
+        }
+
+        assertEquals(1, index.size());
+        assertEquals(0, index.removedCount());
+        List<Object> found = index.find("b123", false, 10);
+        assertEquals(1, found.size());
+        assertSame(updated, found.get(0));
+    }
+
+    /**
+     * 搜索文字变化时删除旧的记录，删除的记录超过一半后需要重新构建
+     */
+    @Test
+    public void testUpdateWithChangedTextsNeedsRebuild() {
+        TreeSearchIndex index = new TreeSearchIndex();
+        DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+        index.addDevice(1, device, new String[] { "粤B00000" });
+        index.addDevice(2, device, new String[] { "粤B00001" });
+        assertFalse(index.needsRebuild());
+
+        index.addDevice(1, device, new String[] { "粤B10000" });
+        assertEquals(1, index.removedCount());
+        assertFalse(index.needsRebuild());
+
+        index.addDevice(1, device, new String[] { "粤B20000" });
+        assertFalse(index.needsRebuild());
+
+        index.addDevice(1, device, new String[] { "粤B30000" });
+        assertEquals(3, index.removedCount());
+        assertTrue(index.needsRebuild());
+        assertEquals(0, index.find("b10000", false, 10).size());
+        assertEquals(1, index.find("b30000", false, 10).size());
+    }
+
+}
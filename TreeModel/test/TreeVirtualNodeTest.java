@@ -0,0 +1,117 @@
+package com.chedaia.boss.web.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.chedaia.biz.device.bo.DeviceStatusExpandMergeTreeBO;
+
+/**
+ * <pre>
+ * TreeVirtualNode 排序的测试，设备对象和按列存储的设备混合在一个虚拟分组中
+ * </pre>
+ * 
+ * @version
+ * 
+ * <pre>
+ * Author	Version		Date		Changes
+ * agent 	1.0  		2026年10月18日 	Created
+ * </pre>
+ * 
+ * @author agent
+ * @since 1.
+ */
+public class TreeVirtualNodeTest {
+
+    /**
+     * 下标为设备的property，null表示没有车牌号
+     */
+    private static final String[] PLATES = { "粤B30000", "粤A10000", null, "粤B20000", "粤A90000" };
+
+    private static final Function<DeviceStatusExpandMergeTreeBO, String> PLATE = new Function<DeviceStatusExpandMergeTreeBO, String>() {
+
+        @Override
+        public String apply(DeviceStatusExpandMergeTreeBO device) {
+            return PLATES[device.getProperty()];
+        }
+    };
+
+    /**
+     * property 0、1为设备对象，2、3、4为按列存储的设备
+     * 
+     * @return
+     */
+    private static TreeVirtualNode<DeviceStatusExpandMergeTreeBO> createVirtualNode() {
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode = new TreeVirtualNode<>(1, null, "默认");
+        virtualNode.addDevice(createDevice(0));
+        virtualNode.addDevice(createDevice(1));
+
+        DeviceColumnStore store = new DeviceColumnStore(new DeviceColumnStore.DeviceMaterializer() {
+
+            @Override
+            public DeviceStatusExpandMergeTreeBO materialize(DeviceColumnStore store, int row) {
+                return createDevice((int) store.getDeviceId(row));
+            }
+        }, 4);
+        for (int property = 2; property < PLATES.length; property++) {
+            virtualNode.addDeviceRow(store, store.addRow(property, 1, null, null, 0));
+        }
+        return virtualNode;
+    }
+
+    private static DeviceStatusExpandMergeTreeBO createDevice(int property) {
+        DeviceStatusExpandMergeTreeBO device = new DeviceStatusExpandMergeTreeBO();
+        device.setGroupId(1);
+        device.setProperty(property);
+        return device;
+    }
+
+    private static List<Integer> properties(List<DeviceStatusExpandMergeTreeBO> devices) {
+        List<Integer> properties = new ArrayList<>();
+        for (DeviceStatusExpandMergeTreeBO device : devices) {
+            properties.add(device.getProperty());
+        }
+        return properties;
+    }
+
+    /**
+     * 按照车牌号排序时设备对象和按列存储的设备统一排序，没有车牌号的排在最后
+     */
+    @Test
+    public void testSortByPlate() {
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode = createVirtualNode();
+
+        TreeDeviceSortOrder<DeviceStatusExpandMergeTreeBO> ascending = TreeDeviceSortOrder.byString("plate", PLATE,
+            false);
+        assertEquals("[1, 4, 3, 0, 2]", properties(virtualNode.getSortedDeviceList(ascending)).toString());
+        assertEquals("[1, 4]", properties(virtualNode.getTopDevices(ascending, 2)).toString());
+
+        TreeDeviceSortOrder<DeviceStatusExpandMergeTreeBO> descending = TreeDeviceSortOrder.byString("plateDesc",
+            PLATE, true);
+        assertEquals("[0, 3, 4, 1]", properties(virtualNode.getTopDevices(descending, 4)).toString());
+    }
+
+    /**
+     * sortDeviceList 同时对按列存储的设备的行排序
+     */
+    @Test
+    public void testSortDeviceListSortsRows() {
+        TreeVirtualNode<DeviceStatusExpandMergeTreeBO> virtualNode = createVirtualNode();
+
+        virtualNode.sortDeviceList(new Comparator<DeviceStatusExpandMergeTreeBO>() {
+
+            @Override
+            public int compare(DeviceStatusExpandMergeTreeBO a, DeviceStatusExpandMergeTreeBO b) {
+                return b.getProperty() - a.getProperty();
+            }
+        });
+        assertEquals("[1, 0, 4, 3, 2]", properties(virtualNode.getDeviceList()).toString());
+        assertEquals(2, virtualNode.getDeviceRow(2));
+    }
+
+}